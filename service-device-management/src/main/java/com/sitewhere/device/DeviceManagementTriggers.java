@@ -9,6 +9,7 @@ package com.sitewhere.device;
 
 import java.util.UUID;
 
+import com.sitewhere.device.spi.kafka.IDeviceContextChangesProducer;
 import com.sitewhere.device.spi.kafka.IDeviceInteractionEventsProducer;
 import com.sitewhere.device.spi.microservice.IDeviceManagementTenantEngine;
 import com.sitewhere.grpc.event.EventModelMarshaler;
@@ -22,6 +23,7 @@ import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceCreateRequest;
 
 /**
  * Adds triggers for processing related to device management API calls.
@@ -31,6 +33,12 @@ public class DeviceManagementTriggers extends DeviceManagementDecorator {
     /** System event source id */
     private static final String SYSTEM_SOURCE_PREFIX = "system:";
 
+    /** Source id prefix for device context change signals */
+    private static final String CONTEXT_CHANGE_SOURCE_PREFIX = "system:context:";
+
+    /** Context change attribute for device registration */
+    private static final String ATTRIBUTE_REGISTRATION = "registration";
+
     /** Device management tenant engine */
     private IDeviceManagementTenantEngine deviceManagementTenantEngine;
 
@@ -40,6 +48,23 @@ public class DeviceManagementTriggers extends DeviceManagementDecorator {
 	this.deviceManagementTenantEngine = deviceManagementTenantEngine;
     }
 
+    /*
+     * @see
+     * com.sitewhere.microservice.api.device.DeviceManagementDecorator#createDevice(
+     * com.sitewhere.spi.device.request.IDeviceCreateRequest)
+     */
+    @Override
+    public IDevice createDevice(IDeviceCreateRequest request) throws SiteWhereException {
+	IDevice created = super.createDevice(request);
+
+	// Only signal inbound processing since no device event occurred.
+	DeviceStateChangeCreateRequest state = new DeviceStateChangeCreateRequest();
+	state.setAttribute(ATTRIBUTE_REGISTRATION);
+	state.setType("create");
+	signalContextChange(created, state);
+	return created;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -96,7 +121,9 @@ public class DeviceManagementTriggers extends DeviceManagementDecorator {
     }
 
     /**
-     * Produce event to Kafka topic for creation by event management.
+     * Produce event to Kafka topic for creation by event management. Inbound
+     * processing is also signaled so that it drops any context it has cached for
+     * the device.
      * 
      * @param device
      * @param request
@@ -110,12 +137,36 @@ public class DeviceManagementTriggers extends DeviceManagementDecorator {
 
 	byte[] marshaled = EventModelMarshaler.buildDecodedEventPayloadMessage(payload);
 	getDeviceInteractionEventsProducer().send(device.getToken(), marshaled);
+	signalContextChange(device, request);
+    }
+
+    /**
+     * Signal inbound processing that the context (device and active assignments)
+     * for a device has changed. The signal is keyed by token like device events so
+     * that it is handled in order with events for the device.
+     * 
+     * @param device
+     * @param request
+     * @throws SiteWhereException
+     */
+    protected void signalContextChange(IDevice device, IDeviceEventCreateRequest request) throws SiteWhereException {
+	DecodedEventPayload payload = new DecodedEventPayload();
+	payload.setDeviceToken(device.getToken());
+	payload.setSourceId(CONTEXT_CHANGE_SOURCE_PREFIX + getMicroservice().getIdentifier().getPath());
+	payload.setEventCreateRequest(request);
+
+	byte[] marshaled = EventModelMarshaler.buildDecodedEventPayloadMessage(payload);
+	getDeviceContextChangesProducer().send(device.getToken(), marshaled);
     }
 
     protected IDeviceInteractionEventsProducer getDeviceInteractionEventsProducer() {
 	return getDeviceManagementTenantEngine().getDeviceInteractionEventsProducer();
     }
 
+    protected IDeviceContextChangesProducer getDeviceContextChangesProducer() {
+	return getDeviceManagementTenantEngine().getDeviceContextChangesProducer();
+    }
+
     protected IDeviceManagementTenantEngine getDeviceManagementTenantEngine() {
 	return deviceManagementTenantEngine;
     }
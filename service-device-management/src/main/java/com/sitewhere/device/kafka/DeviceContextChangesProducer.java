@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.kafka;
+
+import com.sitewhere.device.spi.kafka.IDeviceContextChangesProducer;
+import com.sitewhere.microservice.kafka.MicroserviceKafkaProducer;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Kafka producer that signals device context changes to inbound processing.
+ * Signals are sent to the inbound reprocess topic, which inbound processing
+ * already consumes. They are only used to drop cached context and are never
+ * processed as events.
+ */
+public class DeviceContextChangesProducer extends MicroserviceKafkaProducer<String, byte[]>
+	implements IDeviceContextChangesProducer {
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaProducer#
+     * getTargetTopicName()
+     */
+    @Override
+    public String getTargetTopicName() throws SiteWhereException {
+	return getMicroservice().getKafkaTopicNaming()
+		.getInboundReprocessEventsTopic(getTenantEngine().getTenantResource());
+    }
+}
@@ -11,6 +11,7 @@ import com.sitewhere.device.DeviceManagementTriggers;
 import com.sitewhere.device.configuration.DeviceManagementTenantConfiguration;
 import com.sitewhere.device.configuration.DeviceManagementTenantEngineModule;
 import com.sitewhere.device.grpc.DeviceManagementImpl;
+import com.sitewhere.device.kafka.DeviceContextChangesProducer;
 import com.sitewhere.device.kafka.DeviceInteractionEventsProducer;
 import com.sitewhere.device.persistence.rdb.entity.RdbArea;
 import com.sitewhere.device.persistence.rdb.entity.RdbAreaBoundary;
@@ -35,6 +36,7 @@ import com.sitewhere.device.persistence.rdb.entity.RdbDeviceUnit;
 import com.sitewhere.device.persistence.rdb.entity.RdbLocation;
 import com.sitewhere.device.persistence.rdb.entity.RdbZone;
 import com.sitewhere.device.persistence.rdb.entity.RdbZoneBoundary;
+import com.sitewhere.device.spi.kafka.IDeviceContextChangesProducer;
 import com.sitewhere.device.spi.kafka.IDeviceInteractionEventsProducer;
 import com.sitewhere.device.spi.microservice.IDeviceManagementMicroservice;
 import com.sitewhere.device.spi.microservice.IDeviceManagementTenantEngine;
@@ -73,6 +75,9 @@ public class DeviceManagementTenantEngine extends RdbTenantEngine<DeviceManageme
     /** Produces events generated by device interactions */
     private IDeviceInteractionEventsProducer deviceInteractionEventsProducer;
 
+    /** Signals device context changes to inbound processing */
+    private IDeviceContextChangesProducer deviceContextChangesProducer;
+
     public DeviceManagementTenantEngine(SiteWhereTenantEngine engine) {
 	super(engine);
     }
@@ -170,6 +175,9 @@ public class DeviceManagementTenantEngine extends RdbTenantEngine<DeviceManageme
 	// Device interaction events producer.
 	this.deviceInteractionEventsProducer = new DeviceInteractionEventsProducer();
 
+	// Device context changes producer.
+	this.deviceContextChangesProducer = new DeviceContextChangesProducer();
+
 	// Create step that will initialize components.
 	ICompositeLifecycleStep init = new CompositeLifecycleStep("Initialize " + getComponentName());
 
@@ -179,6 +187,9 @@ public class DeviceManagementTenantEngine extends RdbTenantEngine<DeviceManageme
 	// Initialize device interaction events producer.
 	init.addInitializeStep(this, getDeviceInteractionEventsProducer(), true);
 
+	// Initialize device context changes producer.
+	init.addInitializeStep(this, getDeviceContextChangesProducer(), true);
+
 	// Execute initialization steps.
 	init.execute(monitor);
     }
@@ -201,6 +212,9 @@ public class DeviceManagementTenantEngine extends RdbTenantEngine<DeviceManageme
 	// Start device interaction events producer.
 	start.addStartStep(this, getDeviceInteractionEventsProducer(), true);
 
+	// Start device context changes producer.
+	start.addStartStep(this, getDeviceContextChangesProducer(), true);
+
 	// Execute startup steps.
 	start.execute(monitor);
     }
@@ -215,6 +229,9 @@ public class DeviceManagementTenantEngine extends RdbTenantEngine<DeviceManageme
 	// Create step that will stop components.
 	ICompositeLifecycleStep stop = new CompositeLifecycleStep("Stop " + getComponentName());
 
+	// Stop device context changes producer.
+	stop.addStopStep(this, getDeviceContextChangesProducer());
+
 	// Stop device interaction events producer.
 	stop.addStopStep(this, getDeviceInteractionEventsProducer());
 
@@ -257,4 +274,13 @@ public class DeviceManagementTenantEngine extends RdbTenantEngine<DeviceManageme
     public IDeviceInteractionEventsProducer getDeviceInteractionEventsProducer() {
 	return deviceInteractionEventsProducer;
     }
+
+    /*
+     * @see com.sitewhere.device.spi.microservice.IDeviceManagementTenantEngine#
+     * getDeviceContextChangesProducer()
+     */
+    @Override
+    public IDeviceContextChangesProducer getDeviceContextChangesProducer() {
+	return deviceContextChangesProducer;
+    }
 }
\ No newline at end of file
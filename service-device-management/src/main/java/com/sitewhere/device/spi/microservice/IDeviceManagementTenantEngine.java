@@ -8,6 +8,7 @@
 package com.sitewhere.device.spi.microservice;
 
 import com.sitewhere.device.configuration.DeviceManagementTenantConfiguration;
+import com.sitewhere.device.spi.kafka.IDeviceContextChangesProducer;
 import com.sitewhere.device.spi.kafka.IDeviceInteractionEventsProducer;
 import com.sitewhere.grpc.service.DeviceManagementGrpc;
 import com.sitewhere.microservice.api.device.IDeviceManagement;
@@ -41,6 +42,14 @@ public interface IDeviceManagementTenantEngine extends IMicroserviceTenantEngine
      */
     public IDeviceInteractionEventsProducer getDeviceInteractionEventsProducer();
 
+    /**
+     * Get Kafka producer that signals device context changes to inbound
+     * processing.
+     * 
+     * @return
+     */
+    public IDeviceContextChangesProducer getDeviceContextChangesProducer();
+
     /**
      * Get provider which provides an RDB entity manager for this tenant.
      * 
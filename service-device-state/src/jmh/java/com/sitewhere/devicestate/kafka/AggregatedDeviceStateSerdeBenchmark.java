@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.devicestate.kafka;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurement;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.device.event.AlertSource;
+
+/**
+ * Compares the binary and JSON serdes for {@link AggregatedDeviceState} on an
+ * aggregate similar to a busy window for a single device. Run with 'gradle
+ * jmh' in this project. The encoded size of each format is printed once per
+ * fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AggregatedDeviceStateSerdeBenchmark {
+
+    /** Number of distinct measurement names */
+    private static final int MEASUREMENT_NAMES = 10;
+
+    /** Number of distinct alert types */
+    private static final int ALERT_TYPES = 3;
+
+    /** Binary serializer */
+    private Serializer<AggregatedDeviceState> binarySerializer = new AggregatedDeviceStateSerde().serializer();
+
+    /** Binary deserializer */
+    private Deserializer<AggregatedDeviceState> binaryDeserializer = new AggregatedDeviceStateSerde().deserializer();
+
+    /** JSON serializer */
+    private Serializer<AggregatedDeviceState> jsonSerializer = new AggregatedDeviceState.DeviceStateSerializer();
+
+    /** JSON deserializer */
+    private Deserializer<AggregatedDeviceState> jsonDeserializer = new AggregatedDeviceState.DeviceStateDeserializer();
+
+    /** Aggregate being serialized */
+    private AggregatedDeviceState state;
+
+    /** Aggregate in binary format */
+    private byte[] binary;
+
+    /** Aggregate in JSON format */
+    private byte[] json;
+
+    @Setup
+    public void setup() {
+	this.state = createState();
+	this.binary = binarySerializer.serialize("benchmark", state);
+	this.json = jsonSerializer.serialize("benchmark", state);
+	System.out.println(String.format("Bytes per aggregate: binary=%d json=%d", binary.length, json.length));
+    }
+
+    @Benchmark
+    public byte[] serializeBinary() {
+	return binarySerializer.serialize("benchmark", state);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() {
+	return jsonSerializer.serialize("benchmark", state);
+    }
+
+    @Benchmark
+    public AggregatedDeviceState deserializeBinary() {
+	return binaryDeserializer.deserialize("benchmark", binary);
+    }
+
+    @Benchmark
+    public AggregatedDeviceState deserializeJson() {
+	return jsonDeserializer.deserialize("benchmark", json);
+    }
+
+    /**
+     * Create state similar to a busy window for a single device.
+     * 
+     * @return
+     */
+    protected static AggregatedDeviceState createState() {
+	AggregatedDeviceState state = new AggregatedDeviceState();
+	for (int i = 0; i < 5; i++) {
+	    DeviceLocation location = new DeviceLocation();
+	    populate(location, i);
+	    location.setLatitude(new BigDecimal("33.7550").add(BigDecimal.valueOf(i)));
+	    location.setLongitude(new BigDecimal("-84.3900"));
+	    location.setElevation(BigDecimal.ZERO);
+	    state.updateFromLocation(location);
+	}
+	for (int i = 0; i < MEASUREMENT_NAMES * 5; i++) {
+	    DeviceMeasurement mx = new DeviceMeasurement();
+	    populate(mx, i);
+	    mx.setName("mx-" + (i % MEASUREMENT_NAMES));
+	    mx.setValue(BigDecimal.valueOf((i * 7) % 13));
+	    state.updateFromMeasurement(mx);
+	}
+	for (int i = 0; i < ALERT_TYPES * 2; i++) {
+	    DeviceAlert alert = new DeviceAlert();
+	    populate(alert, i);
+	    alert.setSource(AlertSource.Device);
+	    alert.setLevel(AlertLevel.Warning);
+	    alert.setType("alert-" + (i % ALERT_TYPES));
+	    alert.setMessage("Alert message " + i);
+	    state.updateFromAlert(alert);
+	}
+	return state;
+    }
+
+    protected static void populate(DeviceEvent event, int offset) {
+	event.setId(UUID.randomUUID());
+	event.setDeviceId(UUID.randomUUID());
+	event.setDeviceAssignmentId(UUID.randomUUID());
+	event.setCustomerId(UUID.randomUUID());
+	event.setAreaId(UUID.randomUUID());
+	event.setEventDate(new Date(1500000000000L + (offset * 1000L)));
+	event.setReceivedDate(new Date(1500000000000L + (offset * 1000L) + 50));
+	Map<String, String> metadata = new HashMap<>();
+	metadata.put("source", "benchmark");
+	event.setMetadata(metadata);
+    }
+}
@@ -15,9 +15,18 @@ import com.sitewhere.spi.microservice.multitenant.ITenantEngineConfiguration;
  */
 public class DeviceStateTenantConfiguration implements ITenantEngineConfiguration {
 
+    /** Default interval at which buffered aggregates are persisted */
+    private static final long DEFAULT_PERSISTENCE_INTERVAL_MS = 1000;
+
     /** Datastore definition */
     private DatastoreDefinition datastore;
 
+    /** Opt in to keeping aggregated state in RocksDB (default settings) */
+    private boolean persistentStateStore = false;
+
+    /** Interval at which buffered aggregates are persisted */
+    private long persistenceIntervalMs = DEFAULT_PERSISTENCE_INTERVAL_MS;
+
     public DatastoreDefinition getDatastore() {
 	return datastore;
     }
@@ -25,4 +34,20 @@ public class DeviceStateTenantConfiguration implements ITenantEngineConfiguratio
     public void setDatastore(DatastoreDefinition datastore) {
 	this.datastore = datastore;
     }
+
+    public boolean isPersistentStateStore() {
+	return persistentStateStore;
+    }
+
+    public void setPersistentStateStore(boolean persistentStateStore) {
+	this.persistentStateStore = persistentStateStore;
+    }
+
+    public long getPersistenceIntervalMs() {
+	return persistenceIntervalMs;
+    }
+
+    public void setPersistenceIntervalMs(long persistenceIntervalMs) {
+	this.persistenceIntervalMs = persistenceIntervalMs;
+    }
 }
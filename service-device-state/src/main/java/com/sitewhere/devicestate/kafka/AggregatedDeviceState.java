@@ -8,79 +8,242 @@
 package com.sitewhere.devicestate.kafka;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serializer;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.sitewhere.microservice.util.MarshalUtils;
 import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
 import com.sitewhere.rest.model.device.event.DeviceLocation;
 import com.sitewhere.rest.model.device.event.DeviceMeasurement;
 
 /**
  * Used to aggregate device events into an entity that can be used to update the
- * master database after the event window has elapsed.
+ * master database after the event window has elapsed. Only events that affect
+ * the merged state are kept: the most recent locations, the latest, minimum
+ * and maximum measurement for each name, and the latest alert of each type.
+ * Updates are applied in place, so the size of the aggregate depends on the
+ * number of distinct measurement names and alert types rather than on the
+ * number of events in the window.
  */
 public class AggregatedDeviceState {
 
-    /** List of device locations for window */
+    /** Number of recent locations kept (matches the number merged into state) */
+    public static final int MAX_LOCATIONS = 3;
+
+    /** Most recent device locations for window (newest first) */
     private List<DeviceLocation> deviceLocations = new ArrayList<>();
 
-    /** List of device measurements for window */
-    private List<DeviceMeasurement> deviceMeasurements = new ArrayList<>();
+    /** Latest device measurement for window by measurement name */
+    private Map<String, DeviceMeasurement> latestMeasurements = new HashMap<>();
+
+    /** Device measurement with minimum value for window by measurement name */
+    private Map<String, DeviceMeasurement> minMeasurements = new HashMap<>();
+
+    /** Device measurement with maximum value for window by measurement name */
+    private Map<String, DeviceMeasurement> maxMeasurements = new HashMap<>();
 
-    /** List of device alerts for window */
-    private List<DeviceAlert> deviceAlerts = new ArrayList<>();
+    /** Latest device alert for window by alert type */
+    private Map<String, DeviceAlert> latestAlerts = new HashMap<>();
 
     /**
-     * Create a copy of the given device state.
+     * Keep location if it is among the most recent for the window.
      * 
-     * @param original
-     * @return
+     * @param location
      */
-    public static AggregatedDeviceState copy(AggregatedDeviceState original) {
-	AggregatedDeviceState created = new AggregatedDeviceState();
-	created.getDeviceLocations().addAll(original.getDeviceLocations());
-	created.getDeviceMeasurements().addAll(original.getDeviceMeasurements());
-	created.getDeviceAlerts().addAll(original.getDeviceAlerts());
-	return created;
-    }
-
     public void updateFromLocation(DeviceLocation location) {
-	getDeviceLocations().add(location);
+	int index = 0;
+	while ((index < getDeviceLocations().size()) && !isNewer(location, getDeviceLocations().get(index))) {
+	    index++;
+	}
+	if (index < MAX_LOCATIONS) {
+	    getDeviceLocations().add(index, location);
+	    if (getDeviceLocations().size() > MAX_LOCATIONS) {
+		getDeviceLocations().remove(MAX_LOCATIONS);
+	    }
+	}
     }
 
+    /**
+     * Update latest, minimum and maximum values for the measurement name.
+     * 
+     * @param measurement
+     */
     public void updateFromMeasurement(DeviceMeasurement measurement) {
-	getDeviceMeasurements().add(measurement);
+	String name = measurement.getName();
+	DeviceMeasurement latest = getLatestMeasurements().get(name);
+	if ((latest == null) || !isNewer(latest, measurement)) {
+	    getLatestMeasurements().put(name, measurement);
+	}
+	if (measurement.getValue() == null) {
+	    return;
+	}
+	DeviceMeasurement min = getMinMeasurements().get(name);
+	if ((min == null) || (measurement.getValue().compareTo(min.getValue()) < 0)) {
+	    getMinMeasurements().put(name, measurement);
+	}
+	DeviceMeasurement max = getMaxMeasurements().get(name);
+	if ((max == null) || (measurement.getValue().compareTo(max.getValue()) > 0)) {
+	    getMaxMeasurements().put(name, measurement);
+	}
     }
 
+    /**
+     * Keep alert if it is the latest of its type.
+     * 
+     * @param alert
+     */
     public void updateFromAlert(DeviceAlert alert) {
-	getDeviceAlerts().add(alert);
+	DeviceAlert latest = getLatestAlerts().get(alert.getType());
+	if ((latest == null) || !isNewer(latest, alert)) {
+	    getLatestAlerts().put(alert.getType(), alert);
+	}
+    }
+
+    /**
+     * Indicates whether the first event is strictly newer than the second.
+     * Events without a date are treated as oldest.
+     * 
+     * @param first
+     * @param second
+     * @return
+     */
+    protected static boolean isNewer(DeviceEvent first, DeviceEvent second) {
+	Date a = first.getEventDate();
+	Date b = second.getEventDate();
+	if (a == null) {
+	    return false;
+	}
+	return (b == null) || a.after(b);
+    }
+
+    /**
+     * Indicates whether both references are for the same event.
+     * 
+     * @param first
+     * @param second
+     * @return
+     */
+    protected static boolean isSameEvent(DeviceEvent first, DeviceEvent second) {
+	if ((first == second) || (second == null)) {
+	    return first == second;
+	}
+	return (first.getId() != null) && first.getId().equals(second.getId());
+    }
+
+    /**
+     * Get the distinct measurements kept for the window. Each name contributes
+     * its latest, minimum and maximum measurement.
+     * 
+     * @return
+     */
+    @JsonIgnore
+    public List<DeviceMeasurement> getDeviceMeasurements() {
+	List<DeviceMeasurement> all = new ArrayList<>();
+	for (DeviceMeasurement latest : getLatestMeasurements().values()) {
+	    all.add(latest);
+	    DeviceMeasurement min = getMinMeasurements().get(latest.getName());
+	    if ((min != null) && !isSameEvent(min, latest)) {
+		all.add(min);
+	    }
+	    DeviceMeasurement max = getMaxMeasurements().get(latest.getName());
+	    if ((max != null) && !isSameEvent(max, latest) && !isSameEvent(max, min)) {
+		all.add(max);
+	    }
+	}
+	return all;
+    }
+
+    /**
+     * Get the latest alert of each type kept for the window.
+     * 
+     * @return
+     */
+    @JsonIgnore
+    public List<DeviceAlert> getDeviceAlerts() {
+	return new ArrayList<>(getLatestAlerts().values());
+    }
+
+    /**
+     * Fold measurements from state stored as a list of all measurements in the
+     * window. Only used when reading JSON written by earlier versions.
+     * 
+     * @param deviceMeasurements
+     */
+    @JsonProperty
+    public void setDeviceMeasurements(List<DeviceMeasurement> deviceMeasurements) {
+	for (DeviceMeasurement measurement : deviceMeasurements) {
+	    updateFromMeasurement(measurement);
+	}
+    }
+
+    /**
+     * Fold alerts from state stored as a list of all alerts in the window. Only
+     * used when reading JSON written by earlier versions.
+     * 
+     * @param deviceAlerts
+     */
+    @JsonProperty
+    public void setDeviceAlerts(List<DeviceAlert> deviceAlerts) {
+	for (DeviceAlert alert : deviceAlerts) {
+	    updateFromAlert(alert);
+	}
     }
 
     public List<DeviceLocation> getDeviceLocations() {
 	return deviceLocations;
     }
 
+    /**
+     * Set locations, keeping only the most recent. State written as JSON by
+     * earlier versions holds every location in the window in arrival order.
+     * 
+     * @param deviceLocations
+     */
     public void setDeviceLocations(List<DeviceLocation> deviceLocations) {
-	this.deviceLocations = deviceLocations;
+	this.deviceLocations = new ArrayList<>();
+	for (DeviceLocation location : deviceLocations) {
+	    updateFromLocation(location);
+	}
     }
 
-    public List<DeviceMeasurement> getDeviceMeasurements() {
-	return deviceMeasurements;
+    public Map<String, DeviceMeasurement> getLatestMeasurements() {
+	return latestMeasurements;
     }
 
-    public void setDeviceMeasurements(List<DeviceMeasurement> deviceMeasurements) {
-	this.deviceMeasurements = deviceMeasurements;
+    public void setLatestMeasurements(Map<String, DeviceMeasurement> latestMeasurements) {
+	this.latestMeasurements = latestMeasurements;
     }
 
-    public List<DeviceAlert> getDeviceAlerts() {
-	return deviceAlerts;
+    public Map<String, DeviceMeasurement> getMinMeasurements() {
+	return minMeasurements;
     }
 
-    public void setDeviceAlerts(List<DeviceAlert> deviceAlerts) {
-	this.deviceAlerts = deviceAlerts;
+    public void setMinMeasurements(Map<String, DeviceMeasurement> minMeasurements) {
+	this.minMeasurements = minMeasurements;
+    }
+
+    public Map<String, DeviceMeasurement> getMaxMeasurements() {
+	return maxMeasurements;
+    }
+
+    public void setMaxMeasurements(Map<String, DeviceMeasurement> maxMeasurements) {
+	this.maxMeasurements = maxMeasurements;
+    }
+
+    public Map<String, DeviceAlert> getLatestAlerts() {
+	return latestAlerts;
+    }
+
+    public void setLatestAlerts(Map<String, DeviceAlert> latestAlerts) {
+	this.latestAlerts = latestAlerts;
     }
 
     /**
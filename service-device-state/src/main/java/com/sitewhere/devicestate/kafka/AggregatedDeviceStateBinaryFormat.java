@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.devicestate.kafka;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+
+import com.sitewhere.microservice.util.MarshalUtils;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurement;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.device.event.AlertSource;
+import com.sitewhere.spi.device.event.DeviceEventType;
+
+/**
+ * Compact binary encoding of {@link AggregatedDeviceState} used for window
+ * stores and their changelogs. Data starts with a format version byte. Each
+ * distinct measurement is written once, and the latest, minimum and maximum
+ * maps refer to it by index. Enums are written by name so that stored state
+ * survives changes to enum ordering.
+ * 
+ * State written as JSON by earlier versions is still read.
+ */
+public class AggregatedDeviceStateBinaryFormat {
+
+    /** Current format version */
+    public static final byte VERSION = 1;
+
+    /** First byte of state written as JSON */
+    private static final byte JSON_START = '{';
+
+    /**
+     * Encode aggregated state.
+     * 
+     * @param state
+     * @return
+     */
+    public static byte[] marshal(AggregatedDeviceState state) {
+	Output out = new Output(1024);
+	out.writeByte(VERSION);
+
+	writeVarInt(out, state.getDeviceLocations().size());
+	for (DeviceLocation location : state.getDeviceLocations()) {
+	    writeEvent(out, location);
+	    writeDecimal(out, location.getLatitude());
+	    writeDecimal(out, location.getLongitude());
+	    writeDecimal(out, location.getElevation());
+	}
+
+	// Write each distinct measurement once.
+	Map<DeviceMeasurement, Integer> indexes = new IdentityHashMap<>();
+	List<DeviceMeasurement> measurements = new ArrayList<>();
+	addMeasurements(state.getLatestMeasurements(), indexes, measurements);
+	addMeasurements(state.getMinMeasurements(), indexes, measurements);
+	addMeasurements(state.getMaxMeasurements(), indexes, measurements);
+	writeVarInt(out, measurements.size());
+	for (DeviceMeasurement mx : measurements) {
+	    writeEvent(out, mx);
+	    writeString(out, mx.getName());
+	    writeDecimal(out, mx.getValue());
+	}
+	writeMeasurementIndexes(out, state.getLatestMeasurements(), indexes);
+	writeMeasurementIndexes(out, state.getMinMeasurements(), indexes);
+	writeMeasurementIndexes(out, state.getMaxMeasurements(), indexes);
+
+	writeVarInt(out, state.getLatestAlerts().size());
+	for (Map.Entry<String, DeviceAlert> entry : state.getLatestAlerts().entrySet()) {
+	    DeviceAlert alert = entry.getValue();
+	    writeString(out, entry.getKey());
+	    writeEvent(out, alert);
+	    writeString(out, alert.getSource() != null ? alert.getSource().name() : null);
+	    writeString(out, alert.getLevel() != null ? alert.getLevel().name() : null);
+	    writeString(out, alert.getType());
+	    writeString(out, alert.getMessage());
+	}
+	return out.toByteArray();
+    }
+
+    /**
+     * Decode aggregated state.
+     * 
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    public static AggregatedDeviceState unmarshal(byte[] data) throws IOException {
+	if (data[0] == JSON_START) {
+	    return MarshalUtils.unmarshalJson(data, AggregatedDeviceState.class);
+	}
+	try {
+	    return unmarshal(ByteBuffer.wrap(data));
+	} catch (BufferUnderflowException e) {
+	    throw new IOException("Aggregated device state data is truncated.", e);
+	}
+    }
+
+    /**
+     * Decode aggregated state from a buffer.
+     * 
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    protected static AggregatedDeviceState unmarshal(ByteBuffer in) throws IOException {
+	byte version = in.get();
+	if (version != VERSION) {
+	    throw new IOException("Unsupported aggregated device state format version: " + version);
+	}
+	AggregatedDeviceState state = new AggregatedDeviceState();
+
+	int locationCount = readVarInt(in);
+	for (int i = 0; i < locationCount; i++) {
+	    DeviceLocation location = new DeviceLocation();
+	    readEvent(in, location);
+	    location.setLatitude(readDecimal(in));
+	    location.setLongitude(readDecimal(in));
+	    location.setElevation(readDecimal(in));
+	    state.getDeviceLocations().add(location);
+	}
+
+	int measurementCount = readVarInt(in);
+	DeviceMeasurement[] measurements = new DeviceMeasurement[measurementCount];
+	for (int i = 0; i < measurementCount; i++) {
+	    DeviceMeasurement mx = new DeviceMeasurement();
+	    readEvent(in, mx);
+	    mx.setName(readString(in));
+	    mx.setValue(readDecimal(in));
+	    measurements[i] = mx;
+	}
+	readMeasurementIndexes(in, state.getLatestMeasurements(), measurements);
+	readMeasurementIndexes(in, state.getMinMeasurements(), measurements);
+	readMeasurementIndexes(in, state.getMaxMeasurements(), measurements);
+
+	int alertCount = readVarInt(in);
+	for (int i = 0; i < alertCount; i++) {
+	    String key = readString(in);
+	    DeviceAlert alert = new DeviceAlert();
+	    readEvent(in, alert);
+	    String source = readString(in);
+	    alert.setSource(source != null ? AlertSource.valueOf(source) : null);
+	    String level = readString(in);
+	    alert.setLevel(level != null ? AlertLevel.valueOf(level) : null);
+	    alert.setType(readString(in));
+	    alert.setMessage(readString(in));
+	    state.getLatestAlerts().put(key, alert);
+	}
+	return state;
+    }
+
+    /**
+     * Assign an index to each measurement not already seen.
+     * 
+     * @param source
+     * @param indexes
+     * @param measurements
+     */
+    protected static void addMeasurements(Map<String, DeviceMeasurement> source,
+	    Map<DeviceMeasurement, Integer> indexes, List<DeviceMeasurement> measurements) {
+	for (DeviceMeasurement mx : source.values()) {
+	    if (!indexes.containsKey(mx)) {
+		indexes.put(mx, measurements.size());
+		measurements.add(mx);
+	    }
+	}
+    }
+
+    protected static void writeMeasurementIndexes(Output out, Map<String, DeviceMeasurement> source,
+	    Map<DeviceMeasurement, Integer> indexes) {
+	writeVarInt(out, source.size());
+	for (Map.Entry<String, DeviceMeasurement> entry : source.entrySet()) {
+	    writeString(out, entry.getKey());
+	    writeVarInt(out, indexes.get(entry.getValue()));
+	}
+    }
+
+    protected static void readMeasurementIndexes(ByteBuffer in, Map<String, DeviceMeasurement> target,
+	    DeviceMeasurement[] measurements) throws IOException {
+	int count = readVarInt(in);
+	for (int i = 0; i < count; i++) {
+	    String key = readString(in);
+	    target.put(key, measurements[readVarInt(in)]);
+	}
+    }
+
+    /**
+     * Write fields common to all events.
+     * 
+     * @param out
+     * @param event
+     */
+    protected static void writeEvent(Output out, DeviceEvent event) {
+	writeUuid(out, event.getId());
+	writeString(out, event.getAlternateId());
+	writeString(out, event.getEventType() != null ? event.getEventType().name() : null);
+	writeUuid(out, event.getDeviceId());
+	writeUuid(out, event.getDeviceAssignmentId());
+	writeUuid(out, event.getCustomerId());
+	writeUuid(out, event.getAreaId());
+	writeUuid(out, event.getAssetId());
+	writeDate(out, event.getEventDate());
+	writeDate(out, event.getReceivedDate());
+	Map<String, String> metadata = event.getMetadata();
+	if (metadata == null) {
+	    writeVarInt(out, 0);
+	} else {
+	    writeVarInt(out, metadata.size() + 1);
+	    for (Map.Entry<String, String> entry : metadata.entrySet()) {
+		writeString(out, entry.getKey());
+		writeString(out, entry.getValue());
+	    }
+	}
+    }
+
+    /**
+     * Read fields common to all events.
+     * 
+     * @param in
+     * @param event
+     * @throws IOException
+     */
+    protected static void readEvent(ByteBuffer in, DeviceEvent event) throws IOException {
+	event.setId(readUuid(in));
+	event.setAlternateId(readString(in));
+	String type = readString(in);
+	event.setEventType(type != null ? DeviceEventType.valueOf(type) : null);
+	event.setDeviceId(readUuid(in));
+	event.setDeviceAssignmentId(readUuid(in));
+	event.setCustomerId(readUuid(in));
+	event.setAreaId(readUuid(in));
+	event.setAssetId(readUuid(in));
+	event.setEventDate(readDate(in));
+	event.setReceivedDate(readDate(in));
+	int metadataCount = readVarInt(in);
+	if (metadataCount > 0) {
+	    Map<String, String> metadata = new HashMap<>();
+	    for (int i = 1; i < metadataCount; i++) {
+		metadata.put(readString(in), readString(in));
+	    }
+	    event.setMetadata(metadata);
+	}
+    }
+
+    protected static void writeUuid(Output out, UUID value) {
+	out.writeBoolean(value != null);
+	if (value != null) {
+	    out.writeLong(value.getMostSignificantBits());
+	    out.writeLong(value.getLeastSignificantBits());
+	}
+    }
+
+    protected static UUID readUuid(ByteBuffer in) throws IOException {
+	return (in.get() != 0) ? new UUID(in.getLong(), in.getLong()) : null;
+    }
+
+    protected static void writeDate(Output out, Date value) {
+	out.writeBoolean(value != null);
+	if (value != null) {
+	    out.writeLong(value.getTime());
+	}
+    }
+
+    protected static Date readDate(ByteBuffer in) throws IOException {
+	return (in.get() != 0) ? new Date(in.getLong()) : null;
+    }
+
+    /**
+     * Write a decimal exactly as scale followed by unscaled value.
+     * 
+     * @param out
+     * @param value
+     */
+    protected static void writeDecimal(Output out, BigDecimal value) {
+	if (value == null) {
+	    writeVarInt(out, 0);
+	    return;
+	}
+	byte[] unscaled = value.unscaledValue().toByteArray();
+	writeVarInt(out, unscaled.length + 1);
+	out.write(unscaled);
+	writeVarInt(out, (value.scale() << 1) ^ (value.scale() >> 31));
+    }
+
+    protected static BigDecimal readDecimal(ByteBuffer in) throws IOException {
+	int length = readVarInt(in);
+	if (length == 0) {
+	    return null;
+	}
+	byte[] unscaled = new byte[length - 1];
+	in.get(unscaled);
+	int zigzag = readVarInt(in);
+	return new BigDecimal(new BigInteger(unscaled), (zigzag >>> 1) ^ -(zigzag & 1));
+    }
+
+    /**
+     * Write a string as UTF-8 preceded by its length plus one (zero for null).
+     * 
+     * @param out
+     * @param value
+     */
+    protected static void writeString(Output out, String value) {
+	if (value == null) {
+	    writeVarInt(out, 0);
+	    return;
+	}
+	byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+	writeVarInt(out, utf8.length + 1);
+	out.write(utf8);
+    }
+
+    protected static String readString(ByteBuffer in) throws IOException {
+	int length = readVarInt(in);
+	if (length == 0) {
+	    return null;
+	}
+	byte[] utf8 = new byte[length - 1];
+	in.get(utf8);
+	return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a non-negative int using seven bits per byte.
+     * 
+     * @param out
+     * @param value
+     */
+    protected static void writeVarInt(Output out, int value) {
+	while ((value & ~0x7f) != 0) {
+	    out.writeByte((value & 0x7f) | 0x80);
+	    value >>>= 7;
+	}
+	out.writeByte(value);
+    }
+
+    protected static int readVarInt(ByteBuffer in) throws IOException {
+	int value = 0;
+	for (int shift = 0; shift < 32; shift += 7) {
+	    int b = in.get() & 0xff;
+	    value |= (b & 0x7f) << shift;
+	    if ((b & 0x80) == 0) {
+		return value;
+	    }
+	}
+	throw new IOException("Malformed variable length integer.");
+    }
+
+    /**
+     * Growable byte array used for encoding. Unlike {@link java.io.DataOutputStream}
+     * over a {@link java.io.ByteArrayOutputStream}, writes are not synchronized.
+     */
+    protected static class Output {
+
+	/** Encoded bytes */
+	private byte[] buffer;
+
+	/** Number of bytes written */
+	private int size;
+
+	public Output(int capacity) {
+	    this.buffer = new byte[capacity];
+	}
+
+	public void writeByte(int value) {
+	    ensureCapacity(1);
+	    buffer[size++] = (byte) value;
+	}
+
+	public void writeBoolean(boolean value) {
+	    writeByte(value ? 1 : 0);
+	}
+
+	public void writeLong(long value) {
+	    ensureCapacity(8);
+	    for (int shift = 56; shift >= 0; shift -= 8) {
+		buffer[size++] = (byte) (value >>> shift);
+	    }
+	}
+
+	public void write(byte[] bytes) {
+	    ensureCapacity(bytes.length);
+	    System.arraycopy(bytes, 0, buffer, size, bytes.length);
+	    size += bytes.length;
+	}
+
+	public byte[] toByteArray() {
+	    return Arrays.copyOf(buffer, size);
+	}
+
+	protected void ensureCapacity(int needed) {
+	    if (size + needed > buffer.length) {
+		buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + needed));
+	    }
+	}
+    }
+
+    /**
+     * Kafka serializer using binary format.
+     */
+    public static class BinaryDeviceStateSerializer implements Serializer<AggregatedDeviceState> {
+
+	/*
+	 * @see
+	 * org.apache.kafka.common.serialization.Serializer#serialize(java.lang.String,
+	 * java.lang.Object)
+	 */
+	@Override
+	public byte[] serialize(String topic, AggregatedDeviceState data) {
+	    return (data != null) ? marshal(data) : null;
+	}
+    }
+
+    /**
+     * Kafka deserializer using binary format.
+     */
+    public static class BinaryDeviceStateDeserializer implements Deserializer<AggregatedDeviceState> {
+
+	/*
+	 * @see
+	 * org.apache.kafka.common.serialization.Deserializer#deserialize(java.lang.
+	 * String, byte[])
+	 */
+	@Override
+	public AggregatedDeviceState deserialize(String topic, byte[] data) {
+	    if ((data == null) || (data.length == 0)) {
+		return null;
+	    }
+	    try {
+		return unmarshal(data);
+	    } catch (IOException e) {
+		throw new SerializationException("Unable to deserialize aggregated device state.", e);
+	    }
+	}
+    }
+}
@@ -11,6 +11,10 @@ import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serializer;
 
+/**
+ * Serde for {@link AggregatedDeviceState} using
+ * {@link AggregatedDeviceStateBinaryFormat}.
+ */
 public class AggregatedDeviceStateSerde implements Serde<AggregatedDeviceState> {
 
     /*
@@ -18,7 +22,7 @@ public class AggregatedDeviceStateSerde implements Serde<AggregatedDeviceState>
      */
     @Override
     public Serializer<AggregatedDeviceState> serializer() {
-	return new AggregatedDeviceState.DeviceStateSerializer();
+	return new AggregatedDeviceStateBinaryFormat.BinaryDeviceStateSerializer();
     }
 
     /*
@@ -26,6 +30,6 @@ public class AggregatedDeviceStateSerde implements Serde<AggregatedDeviceState>
      */
     @Override
     public Deserializer<AggregatedDeviceState> deserializer() {
-	return new AggregatedDeviceState.DeviceStateDeserializer();
+	return new AggregatedDeviceStateBinaryFormat.BinaryDeviceStateDeserializer();
     }
 }
@@ -24,7 +24,8 @@ import com.sitewhere.spi.SiteWhereException;
 /**
  * Aggregates processed device event data into an object that retains only the
  * data that should be updated in the device state master schema at the end of
- * the processing window.
+ * the processing window. The aggregate is updated in place rather than copied
+ * for each event.
  */
 public class DeviceStateAggregator implements Aggregator<UUID, GProcessedEventPayload, AggregatedDeviceState> {
 
@@ -37,24 +38,22 @@ public class DeviceStateAggregator implements Aggregator<UUID, GProcessedEventPa
      */
     @Override
     public AggregatedDeviceState apply(UUID key, GProcessedEventPayload payload, AggregatedDeviceState aggregate) {
-	AggregatedDeviceState updated = AggregatedDeviceState.copy(aggregate);
-
 	try {
 	    EventCase type = payload.getEvent().getEventCase();
 	    switch (type) {
 	    case LOCATION: {
 		GDeviceLocation loc = payload.getEvent().getLocation();
-		updated.updateFromLocation(EventModelConverter.asApiDeviceLocation(loc));
+		aggregate.updateFromLocation(EventModelConverter.asApiDeviceLocation(loc));
 		break;
 	    }
 	    case MEASUREMENT: {
 		GDeviceMeasurement mx = payload.getEvent().getMeasurement();
-		updated.updateFromMeasurement(EventModelConverter.asApiDeviceMeasurement(mx));
+		aggregate.updateFromMeasurement(EventModelConverter.asApiDeviceMeasurement(mx));
 		break;
 	    }
 	    case ALERT: {
 		GDeviceAlert alert = payload.getEvent().getAlert();
-		updated.updateFromAlert(EventModelConverter.asApiDeviceAlert(alert));
+		aggregate.updateFromAlert(EventModelConverter.asApiDeviceAlert(alert));
 		break;
 	    }
 	    default: {
@@ -64,6 +63,6 @@ public class DeviceStateAggregator implements Aggregator<UUID, GProcessedEventPa
 	    LOGGER.error("Unable to convert event for aggregation.", e);
 	}
 
-	return updated;
+	return aggregate;
     }
 }
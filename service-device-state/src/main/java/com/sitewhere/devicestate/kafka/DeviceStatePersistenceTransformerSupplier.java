@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.devicestate.kafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.TransformerSupplier;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sitewhere.devicestate.configuration.DeviceStateTenantConfiguration;
+import com.sitewhere.devicestate.spi.IDeviceStateMergeStrategy;
+import com.sitewhere.devicestate.spi.microservice.IDeviceStateMicroservice;
+import com.sitewhere.devicestate.spi.microservice.IDeviceStateTenantEngine;
+import com.sitewhere.microservice.api.device.IDeviceManagement;
+import com.sitewhere.microservice.api.state.IDeviceStateManagement;
+import com.sitewhere.microservice.lifecycle.TenantEngineLifecycleComponent;
+import com.sitewhere.microservice.security.SystemUserCallable;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurement;
+import com.sitewhere.rest.model.device.state.request.DeviceStateCreateRequest;
+import com.sitewhere.rest.model.device.state.request.DeviceStateEventMergeRequest;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.state.IDeviceState;
+import com.sitewhere.spi.microservice.lifecycle.LifecycleComponentType;
+
+import io.prometheus.client.Histogram;
+
+/**
+ * Persists {@link AggregatedDeviceState} via the device state APIs. Aggregates
+ * emitted for windows are buffered in a logged state store and persisted
+ * together on a fixed interval, so each flush merges the state of every
+ * buffered device assignment in a single transaction. Only the latest
+ * aggregate of each window is kept in the buffer.
+ */
+public class DeviceStatePersistenceTransformerSupplier extends TenantEngineLifecycleComponent
+	implements TransformerSupplier<Windowed<UUID>, AggregatedDeviceState, KeyValue<UUID, AggregatedDeviceState>> {
+
+    /** Name of state store that buffers aggregates awaiting persistence */
+    public static final String BUFFER_STORE_NAME = "device-state-persistence-buffer";
+
+    /** Static logger instance */
+    private static Logger LOGGER = LoggerFactory.getLogger(DeviceStatePersistenceTransformerSupplier.class);
+
+    /** Histogram for device state lookup */
+    private static final Histogram DEVICE_STATE_LOOKUP_TIMER = TenantEngineLifecycleComponent
+	    .createHistogramMetric("device_state_lookup_timer", "Timer for looking up device state");
+
+    /** Histogram for device state persistence */
+    private static final Histogram DEVICE_STATE_MERGE_TIMER = TenantEngineLifecycleComponent
+	    .createHistogramMetric("device_state_merge_timer", "Timer for merging device state");
+
+    /** Configuration */
+    private DeviceStateTenantConfiguration configuration;
+
+    public DeviceStatePersistenceTransformerSupplier(DeviceStateTenantConfiguration configuration) {
+	super(LifecycleComponentType.Other);
+	this.configuration = configuration;
+    }
+
+    /*
+     * @see org.apache.kafka.streams.kstream.TransformerSupplier#get()
+     */
+    @Override
+    public Transformer<Windowed<UUID>, AggregatedDeviceState, KeyValue<UUID, AggregatedDeviceState>> get() {
+	return new DeviceStatePersistenceTransformer();
+    }
+
+    /**
+     * Get key of buffer entry for a window.
+     * 
+     * @param window
+     * @return
+     */
+    protected static String getBufferKey(Windowed<UUID> window) {
+	return window.key().toString() + "@" + window.window().start();
+    }
+
+    /**
+     * Transformer that buffers window aggregates and persists them in batches.
+     */
+    private class DeviceStatePersistenceTransformer
+	    implements Transformer<Windowed<UUID>, AggregatedDeviceState, KeyValue<UUID, AggregatedDeviceState>> {
+
+	/** Buffered aggregates keyed by device and window start */
+	private KeyValueStore<String, AggregatedDeviceState> buffer;
+
+	/*
+	 * @see
+	 * org.apache.kafka.streams.kstream.Transformer#init(org.apache.kafka.streams.
+	 * processor.ProcessorContext)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void init(ProcessorContext context) {
+	    this.buffer = (KeyValueStore<String, AggregatedDeviceState>) context.getStateStore(BUFFER_STORE_NAME);
+	    context.schedule(Duration.ofMillis(getConfiguration().getPersistenceIntervalMs()),
+		    PunctuationType.WALL_CLOCK_TIME, timestamp -> flush());
+	}
+
+	/*
+	 * @see org.apache.kafka.streams.kstream.Transformer#transform(java.lang.Object,
+	 * java.lang.Object)
+	 */
+	@Override
+	public KeyValue<UUID, AggregatedDeviceState> transform(Windowed<UUID> window, AggregatedDeviceState state) {
+	    buffer.put(getBufferKey(window), state);
+	    return null;
+	}
+
+	/**
+	 * Persist all buffered aggregates and remove them from the buffer.
+	 */
+	protected void flush() {
+	    List<KeyValue<String, AggregatedDeviceState>> pending = new ArrayList<>();
+	    try (KeyValueIterator<String, AggregatedDeviceState> all = buffer.all()) {
+		while (all.hasNext()) {
+		    pending.add(all.next());
+		}
+	    }
+	    if (pending.isEmpty()) {
+		return;
+	    }
+	    List<AggregatedDeviceState> aggregates = new ArrayList<>();
+	    for (KeyValue<String, AggregatedDeviceState> entry : pending) {
+		aggregates.add(entry.value);
+	    }
+	    try {
+		new PersistenceOperation(aggregates).call();
+	    } catch (Exception e) {
+		LOGGER.error("Unable to execute device state persistence operation.", e);
+	    }
+	    for (KeyValue<String, AggregatedDeviceState> entry : pending) {
+		buffer.delete(entry.key);
+	    }
+	}
+
+	/*
+	 * @see org.apache.kafka.streams.kstream.Transformer#close()
+	 */
+	@Override
+	public void close() {
+	}
+    }
+
+    /**
+     * Runs persistence operation in the context of a system user so that
+     * device/assignment lookups may be authenticated.
+     */
+    protected class PersistenceOperation extends SystemUserCallable<List<IDeviceState>> {
+
+	/** Aggregated device states to persist */
+	private List<AggregatedDeviceState> aggregates;
+
+	public PersistenceOperation(List<AggregatedDeviceState> aggregates) {
+	    super(DeviceStatePersistenceTransformerSupplier.this);
+	    this.aggregates = aggregates;
+	}
+
+	/**
+	 * Find and existing event merge request or create a new one.
+	 * 
+	 * @param event
+	 * @param existing
+	 * @return
+	 */
+	protected DeviceStateEventMergeRequest getOrCreateMergeRequestFor(DeviceEvent event,
+		Map<UUID, DeviceStateEventMergeRequest> existing) {
+	    if (existing.get(event.getDeviceAssignmentId()) != null) {
+		return existing.get(event.getDeviceAssignmentId());
+	    }
+	    DeviceStateEventMergeRequest created = new DeviceStateEventMergeRequest();
+	    existing.put(event.getDeviceAssignmentId(), created);
+	    return created;
+	}
+
+	/**
+	 * Get map of event merge requests by device assignment id for all
+	 * aggregates.
+	 * 
+	 * @param states
+	 * @return
+	 */
+	protected Map<UUID, DeviceStateEventMergeRequest> getMergeRequestsByDeviceAssignment(
+		List<AggregatedDeviceState> states) {
+	    Map<UUID, DeviceStateEventMergeRequest> mergeByAssignmentId = new HashMap<>();
+	    for (AggregatedDeviceState state : states) {
+		for (DeviceLocation location : state.getDeviceLocations()) {
+		    DeviceStateEventMergeRequest request = getOrCreateMergeRequestFor(location, mergeByAssignmentId);
+		    request.getLocations().add(location);
+		}
+		for (DeviceMeasurement mx : state.getDeviceMeasurements()) {
+		    DeviceStateEventMergeRequest request = getOrCreateMergeRequestFor(mx, mergeByAssignmentId);
+		    request.getMeasurements().add(mx);
+		}
+		for (DeviceAlert alert : state.getDeviceAlerts()) {
+		    DeviceStateEventMergeRequest request = getOrCreateMergeRequestFor(alert, mergeByAssignmentId);
+		    request.getAlerts().add(alert);
+		}
+	    }
+	    return mergeByAssignmentId;
+	}
+
+	/**
+	 * Find the latest event and apply it to a state create request.
+	 * 
+	 * @param request
+	 * @param merge
+	 * @return
+	 */
+	protected DeviceStateCreateRequest applyLatestEvent(DeviceStateCreateRequest request,
+		DeviceStateEventMergeRequest merge) {
+	    List<IDeviceEvent> events = new ArrayList<>();
+	    events.addAll(merge.getLocations());
+	    events.addAll(merge.getMeasurements());
+	    events.addAll(merge.getAlerts());
+	    if (events.size() > 0) {
+		events.sort(new Comparator<IDeviceEvent>() {
+
+		    @Override
+		    public int compare(IDeviceEvent o1, IDeviceEvent o2) {
+			return -1 * o1.getEventDate().compareTo(o2.getEventDate());
+		    }
+		});
+		IDeviceEvent event = events.get(0);
+		request.setAreaId(event.getAreaId());
+		request.setAssetId(event.getAssetId());
+		request.setCustomerId(event.getCustomerId());
+	    }
+	    return request;
+	}
+
+	/**
+	 * Create a new device state entry fo rthe given assignment.
+	 * 
+	 * @param device
+	 * @param assignment
+	 * @param merge
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected IDeviceState createDeviceState(IDevice device, IDeviceAssignment assignment,
+		DeviceStateEventMergeRequest merge) throws SiteWhereException {
+	    DeviceStateCreateRequest create = new DeviceStateCreateRequest();
+	    create.setDeviceId(assignment.getDeviceId());
+	    create.setDeviceAssignmentId(assignment.getId());
+	    create.setDeviceTypeId(device.getDeviceTypeId());
+	    create.setLastInteractionDate(new Date());
+	    create = applyLatestEvent(create, merge);
+	    return getDeviceStateManagement().createDeviceState(create);
+	}
+
+	/*
+	 * @see com.sitewhere.microservice.security.SystemUserCallable#runAsSystemUser()
+	 */
+	@Override
+	public List<IDeviceState> runAsSystemUser() throws SiteWhereException {
+	    Map<UUID, DeviceStateEventMergeRequest> mergeByAssignmentId = getMergeRequestsByDeviceAssignment(
+		    aggregates);
+
+	    // Merge all assignments that already have state in one transaction.
+	    Map<UUID, ? extends IDeviceState> merged = mergeAll(mergeByAssignmentId);
+	    if (merged == null) {
+		return Collections.emptyList();
+	    }
+	    List<IDeviceState> updated = new ArrayList<>(merged.values());
+	    if (updated.size() == mergeByAssignmentId.size()) {
+		return updated;
+	    }
+
+	    // Create state for assignments seen for the first time.
+	    Map<UUID, DeviceStateEventMergeRequest> created = new HashMap<>();
+	    for (IDeviceState state : updated) {
+		mergeByAssignmentId.remove(state.getDeviceAssignmentId());
+	    }
+	    for (UUID deviceAssignmentId : mergeByAssignmentId.keySet()) {
+		try {
+		    DeviceStateEventMergeRequest merge = mergeByAssignmentId.get(deviceAssignmentId);
+
+		    // Monitor time required to look up assignment and device.
+		    final Histogram.Timer lookupTime = DEVICE_STATE_LOOKUP_TIMER.labels(getTenantEngine().buildLabels())
+			    .startTimer();
+		    IDeviceAssignment assignment = getDeviceManagement().getDeviceAssignment(deviceAssignmentId);
+		    if (assignment == null) {
+			throw new SiteWhereException(
+				String.format("Device assignment not found for id %s.", deviceAssignmentId.toString()));
+		    }
+		    IDevice device = getDeviceManagement().getDevice(assignment.getDeviceId());
+		    lookupTime.close();
+
+		    createDeviceState(device, assignment, merge);
+		    created.put(deviceAssignmentId, merge);
+		} catch (SiteWhereException e) {
+		    LOGGER.error("Unable to create device state.", e);
+		}
+	    }
+	    merged = mergeAll(created);
+	    if (merged != null) {
+		updated.addAll(merged.values());
+	    }
+	    return updated;
+	}
+
+	/**
+	 * Merge events into existing state for a group of device assignments.
+	 * Returns null if the merge failed.
+	 * 
+	 * @param mergeByAssignmentId
+	 * @return
+	 */
+	protected Map<UUID, ? extends IDeviceState> mergeAll(
+		Map<UUID, DeviceStateEventMergeRequest> mergeByAssignmentId) {
+	    // Monitor time required to merge events to state.
+	    final Histogram.Timer mergeTime = DEVICE_STATE_MERGE_TIMER.labels(getTenantEngine().buildLabels())
+		    .startTimer();
+	    try {
+		return getDeviceStateMergeStrategy().mergeAll(mergeByAssignmentId);
+	    } catch (SiteWhereException e) {
+		LOGGER.error("Unable to persist device state.", e);
+		return null;
+	    } finally {
+		mergeTime.close();
+	    }
+	}
+    }
+
+    /**
+     * Get device state tenant configuration.
+     * 
+     * @return
+     */
+    protected DeviceStateTenantConfiguration getConfiguration() {
+	return configuration;
+    }
+
+    /**
+     * Get device management implementation.
+     * 
+     * @return
+     */
+    protected IDeviceStateManagement getDeviceStateManagement() {
+	return ((IDeviceStateTenantEngine) getTenantEngine()).getDeviceStateManagement();
+    }
+
+    /**
+     * Get strategy used to merge events into device state.
+     * 
+     * @return
+     */
+    protected IDeviceStateMergeStrategy<?> getDeviceStateMergeStrategy() {
+	return ((IDeviceStateTenantEngine) getTenantEngine()).getDeviceStateMergeStrategy();
+    }
+
+    /**
+     * Get device management implementation.
+     * 
+     * @return
+     */
+    protected IDeviceManagement getDeviceManagement() {
+	return ((IDeviceStateMicroservice) getMicroservice()).getDeviceManagement();
+    }
+}
@@ -10,14 +10,19 @@ package com.sitewhere.devicestate.kafka;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.Consumed;
 import org.apache.kafka.streams.kstream.Materialized;
 import org.apache.kafka.streams.kstream.TimeWindows;
 import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowBytesStoreSupplier;
+import org.apache.kafka.streams.state.WindowStore;
 
+import com.sitewhere.devicestate.configuration.DeviceStateTenantConfiguration;
 import com.sitewhere.devicestate.spi.microservice.IDeviceStateTenantEngine;
 import com.sitewhere.grpc.kafka.serdes.SiteWhereSerdes;
 import com.sitewhere.microservice.kafka.KafkaStreamPipeline;
@@ -35,11 +40,14 @@ public class DeviceStatePipeline extends KafkaStreamPipeline {
     /** Number of seconds in window to aggregate events */
     private static final long WINDOW_LENGTH_IN_SECONDS = 5;
 
+    /** Tenant engine configuration */
+    private DeviceStateTenantConfiguration configuration;
+
     /** Aggregates events for window into state object */
     private DeviceStateAggregator aggregator;
 
     /** Persists aggregated events */
-    private DeviceStatePersistenceMapper deviceStatePersistenceMapper;
+    private DeviceStatePersistenceTransformerSupplier deviceStatePersistenceTransformerSupplier;
 
     /*
      * @see com.sitewhere.microservice.kafka.KafkaStreamPipeline#getPipelineName()
@@ -78,13 +86,37 @@ public class DeviceStatePipeline extends KafkaStreamPipeline {
      */
     @Override
     public void buildStreams(StreamsBuilder builder) {
+	// Buffer window aggregates so that they may be persisted in batches.
+	builder.addStateStore(Stores.keyValueStoreBuilder(
+		Stores.inMemoryKeyValueStore(DeviceStatePersistenceTransformerSupplier.BUFFER_STORE_NAME),
+		Serdes.String(), new AggregatedDeviceStateSerde()));
+
+	// Aggregate events by window and persist aggregates.
 	builder.stream(getSourceTopicNames(), Consumed.with(Serdes.UUID(), SiteWhereSerdes.forProcessedEventPayload()))
 		.groupByKey().windowedBy(TimeWindows.of(Duration.ofSeconds(WINDOW_LENGTH_IN_SECONDS)))
-		.aggregate(() -> new AggregatedDeviceState(), getAggregator(),
-			Materialized.as(
-				Stores.inMemoryWindowStore(STORE_NAME, Duration.ofSeconds(WINDOW_LENGTH_IN_SECONDS * 3),
-					Duration.ofSeconds(WINDOW_LENGTH_IN_SECONDS), false)))
-		.toStream().map(getDeviceStatePersistenceMapper());
+		.aggregate(() -> new AggregatedDeviceState(), getAggregator(), getMaterialized()).toStream()
+		.transform(getDeviceStatePersistenceTransformerSupplier(),
+			DeviceStatePersistenceTransformerSupplier.BUFFER_STORE_NAME);
+    }
+
+    /**
+     * Get materialization for the windowed state store. By default windows are
+     * kept in memory. The persistentStateStore tenant setting opts in to a RocksDB
+     * store with the Kafka Streams default RocksDB settings, so heap usage does
+     * not grow with the number of devices and a restarted instance reuses its
+     * local state rather than replaying the full changelog. Record caching is
+     * enabled for both stores, so how often updated aggregates are emitted
+     * downstream does not depend on the store type.
+     * 
+     * @return
+     */
+    protected Materialized<UUID, AggregatedDeviceState, WindowStore<Bytes, byte[]>> getMaterialized() {
+	Duration retention = Duration.ofSeconds(WINDOW_LENGTH_IN_SECONDS * 3);
+	Duration window = Duration.ofSeconds(WINDOW_LENGTH_IN_SECONDS);
+	WindowBytesStoreSupplier supplier = getConfiguration().isPersistentStateStore()
+		? Stores.persistentWindowStore(STORE_NAME, retention, window, false)
+		: Stores.inMemoryWindowStore(STORE_NAME, retention, window, false);
+	return Materialized.<UUID, AggregatedDeviceState>as(supplier).withCachingEnabled();
     }
 
     /*
@@ -94,12 +126,13 @@ public class DeviceStatePipeline extends KafkaStreamPipeline {
      */
     @Override
     public void initialize(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	this.configuration = ((IDeviceStateTenantEngine) getTenantEngine()).getActiveConfiguration();
 	this.aggregator = new DeviceStateAggregator();
-	this.deviceStatePersistenceMapper = new DeviceStatePersistenceMapper(
-		((IDeviceStateTenantEngine) getTenantEngine()).getActiveConfiguration());
+	this.deviceStatePersistenceTransformerSupplier = new DeviceStatePersistenceTransformerSupplier(
+		getConfiguration());
 
 	super.initialize(monitor);
-	initializeNestedComponent(getDeviceStatePersistenceMapper(), monitor, true);
+	initializeNestedComponent(getDeviceStatePersistenceTransformerSupplier(), monitor, true);
     }
 
     /*
@@ -110,7 +143,7 @@ public class DeviceStatePipeline extends KafkaStreamPipeline {
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.start(monitor);
-	startNestedComponent(getDeviceStatePersistenceMapper(), monitor, true);
+	startNestedComponent(getDeviceStatePersistenceTransformerSupplier(), monitor, true);
     }
 
     /*
@@ -121,14 +154,18 @@ public class DeviceStatePipeline extends KafkaStreamPipeline {
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.stop(monitor);
-	stopNestedComponent(getDeviceStatePersistenceMapper(), monitor);
+	stopNestedComponent(getDeviceStatePersistenceTransformerSupplier(), monitor);
+    }
+
+    protected DeviceStateTenantConfiguration getConfiguration() {
+	return configuration;
     }
 
     protected DeviceStateAggregator getAggregator() {
 	return aggregator;
     }
 
-    protected DeviceStatePersistenceMapper getDeviceStatePersistenceMapper() {
-	return deviceStatePersistenceMapper;
+    protected DeviceStatePersistenceTransformerSupplier getDeviceStatePersistenceTransformerSupplier() {
+	return deviceStatePersistenceTransformerSupplier;
     }
 }
@@ -8,17 +8,24 @@
 package com.sitewhere.devicestate.persistence.rdb;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 
+import javax.persistence.Query;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.inject.Inject;
+import com.sitewhere.devicestate.persistence.rdb.entity.Queries;
 import com.sitewhere.devicestate.persistence.rdb.entity.RdbDeviceState;
 import com.sitewhere.devicestate.persistence.rdb.entity.RdbRecentAlertEvent;
 import com.sitewhere.devicestate.persistence.rdb.entity.RdbRecentLocationEvent;
@@ -26,7 +33,6 @@ import com.sitewhere.devicestate.persistence.rdb.entity.RdbRecentMeasurementEven
 import com.sitewhere.devicestate.spi.IDeviceStateMergeStrategy;
 import com.sitewhere.devicestate.spi.microservice.IDeviceStateTenantEngine;
 import com.sitewhere.microservice.api.state.IDeviceStateManagement;
-import com.sitewhere.microservice.util.MarshalUtils;
 import com.sitewhere.rdb.spi.IRdbEntityManagerProvider;
 import com.sitewhere.rdb.spi.ITransactionCallback;
 import com.sitewhere.spi.SiteWhereException;
@@ -93,8 +99,64 @@ public class RdbDeviceStateMergeStrategy implements IDeviceStateMergeStrategy<Rd
 	});
     }
 
+    /*
+     * @see
+     * com.sitewhere.devicestate.spi.IDeviceStateMergeStrategy#mergeAll(java.util.
+     * Map)
+     */
+    @Override
+    public Map<UUID, RdbDeviceState> mergeAll(
+	    Map<UUID, ? extends IDeviceStateEventMergeRequest> requestsByDeviceAssignmentId) throws SiteWhereException {
+	if (requestsByDeviceAssignmentId.isEmpty()) {
+	    return Collections.emptyMap();
+	}
+	LOGGER.debug(String.format("Merging device state for %d assignments.", requestsByDeviceAssignmentId.size()));
+
+	Map<UUID, RdbDeviceState> merged = getRdbEntityManagerProvider()
+		.runInTransaction(new ITransactionCallback<Map<UUID, RdbDeviceState>>() {
+
+		    /*
+		     * @see com.sitewhere.rdb.spi.ITransactionCallback#process()
+		     */
+		    @Override
+		    public Map<UUID, RdbDeviceState> process() {
+			try {
+			    // Load state for all assignments with a single query.
+			    Query query = getRdbEntityManagerProvider()
+				    .query(Queries.QUERY_DEVICE_STATES_BY_DEVICE_ASSIGNMENTS);
+			    query.setParameter("deviceAssignmentIds",
+				    new ArrayList<>(requestsByDeviceAssignmentId.keySet()));
+			    List<RdbDeviceState> states = getRdbEntityManagerProvider().findMany(query,
+				    RdbDeviceState.class);
+
+			    // Merge in memory. Changes are flushed together on commit.
+			    Map<UUID, RdbDeviceState> result = new HashMap<>();
+			    for (RdbDeviceState state : states) {
+				IDeviceStateEventMergeRequest request = requestsByDeviceAssignmentId
+					.get(state.getDeviceAssignmentId());
+				mergeLocations(state, request);
+				mergeMeasurements(state, request);
+				mergeAlerts(state, request);
+				result.put(state.getDeviceAssignmentId(), state);
+			    }
+			    return result;
+			} catch (SiteWhereException e) {
+			    LOGGER.error("Unable to merge device states.", e);
+			    return null;
+			}
+		    }
+		});
+	if (merged == null) {
+	    throw new SiteWhereException("Unable to merge device states.");
+	}
+	return merged;
+    }
+
     /**
-     * Merge device locations into existing state.
+     * Merge device locations into existing state. Recent locations are kept in a
+     * fixed set of rows ordered by slot, so a merge updates at most
+     * {@link #NUM_RECENT_LOCATIONS} rows in place and only inserts rows until all
+     * slots are filled.
      * 
      * @param original
      * @param request
@@ -103,15 +165,25 @@ public class RdbDeviceStateMergeStrategy implements IDeviceStateMergeStrategy<Rd
     protected void mergeLocations(RdbDeviceState original, IDeviceStateEventMergeRequest request)
 	    throws SiteWhereException {
 	if (request.getLocations().size() > 0) {
+	    // Existing rows are ordered by slot.
+	    List<RdbRecentLocationEvent> slots = original.getRecentLocations();
+	    if (slots == null) {
+		slots = new ArrayList<>();
+		original.setRecentLocations(slots);
+	    }
+
 	    // Combine existing with new locations.
 	    List<IDeviceLocation> all = new ArrayList<>();
-	    List<RdbRecentLocationEvent> recent = original.getRecentLocations();
-	    if (recent != null) {
-		for (RdbRecentLocationEvent current : recent) {
-		    all.add(RdbRecentLocationEvent.createApiFrom(current));
+	    Set<UUID> existingEventIds = new HashSet<>();
+	    for (RdbRecentLocationEvent current : slots) {
+		all.add(RdbRecentLocationEvent.createApiFrom(current));
+		existingEventIds.add(current.getEventId());
+	    }
+	    for (IDeviceLocation location : request.getLocations()) {
+		if (!existingEventIds.contains(location.getId())) {
+		    all.add(location);
 		}
 	    }
-	    all.addAll(request.getLocations());
 
 	    // Inverse sort of locations by event date.
 	    all.sort(new Comparator<IDeviceLocation>() {
@@ -122,24 +194,27 @@ public class RdbDeviceStateMergeStrategy implements IDeviceStateMergeStrategy<Rd
 		}
 	    });
 
-	    int remaining = NUM_RECENT_LOCATIONS;
-	    List<RdbRecentLocationEvent> updated = new ArrayList<>();
-	    while (remaining > 0) {
-		if (all.size() > 0) {
-		    IDeviceLocation location = all.remove(0);
+	    // Write newest locations into slots, reusing existing rows.
+	    int count = Math.min(NUM_RECENT_LOCATIONS, all.size());
+	    for (int slot = 0; slot < count; slot++) {
+		IDeviceLocation location = all.get(slot);
+		if (slot < slots.size()) {
+		    RdbRecentLocationEvent rdb = slots.get(slot);
+		    if (!Objects.equals(location.getId(), rdb.getEventId())) {
+			RdbRecentLocationEvent.copy(location, rdb);
+		    }
+		} else {
 		    RdbRecentLocationEvent rdb = RdbRecentLocationEvent.createFrom(original, location);
-		    rdb = getRdbEntityManagerProvider().persist(rdb);
-		    updated.add(rdb);
+		    rdb.setSlot(slot);
+		    slots.add(getRdbEntityManagerProvider().persist(rdb));
 		}
-		remaining--;
 	    }
-
-	    original.setRecentLocations(updated);
 	}
     }
 
     /**
-     * Merge device measurements into existing state.
+     * Merge device measurements into existing state. Each measurement name has a
+     * single row which is updated in place.
      * 
      * @param original
      * @param request
@@ -148,53 +223,49 @@ public class RdbDeviceStateMergeStrategy implements IDeviceStateMergeStrategy<Rd
     protected void mergeMeasurements(RdbDeviceState original, IDeviceStateEventMergeRequest request)
 	    throws SiteWhereException {
 	if (request.getMeasurements().size() > 0) {
-	    // Create map of existing measurements by name.
-	    Map<String, RdbRecentMeasurementEvent> eventsByMxName = new HashMap<>();
 	    List<RdbRecentMeasurementEvent> recent = original.getRecentMeasurements();
-	    if (recent != null) {
-		for (RdbRecentMeasurementEvent current : recent) {
-		    eventsByMxName.put(current.getName(), current);
-		}
+	    if (recent == null) {
+		recent = new ArrayList<>();
+		original.setRecentMeasurements(recent);
 	    }
 
-	    // Sort measurements by event date.
-	    request.getMeasurements().sort(new Comparator<IDeviceMeasurement>() {
-
-		@Override
-		public int compare(IDeviceMeasurement o1, IDeviceMeasurement o2) {
-		    return o1.getEventDate().compareTo(o2.getEventDate());
-		}
-	    });
+	    // Create map of existing measurements by name.
+	    Map<String, RdbRecentMeasurementEvent> eventsByMxName = new HashMap<>();
+	    for (RdbRecentMeasurementEvent current : recent) {
+		eventsByMxName.put(current.getName(), current);
+	    }
 
 	    // Add or update measurements based on new events.
 	    for (IDeviceMeasurement current : request.getMeasurements()) {
+		if (current.getValue() == null) {
+		    continue;
+		}
 		RdbRecentMeasurementEvent rdb = eventsByMxName.get(current.getName());
 		if (rdb == null) {
 		    rdb = RdbRecentMeasurementEvent.createFrom(original, current);
 		    rdb = getRdbEntityManagerProvider().persist(rdb);
 		    eventsByMxName.put(rdb.getName(), rdb);
+		    recent.add(rdb);
+		    continue;
 		}
-		if ((rdb.getMaxValue() == null) || (current.getValue().compareTo(rdb.getValue()) > 0)) {
+		if (isNewer(current.getEventDate(), rdb.getEventDate())) {
+		    RdbRecentMeasurementEvent.copy(current, rdb);
+		}
+		if ((rdb.getMaxValue() == null) || (current.getValue().compareTo(rdb.getMaxValue()) > 0)) {
 		    rdb.setMaxValue(current.getValue());
-		    rdb.setMaxValueDate(new Date());
+		    rdb.setMaxValueDate(current.getEventDate());
 		}
-		if ((rdb.getMinValue() == null) || (current.getValue().compareTo(rdb.getValue()) < 0)) {
+		if ((rdb.getMinValue() == null) || (current.getValue().compareTo(rdb.getMinValue()) < 0)) {
 		    rdb.setMinValue(current.getValue());
-		    rdb.setMinValueDate(new Date());
+		    rdb.setMinValueDate(current.getEventDate());
 		}
 	    }
-
-	    // Set list of updated measurements.
-	    List<RdbRecentMeasurementEvent> updated = new ArrayList<>();
-	    for (RdbRecentMeasurementEvent current : eventsByMxName.values()) {
-		updated.add(current);
-	    }
-	    original.setRecentMeasurements(updated);
 	}
     }
 
     /**
-     * Merge device alerts into existing state.
+     * Merge device alerts into existing state. Each alert type has a single row
+     * which is updated in place.
      * 
      * @param original
      * @param request
@@ -202,27 +273,18 @@ public class RdbDeviceStateMergeStrategy implements IDeviceStateMergeStrategy<Rd
      */
     protected void mergeAlerts(RdbDeviceState original, IDeviceStateEventMergeRequest request)
 	    throws SiteWhereException {
-	LOGGER.info(String.format("About to merge %s alerts.", request.getAlerts().size()));
 	if (request.getAlerts().size() > 0) {
-	    // Create map of existing measurements by name.
-	    Map<String, RdbRecentAlertEvent> eventsByAlertType = new HashMap<>();
 	    List<RdbRecentAlertEvent> recent = original.getRecentAlerts();
-	    if (recent != null) {
-		for (RdbRecentAlertEvent current : recent) {
-		    eventsByAlertType.put(current.getType(), current);
-		}
+	    if (recent == null) {
+		recent = new ArrayList<>();
+		original.setRecentAlerts(recent);
 	    }
-	    LOGGER.info(
-		    String.format("Alerts before:\n%s\n\n", MarshalUtils.marshalJsonAsPrettyString(eventsByAlertType)));
 
-	    // Sort alerts event date.
-	    request.getAlerts().sort(new Comparator<IDeviceAlert>() {
-
-		@Override
-		public int compare(IDeviceAlert o1, IDeviceAlert o2) {
-		    return o1.getEventDate().compareTo(o2.getEventDate());
-		}
-	    });
+	    // Create map of existing alerts by type.
+	    Map<String, RdbRecentAlertEvent> eventsByAlertType = new HashMap<>();
+	    for (RdbRecentAlertEvent current : recent) {
+		eventsByAlertType.put(current.getType(), current);
+	    }
 
 	    // Add or update alerts based on new events.
 	    for (IDeviceAlert current : request.getAlerts()) {
@@ -231,18 +293,26 @@ public class RdbDeviceStateMergeStrategy implements IDeviceStateMergeStrategy<Rd
 		    rdb = RdbRecentAlertEvent.createFrom(original, current);
 		    rdb = getRdbEntityManagerProvider().persist(rdb);
 		    eventsByAlertType.put(rdb.getType(), rdb);
+		    recent.add(rdb);
+		} else if (isNewer(current.getEventDate(), rdb.getEventDate())) {
+		    RdbRecentAlertEvent.copy(current, rdb);
 		}
 	    }
-	    LOGGER.info(String.format("Alerts updated:\n%s\n\n",
-		    MarshalUtils.marshalJsonAsPrettyString(eventsByAlertType)));
+	}
+    }
 
-	    // Set list of updated measurements.
-	    List<RdbRecentAlertEvent> updated = new ArrayList<>();
-	    for (RdbRecentAlertEvent current : eventsByAlertType.values()) {
-		updated.add(current);
-	    }
-	    original.setRecentAlerts(updated);
+    /**
+     * Indicates whether an event date is newer than the one already stored.
+     * 
+     * @param candidate
+     * @param existing
+     * @return
+     */
+    protected static boolean isNewer(Date candidate, Date existing) {
+	if (candidate == null) {
+	    return false;
 	}
+	return (existing == null) || candidate.after(existing);
     }
 
     protected IDeviceStateTenantEngine getTenantEngine() {
@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.devicestate.persistence.rdb.entity;
+
+public class Queries {
+
+    /** Get device states for a list of device assignment ids */
+    public static final String QUERY_DEVICE_STATES_BY_DEVICE_ASSIGNMENTS = "deviceStates_findByDeviceAssignments";
+}
@@ -24,9 +24,13 @@ import javax.persistence.Id;
 import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.MapKeyColumn;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
+import javax.persistence.OrderBy;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
 
@@ -37,11 +41,16 @@ import com.sitewhere.spi.device.state.IDeviceState;
 @Table(name = "device_state", indexes = {
 	@Index(name = "device_state_device", columnList = "device_id", unique = false),
 	@Index(name = "device_state_device_assignment", columnList = "device_assignment_id", unique = true) })
+@NamedQueries({
+	@NamedQuery(name = Queries.QUERY_DEVICE_STATES_BY_DEVICE_ASSIGNMENTS, query = "SELECT s FROM RdbDeviceState s WHERE s.deviceAssignmentId IN :deviceAssignmentIds") })
 public class RdbDeviceState implements IDeviceState {
 
     /** Serial version UID */
     private static final long serialVersionUID = -44935949900753350L;
 
+    /** Number of states whose recent events are loaded together */
+    private static final int RECENT_EVENTS_BATCH_SIZE = 100;
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     @Column(name = "id")
@@ -73,14 +82,18 @@ public class RdbDeviceState implements IDeviceState {
 
     @JsonIgnore
     @OneToMany(mappedBy = "deviceState", fetch = FetchType.LAZY)
+    @BatchSize(size = RECENT_EVENTS_BATCH_SIZE)
+    @OrderBy("slot")
     private List<RdbRecentLocationEvent> recentLocations;
 
     @JsonIgnore
     @OneToMany(mappedBy = "deviceState", fetch = FetchType.LAZY)
+    @BatchSize(size = RECENT_EVENTS_BATCH_SIZE)
     private List<RdbRecentMeasurementEvent> recentMeasurements;
 
     @JsonIgnore
     @OneToMany(mappedBy = "deviceState", fetch = FetchType.LAZY)
+    @BatchSize(size = RECENT_EVENTS_BATCH_SIZE)
     private List<RdbRecentAlertEvent> recentAlerts;
 
     @ElementCollection(fetch = FetchType.EAGER)
@@ -18,6 +18,7 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -33,7 +34,8 @@ import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.state.IRecentAlertEvent;
 
 @Entity
-@Table(name = "recent_alert_event")
+@Table(name = "recent_alert_event", indexes = {
+	@Index(name = "recent_alert_event_type", columnList = "device_state_id,type", unique = true) })
 public class RdbRecentAlertEvent implements IRecentAlertEvent {
 
     /** Serial version UID */
@@ -213,13 +215,23 @@ public class RdbRecentAlertEvent implements IRecentAlertEvent {
     public static RdbRecentAlertEvent createFrom(RdbDeviceState state, IDeviceAlert api) {
 	RdbRecentAlertEvent rdb = new RdbRecentAlertEvent();
 	rdb.setDeviceStateId(state.getId());
+	copy(api, rdb);
+	return rdb;
+    }
+
+    /**
+     * Copy event fields from API entity so an existing row can be reused.
+     * 
+     * @param api
+     * @param rdb
+     */
+    public static void copy(IDeviceAlert api, RdbRecentAlertEvent rdb) {
 	rdb.setEventId(api.getId());
 	rdb.setEventDate(api.getEventDate());
 	rdb.setSource(api.getSource());
 	rdb.setLevel(api.getLevel());
 	rdb.setType(api.getType());
 	rdb.setMessage(api.getMessage());
-	return rdb;
     }
 
     /**
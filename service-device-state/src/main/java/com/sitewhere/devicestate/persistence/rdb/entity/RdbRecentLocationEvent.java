@@ -17,6 +17,7 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -30,7 +31,8 @@ import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.state.IRecentLocationEvent;
 
 @Entity
-@Table(name = "recent_location_event")
+@Table(name = "recent_location_event", indexes = {
+	@Index(name = "recent_location_event_slot", columnList = "device_state_id,slot", unique = true) })
 public class RdbRecentLocationEvent implements IRecentLocationEvent {
 
     /** Serial version UID */
@@ -49,6 +51,10 @@ public class RdbRecentLocationEvent implements IRecentLocationEvent {
     @JoinColumn(name = "device_state_id", insertable = false, updatable = false)
     private RdbDeviceState deviceState;
 
+    /** Position in ring of recent locations (zero is newest) */
+    @Column(name = "slot", nullable = false)
+    private int slot;
+
     @Column(name = "event_date ")
     private Date eventDate;
 
@@ -97,6 +103,14 @@ public class RdbRecentLocationEvent implements IRecentLocationEvent {
 	this.deviceState = deviceState;
     }
 
+    public int getSlot() {
+	return slot;
+    }
+
+    public void setSlot(int slot) {
+	this.slot = slot;
+    }
+
     /*
      * @see com.sitewhere.spi.device.state.IRecentStateEvent#getEventDate()
      */
@@ -182,12 +196,22 @@ public class RdbRecentLocationEvent implements IRecentLocationEvent {
     public static RdbRecentLocationEvent createFrom(RdbDeviceState state, IDeviceLocation api) {
 	RdbRecentLocationEvent rdb = new RdbRecentLocationEvent();
 	rdb.setDeviceStateId(state.getId());
+	copy(api, rdb);
+	return rdb;
+    }
+
+    /**
+     * Copy event fields from API entity so an existing row can be reused.
+     * 
+     * @param api
+     * @param rdb
+     */
+    public static void copy(IDeviceLocation api, RdbRecentLocationEvent rdb) {
 	rdb.setEventId(api.getId());
 	rdb.setEventDate(api.getEventDate());
 	rdb.setLatitude(api.getLatitude());
 	rdb.setLongitude(api.getLongitude());
 	rdb.setElevation(api.getElevation());
-	return rdb;
     }
 
     /**
@@ -198,7 +222,7 @@ public class RdbRecentLocationEvent implements IRecentLocationEvent {
      */
     public static IDeviceLocation createApiFrom(RdbRecentLocationEvent rdb) {
 	DeviceLocation api = new DeviceLocation();
-	api.setId(rdb.getId());
+	api.setId(rdb.getEventId());
 	api.setEventDate(rdb.getEventDate());
 	api.setLatitude(rdb.getLatitude());
 	api.setLongitude(rdb.getLongitude());
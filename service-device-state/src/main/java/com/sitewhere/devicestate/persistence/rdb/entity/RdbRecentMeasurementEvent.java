@@ -17,6 +17,7 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -30,7 +31,8 @@ import com.sitewhere.spi.device.event.IDeviceMeasurement;
 import com.sitewhere.spi.device.state.IRecentMeasurementEvent;
 
 @Entity
-@Table(name = "recent_measurement_event")
+@Table(name = "recent_measurement_event", indexes = {
+	@Index(name = "recent_measurement_event_name", columnList = "device_state_id,name", unique = true) })
 public class RdbRecentMeasurementEvent implements IRecentMeasurementEvent {
 
     /** Serial version UID */
@@ -242,15 +244,26 @@ public class RdbRecentMeasurementEvent implements IRecentMeasurementEvent {
     public static RdbRecentMeasurementEvent createFrom(RdbDeviceState state, IDeviceMeasurement api) {
 	RdbRecentMeasurementEvent rdb = new RdbRecentMeasurementEvent();
 	rdb.setDeviceStateId(state.getId());
+	copy(api, rdb);
+	rdb.setMaxValue(api.getValue());
+	rdb.setMaxValueDate(api.getEventDate());
+	rdb.setMinValue(api.getValue());
+	rdb.setMinValueDate(api.getEventDate());
+	return rdb;
+    }
+
+    /**
+     * Copy latest value fields from API entity so an existing row can be reused.
+     * Minimum and maximum values are not changed.
+     * 
+     * @param api
+     * @param rdb
+     */
+    public static void copy(IDeviceMeasurement api, RdbRecentMeasurementEvent rdb) {
 	rdb.setEventId(api.getId());
 	rdb.setEventDate(api.getEventDate());
 	rdb.setName(api.getName());
 	rdb.setValue(api.getValue());
-	rdb.setMaxValue(api.getValue());
-	rdb.setMaxValueDate(new Date());
-	rdb.setMinValue(api.getValue());
-	rdb.setMinValueDate(new Date());
-	return rdb;
     }
 
     /**
@@ -7,6 +7,7 @@
  */
 package com.sitewhere.devicestate.spi;
 
+import java.util.Map;
 import java.util.UUID;
 
 import com.sitewhere.spi.SiteWhereException;
@@ -27,4 +28,16 @@ public interface IDeviceStateMergeStrategy<T extends IDeviceState> {
      * @throws SiteWhereException
      */
     T merge(UUID deviceStateId, IDeviceStateEventMergeRequest request) throws SiteWhereException;
+
+    /**
+     * Merges event updates into the device state for each device assignment in a
+     * single transaction. Assignments that do not have device state yet are left
+     * out of the result so that state may be created for them.
+     * 
+     * @param requestsByDeviceAssignmentId
+     * @return merged device state by device assignment id
+     * @throws SiteWhereException
+     */
+    Map<UUID, T> mergeAll(Map<UUID, ? extends IDeviceStateEventMergeRequest> requestsByDeviceAssignmentId)
+	    throws SiteWhereException;
 }
@@ -0,0 +1,60 @@
+-- Remove recent events not attached to a device state.
+delete from devicestate.recent_location_event where device_state_id is null;
+delete from devicestate.recent_measurement_event where device_state_id is null;
+delete from devicestate.recent_alert_event where device_state_id is null;
+
+-- Keep the three most recent locations for each device state and number them by slot.
+alter table devicestate.recent_location_event add column slot integer;
+
+delete from devicestate.recent_location_event e
+	using (
+		select id, row_number() over (partition by device_state_id order by event_date desc nulls last, id) as rn
+		from devicestate.recent_location_event
+	) ranked
+	where e.id = ranked.id and ranked.rn > 3;
+
+update devicestate.recent_location_event e
+	set slot = ranked.rn - 1
+	from (
+		select id, row_number() over (partition by device_state_id order by event_date desc nulls last, id) as rn
+		from devicestate.recent_location_event
+	) ranked
+	where e.id = ranked.id;
+
+alter table devicestate.recent_location_event alter column slot set not null;
+create unique index recent_location_event_slot on devicestate.recent_location_event (device_state_id, slot);
+
+-- Fold duplicate measurements into the most recent row for each name.
+update devicestate.recent_measurement_event e
+	set min_value = agg.min_value, min_value_date = agg.min_value_date,
+		max_value = agg.max_value, max_value_date = agg.max_value_date
+	from (
+		select device_state_id, name,
+			min(min_value) as min_value,
+			(array_agg(min_value_date order by min_value asc nulls last))[1] as min_value_date,
+			max(max_value) as max_value,
+			(array_agg(max_value_date order by max_value desc nulls last))[1] as max_value_date
+		from devicestate.recent_measurement_event
+		group by device_state_id, name
+		having count(*) > 1
+	) agg
+	where e.device_state_id = agg.device_state_id and e.name = agg.name;
+
+delete from devicestate.recent_measurement_event e
+	using (
+		select id, row_number() over (partition by device_state_id, name order by event_date desc nulls last, id) as rn
+		from devicestate.recent_measurement_event
+	) ranked
+	where e.id = ranked.id and ranked.rn > 1;
+
+create unique index recent_measurement_event_name on devicestate.recent_measurement_event (device_state_id, name);
+
+-- Keep the most recent alert of each type.
+delete from devicestate.recent_alert_event e
+	using (
+		select id, row_number() over (partition by device_state_id, type order by event_date desc nulls last, id) as rn
+		from devicestate.recent_alert_event
+	) ranked
+	where e.id = ranked.id and ranked.rn > 1;
+
+create unique index recent_alert_event_type on devicestate.recent_alert_event (device_state_id, type);
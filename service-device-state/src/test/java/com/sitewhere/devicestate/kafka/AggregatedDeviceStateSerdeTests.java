@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.devicestate.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.sitewhere.microservice.util.MarshalUtils;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurement;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.device.event.AlertSource;
+
+/**
+ * Checks the binary serde for {@link AggregatedDeviceState} and reading of state
+ * stored as JSON.
+ */
+public class AggregatedDeviceStateSerdeTests {
+
+    /** Number of distinct measurement names */
+    private static final int MEASUREMENT_NAMES = 10;
+
+    /** Number of distinct alert types */
+    private static final int ALERT_TYPES = 3;
+
+    @Test
+    public void testRoundTrip() throws Exception {
+	AggregatedDeviceState original = createState();
+	AggregatedDeviceState copy = AggregatedDeviceStateBinaryFormat
+		.unmarshal(AggregatedDeviceStateBinaryFormat.marshal(original));
+
+	assertEquals(original.getDeviceLocations().size(), copy.getDeviceLocations().size());
+	for (int i = 0; i < original.getDeviceLocations().size(); i++) {
+	    DeviceLocation expected = original.getDeviceLocations().get(i);
+	    DeviceLocation actual = copy.getDeviceLocations().get(i);
+	    assertEvent(expected, actual);
+	    assertEquals(expected.getLatitude(), actual.getLatitude());
+	    assertEquals(expected.getLongitude(), actual.getLongitude());
+	    assertEquals(expected.getElevation(), actual.getElevation());
+	}
+	assertEquals(original.getLatestMeasurements().size(), copy.getLatestMeasurements().size());
+	for (String name : original.getLatestMeasurements().keySet()) {
+	    DeviceMeasurement expected = original.getLatestMeasurements().get(name);
+	    DeviceMeasurement actual = copy.getLatestMeasurements().get(name);
+	    assertEvent(expected, actual);
+	    assertEquals(expected.getName(), actual.getName());
+	    assertEquals(expected.getValue(), actual.getValue());
+	    assertEquals(original.getMinMeasurements().get(name).getValue(),
+		    copy.getMinMeasurements().get(name).getValue());
+	    assertEquals(original.getMaxMeasurements().get(name).getValue(),
+		    copy.getMaxMeasurements().get(name).getValue());
+	}
+	assertEquals(original.getDeviceMeasurements().size(), copy.getDeviceMeasurements().size());
+	assertEquals(original.getLatestAlerts().size(), copy.getLatestAlerts().size());
+	for (String type : original.getLatestAlerts().keySet()) {
+	    DeviceAlert expected = original.getLatestAlerts().get(type);
+	    DeviceAlert actual = copy.getLatestAlerts().get(type);
+	    assertEvent(expected, actual);
+	    assertEquals(expected.getSource(), actual.getSource());
+	    assertEquals(expected.getLevel(), actual.getLevel());
+	    assertEquals(expected.getType(), actual.getType());
+	    assertEquals(expected.getMessage(), actual.getMessage());
+	}
+    }
+
+    @Test
+    public void testSharedMeasurements() throws Exception {
+	AggregatedDeviceState state = new AggregatedDeviceState();
+	state.updateFromMeasurement(createMeasurement("temp", 10.5, 0));
+	AggregatedDeviceState copy = AggregatedDeviceStateBinaryFormat
+		.unmarshal(AggregatedDeviceStateBinaryFormat.marshal(state));
+	assertSame(copy.getLatestMeasurements().get("temp"), copy.getMinMeasurements().get("temp"));
+	assertSame(copy.getLatestMeasurements().get("temp"), copy.getMaxMeasurements().get("temp"));
+	assertEquals(1, copy.getDeviceMeasurements().size());
+    }
+
+    @Test
+    public void testReadsJson() throws Exception {
+	AggregatedDeviceState original = createState();
+	byte[] json = new AggregatedDeviceState.DeviceStateSerializer().serialize("test", original);
+	AggregatedDeviceState copy = new AggregatedDeviceStateSerde().deserializer().deserialize("test", json);
+	assertEquals(original.getDeviceLocations().size(), copy.getDeviceLocations().size());
+	assertEquals(original.getDeviceMeasurements().size(), copy.getDeviceMeasurements().size());
+	assertEquals(original.getDeviceAlerts().size(), copy.getDeviceAlerts().size());
+    }
+
+    @Test
+    public void testReadsLegacyJson() throws Exception {
+	byte[] json = MarshalUtils.marshalJson(createLegacyState());
+	AggregatedDeviceState state = new AggregatedDeviceStateSerde().deserializer().deserialize("test", json);
+
+	// Four locations in arrival order are reduced to the three newest.
+	assertEquals(AggregatedDeviceState.MAX_LOCATIONS, state.getDeviceLocations().size());
+	assertValue("4.0", state.getDeviceLocations().get(0).getLatitude());
+	assertValue("3.0", state.getDeviceLocations().get(1).getLatitude());
+	assertValue("2.0", state.getDeviceLocations().get(2).getLatitude());
+
+	// Three temperature readings fold into latest, minimum and maximum.
+	assertEquals(2, state.getLatestMeasurements().size());
+	assertValue("21.5", state.getLatestMeasurements().get("temp").getValue());
+	assertValue("18.0", state.getMinMeasurements().get("temp").getValue());
+	assertValue("25.0", state.getMaxMeasurements().get("temp").getValue());
+	assertValue("40", state.getLatestMeasurements().get("humidity").getValue());
+	assertEquals(4, state.getDeviceMeasurements().size());
+
+	// Only the latest alert of each type is kept.
+	assertEquals(2, state.getDeviceAlerts().size());
+	assertEquals("Second overheat", state.getLatestAlerts().get("overheat").getMessage());
+	assertTrue(state.getLatestAlerts().containsKey("tamper"));
+    }
+
+    protected void assertValue(String expected, BigDecimal actual) {
+	assertEquals(0, new BigDecimal(expected).compareTo(actual));
+    }
+
+    protected void assertEvent(DeviceEvent expected, DeviceEvent actual) {
+	assertEquals(expected.getId(), actual.getId());
+	assertEquals(expected.getAlternateId(), actual.getAlternateId());
+	assertEquals(expected.getEventType(), actual.getEventType());
+	assertEquals(expected.getDeviceId(), actual.getDeviceId());
+	assertEquals(expected.getDeviceAssignmentId(), actual.getDeviceAssignmentId());
+	assertEquals(expected.getCustomerId(), actual.getCustomerId());
+	assertEquals(expected.getAreaId(), actual.getAreaId());
+	assertEquals(expected.getAssetId(), actual.getAssetId());
+	assertEquals(expected.getEventDate(), actual.getEventDate());
+	assertEquals(expected.getReceivedDate(), actual.getReceivedDate());
+	assertEquals(expected.getMetadata(), actual.getMetadata());
+    }
+
+    /**
+     * Create state similar to a busy window for a single device.
+     * 
+     * @return
+     */
+    protected AggregatedDeviceState createState() {
+	AggregatedDeviceState state = new AggregatedDeviceState();
+	for (int i = 0; i < 5; i++) {
+	    DeviceLocation location = new DeviceLocation();
+	    populate(location, i);
+	    location.setLatitude(new BigDecimal("33.7550").add(BigDecimal.valueOf(i)));
+	    location.setLongitude(new BigDecimal("-84.3900"));
+	    location.setElevation(BigDecimal.ZERO);
+	    state.updateFromLocation(location);
+	}
+	for (int i = 0; i < MEASUREMENT_NAMES * 5; i++) {
+	    state.updateFromMeasurement(createMeasurement("mx-" + (i % MEASUREMENT_NAMES), (i * 7) % 13, i));
+	}
+	for (int i = 0; i < ALERT_TYPES * 2; i++) {
+	    DeviceAlert alert = new DeviceAlert();
+	    populate(alert, i);
+	    alert.setSource(AlertSource.Device);
+	    alert.setLevel(AlertLevel.Warning);
+	    alert.setType("alert-" + (i % ALERT_TYPES));
+	    alert.setMessage("Alert message " + i);
+	    state.updateFromAlert(alert);
+	}
+	return state;
+    }
+
+    /**
+     * Create state in the shape written by earlier versions, which kept every
+     * event in the window as a list.
+     * 
+     * @return
+     */
+    protected Map<String, Object> createLegacyState() {
+	List<DeviceLocation> locations = new ArrayList<>();
+	for (int i = 1; i <= 4; i++) {
+	    DeviceLocation location = new DeviceLocation();
+	    populate(location, i);
+	    location.setLatitude(new BigDecimal(i + ".0"));
+	    location.setLongitude(BigDecimal.ZERO);
+	    locations.add(location);
+	}
+	List<DeviceMeasurement> measurements = new ArrayList<>();
+	measurements.add(createMeasurement("temp", 25.0, 1));
+	measurements.add(createMeasurement("temp", 18.0, 2));
+	measurements.add(createMeasurement("humidity", 40, 3));
+	measurements.add(createMeasurement("temp", 21.5, 4));
+	List<DeviceAlert> alerts = new ArrayList<>();
+	alerts.add(createAlert("overheat", "First overheat", 1));
+	alerts.add(createAlert("tamper", "Tamper", 2));
+	alerts.add(createAlert("overheat", "Second overheat", 3));
+
+	Map<String, Object> legacy = new HashMap<>();
+	legacy.put("deviceLocations", locations);
+	legacy.put("deviceMeasurements", measurements);
+	legacy.put("deviceAlerts", alerts);
+	return legacy;
+    }
+
+    protected DeviceAlert createAlert(String type, String message, int offset) {
+	DeviceAlert alert = new DeviceAlert();
+	populate(alert, offset);
+	alert.setSource(AlertSource.Device);
+	alert.setLevel(AlertLevel.Warning);
+	alert.setType(type);
+	alert.setMessage(message);
+	return alert;
+    }
+
+    protected DeviceMeasurement createMeasurement(String name, double value, int offset) {
+	DeviceMeasurement mx = new DeviceMeasurement();
+	populate(mx, offset);
+	mx.setName(name);
+	mx.setValue(BigDecimal.valueOf(value));
+	return mx;
+    }
+
+    protected void populate(DeviceEvent event, int offset) {
+	event.setId(UUID.randomUUID());
+	event.setDeviceId(UUID.randomUUID());
+	event.setDeviceAssignmentId(UUID.randomUUID());
+	event.setCustomerId(UUID.randomUUID());
+	event.setAreaId(UUID.randomUUID());
+	event.setEventDate(new Date(1500000000000L + (offset * 1000L)));
+	event.setReceivedDate(new Date(1500000000000L + (offset * 1000L) + 50));
+	Map<String, String> metadata = new HashMap<>();
+	metadata.put("source", "test");
+	event.setMetadata(metadata);
+    }
+}
@@ -18,12 +18,66 @@ public class EventManagementTenantConfiguration implements ITenantEngineConfigur
     /** Default number of threads used for concurrent processing of events */
     private static final int DEFAULT_PROCESSING_THREAD_COUNT = 10;
 
+    /** Default maximum number of events in a persistence batch */
+    private static final int DEFAULT_PERSISTENCE_BATCH_SIZE = 500;
+
+    /** Default maximum time events wait for a persistence batch */
+    private static final long DEFAULT_PERSISTENCE_BATCH_INTERVAL_MS = 100;
+
+    /** Default number of buffered writes that triggers a datastore batch */
+    private static final int DEFAULT_DATASTORE_WRITE_BATCH_SIZE = 1000;
+
+    /** Default maximum time writes are buffered before a datastore batch */
+    private static final long DEFAULT_DATASTORE_WRITE_BATCH_INTERVAL_MS = 100;
+
+    /** Default maximum number of datastore writes pending at once */
+    private static final int DEFAULT_DATASTORE_MAX_PENDING_WRITES = 10000;
+
+    /** Default number of results streamed per chunk for datastore queries */
+    private static final int DEFAULT_DATASTORE_QUERY_CHUNK_SIZE = 1000;
+
+    /** Default number of alternate ids kept in the local index */
+    private static final int DEFAULT_ALTERNATE_ID_INDEX_SIZE = 100000;
+
+    /** Default time alternate ids remain available for lookups (7 days) */
+    private static final long DEFAULT_ALTERNATE_ID_TTL_MS = 7L * 24 * 60 * 60 * 1000;
+
     /** Datastore definition */
     private DatastoreDefinition datastore;
 
     /** Number of threads used for concurrent processing of events */
     private int processingThreadCount = DEFAULT_PROCESSING_THREAD_COUNT;
 
+    /** Maximum number of events in a persistence batch */
+    private int persistenceBatchSize = DEFAULT_PERSISTENCE_BATCH_SIZE;
+
+    /** Maximum time events wait for a persistence batch */
+    private long persistenceBatchIntervalMs = DEFAULT_PERSISTENCE_BATCH_INTERVAL_MS;
+
+    /** Number of buffered writes that triggers a datastore batch */
+    private int datastoreWriteBatchSize = DEFAULT_DATASTORE_WRITE_BATCH_SIZE;
+
+    /** Maximum time writes are buffered before a datastore batch */
+    private long datastoreWriteBatchIntervalMs = DEFAULT_DATASTORE_WRITE_BATCH_INTERVAL_MS;
+
+    /** Maximum number of datastore writes pending at once */
+    private int datastoreMaxPendingWrites = DEFAULT_DATASTORE_MAX_PENDING_WRITES;
+
+    /** Number of results streamed per chunk for datastore queries (0 disables) */
+    private int datastoreQueryChunkSize = DEFAULT_DATASTORE_QUERY_CHUNK_SIZE;
+
+    /** Indicates whether searches skip counting total matches */
+    private boolean datastoreSkipSearchCounts = false;
+
+    /** Number of alternate ids kept in the local index (0 disables) */
+    private int alternateIdIndexSize = DEFAULT_ALTERNATE_ID_INDEX_SIZE;
+
+    /** Time alternate ids remain available for lookups (0 is unbounded) */
+    private long alternateIdTtlMs = DEFAULT_ALTERNATE_ID_TTL_MS;
+
+    /** Indicates whether alternate ids missing from the index are searched for */
+    private boolean alternateIdFallbackEnabled = true;
+
     public DatastoreDefinition getDatastore() {
 	return datastore;
     }
@@ -39,4 +93,84 @@ public class EventManagementTenantConfiguration implements ITenantEngineConfigur
     public void setProcessingThreadCount(int processingThreadCount) {
 	this.processingThreadCount = processingThreadCount;
     }
+
+    public int getPersistenceBatchSize() {
+	return persistenceBatchSize;
+    }
+
+    public void setPersistenceBatchSize(int persistenceBatchSize) {
+	this.persistenceBatchSize = persistenceBatchSize;
+    }
+
+    public long getPersistenceBatchIntervalMs() {
+	return persistenceBatchIntervalMs;
+    }
+
+    public void setPersistenceBatchIntervalMs(long persistenceBatchIntervalMs) {
+	this.persistenceBatchIntervalMs = persistenceBatchIntervalMs;
+    }
+
+    public int getDatastoreWriteBatchSize() {
+	return datastoreWriteBatchSize;
+    }
+
+    public void setDatastoreWriteBatchSize(int datastoreWriteBatchSize) {
+	this.datastoreWriteBatchSize = datastoreWriteBatchSize;
+    }
+
+    public long getDatastoreWriteBatchIntervalMs() {
+	return datastoreWriteBatchIntervalMs;
+    }
+
+    public void setDatastoreWriteBatchIntervalMs(long datastoreWriteBatchIntervalMs) {
+	this.datastoreWriteBatchIntervalMs = datastoreWriteBatchIntervalMs;
+    }
+
+    public int getDatastoreMaxPendingWrites() {
+	return datastoreMaxPendingWrites;
+    }
+
+    public void setDatastoreMaxPendingWrites(int datastoreMaxPendingWrites) {
+	this.datastoreMaxPendingWrites = datastoreMaxPendingWrites;
+    }
+
+    public int getDatastoreQueryChunkSize() {
+	return datastoreQueryChunkSize;
+    }
+
+    public void setDatastoreQueryChunkSize(int datastoreQueryChunkSize) {
+	this.datastoreQueryChunkSize = datastoreQueryChunkSize;
+    }
+
+    public boolean isDatastoreSkipSearchCounts() {
+	return datastoreSkipSearchCounts;
+    }
+
+    public void setDatastoreSkipSearchCounts(boolean datastoreSkipSearchCounts) {
+	this.datastoreSkipSearchCounts = datastoreSkipSearchCounts;
+    }
+
+    public int getAlternateIdIndexSize() {
+	return alternateIdIndexSize;
+    }
+
+    public void setAlternateIdIndexSize(int alternateIdIndexSize) {
+	this.alternateIdIndexSize = alternateIdIndexSize;
+    }
+
+    public long getAlternateIdTtlMs() {
+	return alternateIdTtlMs;
+    }
+
+    public void setAlternateIdTtlMs(long alternateIdTtlMs) {
+	this.alternateIdTtlMs = alternateIdTtlMs;
+    }
+
+    public boolean isAlternateIdFallbackEnabled() {
+	return alternateIdFallbackEnabled;
+    }
+
+    public void setAlternateIdFallbackEnabled(boolean alternateIdFallbackEnabled) {
+	this.alternateIdFallbackEnabled = alternateIdFallbackEnabled;
+    }
 }
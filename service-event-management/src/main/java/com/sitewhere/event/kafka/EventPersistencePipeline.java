@@ -9,18 +9,24 @@ package com.sitewhere.event.kafka;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.Consumed;
-import org.apache.kafka.streams.kstream.Printed;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.Stores;
 
 import com.sitewhere.event.spi.kafka.IEventPersistencePipeline;
 import com.sitewhere.event.spi.microservice.IEventManagementTenantEngine;
 import com.sitewhere.grpc.kafka.serdes.SiteWhereSerdes;
 import com.sitewhere.microservice.kafka.KafkaStreamPipeline;
+import com.sitewhere.microservice.kafka.KafkaTopicWaiter;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.microservice.lifecycle.ILifecycleProgressMonitor;
+import com.sitewhere.spi.microservice.lifecycle.ITenantEngineLifecycleComponent;
 
 /**
  * Kafka pipeline for persisting inbound events (usually decoded from event
@@ -28,8 +34,17 @@ import com.sitewhere.spi.microservice.lifecycle.ILifecycleProgressMonitor;
  */
 public class EventPersistencePipeline extends KafkaStreamPipeline implements IEventPersistencePipeline {
 
-    /** Applies event persistence logic to preprocessed event streams */
-    private EventPersistenceMapper eventPersistenceMapper;
+    /** Suffix for topic that receives events which could not be persisted */
+    private static final String DEAD_LETTER_TOPIC_SUFFIX = "event-persistence-failed";
+
+    /** Persists preprocessed events in batches */
+    private EventPersistenceTransformerSupplier eventPersistenceTransformerSupplier;
+
+    /** Indicator for whether dead-letter topic is available */
+    private CountDownLatch deadLetterTopicAvailable = new CountDownLatch(1);
+
+    /** Executor service for waiter thread */
+    private ExecutorService waiterService;
 
     /*
      * @see com.sitewhere.microservice.kafka.KafkaStreamPipeline#getPipelineName()
@@ -59,10 +74,39 @@ public class EventPersistencePipeline extends KafkaStreamPipeline implements IEv
      */
     @Override
     public void buildStreams(StreamsBuilder builder) {
-	// Pipeline handles both event source decoded events and reprocess events.
+	// Buffer events with their record keys so they may be persisted in batches.
+	builder.addStateStore(Stores.keyValueStoreBuilder(
+		Stores.inMemoryKeyValueStore(EventPersistenceTransformerSupplier.BUFFER_STORE_NAME), Serdes.Long(),
+		Serdes.ByteArray()));
+
+	// Persist events and route failures to dead-letter topic.
 	builder.stream(getSourceTopicNames(),
 		Consumed.with(Serdes.UUID(), SiteWhereSerdes.forPreprocessedEventPayload()))
-		.map(getEventPersistenceMapper()).print(Printed.toSysOut());
+		.transform(getEventPersistenceTransformerSupplier(),
+			EventPersistenceTransformerSupplier.BUFFER_STORE_NAME)
+		.to(getDeadLetterTopicName(),
+			Produced.with(Serdes.UUID(), SiteWhereSerdes.forPreprocessedEventPayload()));
+    }
+
+    /**
+     * Get name of topic that receives events which could not be persisted.
+     * 
+     * @return
+     */
+    public String getDeadLetterTopicName() {
+	return getDeadLetterTopicName(this);
+    }
+
+    /**
+     * Get name of topic that receives events which could not be persisted for
+     * the tenant of the given component.
+     * 
+     * @param component
+     * @return
+     */
+    protected static String getDeadLetterTopicName(ITenantEngineLifecycleComponent component) {
+	return component.getMicroservice().getKafkaTopicNaming()
+		.getTenantPrefix(component.getTenantEngine().getTenantResource()) + DEAD_LETTER_TOPIC_SUFFIX;
     }
 
     /*
@@ -72,11 +116,11 @@ public class EventPersistencePipeline extends KafkaStreamPipeline implements IEv
      */
     @Override
     public void initialize(ILifecycleProgressMonitor monitor) throws SiteWhereException {
-	this.eventPersistenceMapper = new EventPersistenceMapper(
+	this.eventPersistenceTransformerSupplier = new EventPersistenceTransformerSupplier(
 		((IEventManagementTenantEngine) getTenantEngine()).getActiveConfiguration());
 
 	super.initialize(monitor);
-	initializeNestedComponent(getEventPersistenceMapper(), monitor, true);
+	initializeNestedComponent(getEventPersistenceTransformerSupplier(), monitor, true);
     }
 
     /*
@@ -87,7 +131,29 @@ public class EventPersistencePipeline extends KafkaStreamPipeline implements IEv
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.start(monitor);
-	startNestedComponent(getEventPersistenceMapper(), monitor, true);
+	startNestedComponent(getEventPersistenceTransformerSupplier(), monitor, true);
+
+	// Wait for Kafka topics to be created/validated.
+	waitForTopics();
+    }
+
+    /**
+     * Wait for Kafka topics to be validated/created.
+     * 
+     * @throws SiteWhereException
+     */
+    protected void waitForTopics() throws SiteWhereException {
+	try {
+	    this.waiterService = Executors.newSingleThreadExecutor();
+
+	    // Validate or create dead-letter topic.
+	    getWaiterService().execute(new DeadLetterTopicWaiter(this));
+	    getDeadLetterTopicAvailable().await();
+
+	    getWaiterService().shutdown();
+	} catch (InterruptedException e) {
+	    throw new SiteWhereException("Interrupted while waiting for topics to be validated/created.", e);
+	}
     }
 
     /*
@@ -98,10 +164,36 @@ public class EventPersistencePipeline extends KafkaStreamPipeline implements IEv
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.stop(monitor);
-	stopNestedComponent(getEventPersistenceMapper(), monitor);
+	stopNestedComponent(getEventPersistenceTransformerSupplier(), monitor);
+    }
+
+    /**
+     * Thread that waits for dead-letter topic to become available.
+     */
+    private class DeadLetterTopicWaiter extends KafkaTopicWaiter {
+
+	public DeadLetterTopicWaiter(ITenantEngineLifecycleComponent component) {
+	    super(component, getDeadLetterTopicName(component));
+	}
+
+	/*
+	 * @see com.sitewhere.microservice.kafka.KafkaTopicWaiter#onTopicAvailable()
+	 */
+	@Override
+	protected void onTopicAvailable() {
+	    getDeadLetterTopicAvailable().countDown();
+	}
+    }
+
+    protected EventPersistenceTransformerSupplier getEventPersistenceTransformerSupplier() {
+	return eventPersistenceTransformerSupplier;
+    }
+
+    protected CountDownLatch getDeadLetterTopicAvailable() {
+	return deadLetterTopicAvailable;
     }
 
-    protected EventPersistenceMapper getEventPersistenceMapper() {
-	return eventPersistenceMapper;
+    protected ExecutorService getWaiterService() {
+	return waiterService;
     }
 }
@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.kafka;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.TransformerSupplier;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.sitewhere.event.configuration.EventManagementTenantConfiguration;
+import com.sitewhere.event.spi.microservice.IEventManagementTenantEngine;
+import com.sitewhere.grpc.event.EventModelConverter;
+import com.sitewhere.grpc.model.DeviceEventModel.GPreprocessedEventPayload;
+import com.sitewhere.microservice.api.event.IDeviceEventManagement;
+import com.sitewhere.microservice.lifecycle.TenantEngineLifecycleComponent;
+import com.sitewhere.microservice.security.SystemUserCallable;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventContext;
+import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceMeasurementCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest;
+import com.sitewhere.spi.microservice.lifecycle.ILifecycleProgressMonitor;
+import com.sitewhere.spi.microservice.lifecycle.ITenantEngineLifecycleComponent;
+import com.sitewhere.spi.microservice.lifecycle.LifecycleComponentType;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+/**
+ * Buffers preprocessed events and persists them in micro-batches. Buffered
+ * events are grouped by event type and device assignment so that each group
+ * is written with a single call to the event management API. Groups are
+ * written concurrently. Events are held in a logged state store together with
+ * their record key until their batch has been persisted, so offsets committed
+ * for buffered events do not lose them on restart or rebalance. Each event is a
+ * single store entry so that buffering writes one changelog record per event.
+ * Persisted events are only recorded in
+ * metrics. Events that could not be persisted are forwarded with their original
+ * record key so that they may be routed to a dead-letter topic.
+ */
+public class EventPersistenceTransformerSupplier extends TenantEngineLifecycleComponent
+	implements TransformerSupplier<UUID, GPreprocessedEventPayload, KeyValue<UUID, GPreprocessedEventPayload>> {
+
+    /** Name of state store that buffers events awaiting persistence */
+    public static final String BUFFER_STORE_NAME = "event-persistence-buffer";
+
+    /** Length of record key header on buffered events */
+    private static final int BUFFERED_KEY_LENGTH = 17;
+
+    /** Counter for processed events */
+    private static final Counter PROCESSED_EVENTS = TenantEngineLifecycleComponent
+	    .createCounterMetric("inbound_events_event_count", "Count of total events processed by pipeline");
+
+    /** Counter for persisted events by type */
+    private static final Counter PERSISTED_EVENTS = TenantEngineLifecycleComponent.createCounterMetric(
+	    "event_persistence_persisted_count", "Count of events persisted by event type", "event_type");
+
+    /** Counter for events that could not be persisted by type */
+    private static final Counter PERSISTENCE_FAILURES = TenantEngineLifecycleComponent.createCounterMetric(
+	    "event_persistence_failure_count", "Count of events that could not be persisted by event type",
+	    "event_type");
+
+    /** Histogram for persistence writes by type */
+    private static final Histogram PERSISTENCE_WRITE_TIMER = TenantEngineLifecycleComponent.createHistogramMetric(
+	    "event_persistence_write_timer", "Timer for writing a group of events by event type", "event_type");
+
+    /** Event type label used when event could not be unmarshaled */
+    private static final String UNKNOWN_EVENT_TYPE = "Unknown";
+
+    /** Histogram for persistence batches */
+    private static final Histogram PERSISTENCE_BATCH_TIMER = TenantEngineLifecycleComponent.createHistogramMetric(
+	    "event_persistence_batch_timer", "Timer for persisting a batch of inbound events");
+
+    /** Configuration */
+    private EventManagementTenantConfiguration configuration;
+
+    /** Executor for concurrent group writes */
+    private ExecutorService persistenceExecutor;
+
+    public EventPersistenceTransformerSupplier(EventManagementTenantConfiguration configuration) {
+	super(LifecycleComponentType.Other);
+	this.configuration = configuration;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.microservice.lifecycle.LifecycleComponent#start(com.sitewhere.
+     * spi.microservice.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	this.persistenceExecutor = Executors.newFixedThreadPool(getConfiguration().getProcessingThreadCount(),
+		new EventPersistenceThreadFactory());
+    }
+
+    /*
+     * @see
+     * com.sitewhere.microservice.lifecycle.LifecycleComponent#stop(com.sitewhere.
+     * spi.microservice.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (getPersistenceExecutor() != null) {
+	    getPersistenceExecutor().shutdownNow();
+	}
+    }
+
+    /*
+     * @see org.apache.kafka.streams.kstream.TransformerSupplier#get()
+     */
+    @Override
+    public Transformer<UUID, GPreprocessedEventPayload, KeyValue<UUID, GPreprocessedEventPayload>> get() {
+	return new EventPersistenceTransformer();
+    }
+
+    /**
+     * Transformer that buffers events and persists them in batches.
+     */
+    private class EventPersistenceTransformer
+	    implements Transformer<UUID, GPreprocessedEventPayload, KeyValue<UUID, GPreprocessedEventPayload>> {
+
+	/** Processor context */
+	private ProcessorContext context;
+
+	/** Buffered record keys and events keyed by arrival sequence */
+	private KeyValueStore<Long, byte[]> buffer;
+
+	/** Next sequence number (null until recovered from store) */
+	private Long nextSequence;
+
+	/** Number of events currently buffered */
+	private int bufferedCount;
+
+	/*
+	 * @see
+	 * org.apache.kafka.streams.kstream.Transformer#init(org.apache.kafka.streams.
+	 * processor.ProcessorContext)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void init(ProcessorContext context) {
+	    this.context = context;
+	    this.buffer = (KeyValueStore<Long, byte[]>) context.getStateStore(BUFFER_STORE_NAME);
+	    context.schedule(Duration.ofMillis(getConfiguration().getPersistenceBatchIntervalMs()),
+		    PunctuationType.WALL_CLOCK_TIME, timestamp -> flush());
+	}
+
+	/*
+	 * @see org.apache.kafka.streams.kstream.Transformer#transform(java.lang.Object,
+	 * java.lang.Object)
+	 */
+	@Override
+	public KeyValue<UUID, GPreprocessedEventPayload> transform(UUID key, GPreprocessedEventPayload payload) {
+	    if (nextSequence == null) {
+		recoverBuffer();
+	    }
+	    buffer.put(nextSequence++, marshal(key, payload));
+	    if (++bufferedCount >= getConfiguration().getPersistenceBatchSize()) {
+		flush();
+	    }
+	    return null;
+	}
+
+	/**
+	 * Recover sequence and count from events left in the buffer by a previous
+	 * instance of the task.
+	 */
+	protected void recoverBuffer() {
+	    long max = -1;
+	    int count = 0;
+	    try (KeyValueIterator<Long, byte[]> all = buffer.all()) {
+		while (all.hasNext()) {
+		    max = Math.max(max, all.next().key);
+		    count++;
+		}
+	    }
+	    this.nextSequence = max + 1;
+	    this.bufferedCount = count;
+	}
+
+	/**
+	 * Persist all buffered events, forward events that failed in arrival order
+	 * and remove the batch from the buffer. Entries that can not be read are
+	 * discarded.
+	 */
+	protected void flush() {
+	    List<KeyValue<Long, GPreprocessedEventPayload>> pending = new ArrayList<>();
+	    Map<Long, UUID> keys = new HashMap<>();
+	    List<Long> unreadable = new ArrayList<>();
+	    try (KeyValueIterator<Long, byte[]> all = buffer.all()) {
+		while (all.hasNext()) {
+		    KeyValue<Long, byte[]> entry = all.next();
+		    try {
+			KeyValue<UUID, GPreprocessedEventPayload> event = unmarshal(entry.value);
+			keys.put(entry.key, event.key);
+			pending.add(new KeyValue<>(entry.key, event.value));
+		    } catch (InvalidProtocolBufferException e) {
+			getLogger().error("Unable to read buffered event for persistence.", e);
+			PERSISTENCE_FAILURES.labels(buildLabels(UNKNOWN_EVENT_TYPE)).inc();
+			unreadable.add(entry.key);
+		    }
+		}
+	    }
+	    for (Long sequence : unreadable) {
+		buffer.delete(sequence);
+	    }
+	    if (pending.isEmpty()) {
+		this.bufferedCount = 0;
+		return;
+	    }
+	    Collections.sort(pending, (a, b) -> Long.compare(a.key, b.key));
+
+	    final Histogram.Timer batchTime = PERSISTENCE_BATCH_TIMER.labels(getTenantEngine().buildLabels())
+		    .startTimer();
+	    Set<Long> failed;
+	    try {
+		failed = persistBatch(pending);
+	    } finally {
+		batchTime.close();
+	    }
+
+	    // Leave batch in buffer if interrupted so it is replayed on recovery.
+	    if (failed == null) {
+		return;
+	    }
+	    for (KeyValue<Long, GPreprocessedEventPayload> entry : pending) {
+		if (failed.contains(entry.key)) {
+		    context.forward(keys.get(entry.key), entry.value);
+		}
+		buffer.delete(entry.key);
+	    }
+	    this.bufferedCount = 0;
+	}
+
+	/*
+	 * @see org.apache.kafka.streams.kstream.Transformer#close()
+	 */
+	@Override
+	public void close() {
+	}
+    }
+
+    /**
+     * Encode the record key and event as a single buffer entry. The key is
+     * written as a presence flag followed by its bits.
+     * 
+     * @param key
+     * @param payload
+     * @return
+     */
+    protected static byte[] marshal(UUID key, GPreprocessedEventPayload payload) {
+	byte[] event = payload.toByteArray();
+	ByteBuffer buffer = ByteBuffer.allocate(BUFFERED_KEY_LENGTH + event.length);
+	buffer.put((byte) (key != null ? 1 : 0));
+	buffer.putLong(key != null ? key.getMostSignificantBits() : 0);
+	buffer.putLong(key != null ? key.getLeastSignificantBits() : 0);
+	buffer.put(event);
+	return buffer.array();
+    }
+
+    /**
+     * Decode the record key and event from a buffer entry.
+     * 
+     * @param data
+     * @return
+     * @throws InvalidProtocolBufferException
+     */
+    protected static KeyValue<UUID, GPreprocessedEventPayload> unmarshal(byte[] data)
+	    throws InvalidProtocolBufferException {
+	if (data.length < BUFFERED_KEY_LENGTH) {
+	    throw new InvalidProtocolBufferException("Buffered event is truncated.");
+	}
+	ByteBuffer buffer = ByteBuffer.wrap(data);
+	boolean hasKey = buffer.get() != 0;
+	long msb = buffer.getLong();
+	long lsb = buffer.getLong();
+	UUID key = hasKey ? new UUID(msb, lsb) : null;
+	return new KeyValue<>(key, GPreprocessedEventPayload.parseFrom(buffer));
+    }
+
+    /**
+     * Group a batch of events by event type and device assignment and write each
+     * group with a single API call. Groups are written concurrently.
+     * 
+     * @param pending
+     * @return sequence numbers of events that could not be persisted or null if
+     *         interrupted
+     */
+    protected Set<Long> persistBatch(List<KeyValue<Long, GPreprocessedEventPayload>> pending) {
+	Set<Long> failed = new HashSet<>();
+	Map<String, PersistenceGroup> groups = new LinkedHashMap<>();
+	for (KeyValue<Long, GPreprocessedEventPayload> entry : pending) {
+	    try {
+		IDeviceEventContext context = EventModelConverter.asApiDeviceEventContext(entry.value.getContext());
+		IDeviceEventCreateRequest request = EventModelConverter
+			.asApiDeviceEventCreateRequest(entry.value.getEvent());
+		String key = request.getEventType().name() + ":" + context.getDeviceAssignmentId();
+		PersistenceGroup group = groups.get(key);
+		if (group == null) {
+		    group = new PersistenceGroup(request.getEventType(), context);
+		    groups.put(key, group);
+		}
+		group.add(entry.key, request);
+	    } catch (SiteWhereException e) {
+		getLogger().error("Unable to unmarshal device event for persistence.", e);
+		PERSISTENCE_FAILURES.labels(buildLabels(UNKNOWN_EVENT_TYPE)).inc();
+		failed.add(entry.key);
+	    }
+	}
+
+	if (groups.size() == 1) {
+	    PersistenceGroup group = groups.values().iterator().next();
+	    try {
+		new PersistenceProcessor(this, group).call();
+	    } catch (Exception e) {
+		handleFailedGroup(group, e, failed);
+	    }
+	    return failed;
+	}
+
+	Map<PersistenceGroup, Future<List<? extends IDeviceEvent>>> futures = new LinkedHashMap<>();
+	for (PersistenceGroup group : groups.values()) {
+	    futures.put(group, getPersistenceExecutor().submit(new PersistenceProcessor(this, group)));
+	}
+	for (Map.Entry<PersistenceGroup, Future<List<? extends IDeviceEvent>>> future : futures.entrySet()) {
+	    try {
+		future.getValue().get();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		getLogger().error("Interrupted while persisting device events.", e);
+		return null;
+	    } catch (ExecutionException e) {
+		handleFailedGroup(future.getKey(), e.getCause(), failed);
+	    }
+	}
+	return failed;
+    }
+
+    /**
+     * Record a group that could not be persisted.
+     * 
+     * @param group
+     * @param cause
+     * @param failed
+     */
+    protected void handleFailedGroup(PersistenceGroup group, Throwable cause, Set<Long> failed) {
+	getLogger().error(String.format("Unable to persist %d %s events. Routing to dead-letter topic.",
+		group.getRequests().size(), group.getEventType().name()), cause);
+	PERSISTENCE_FAILURES.labels(buildLabels(group.getEventType().name())).inc(group.getRequests().size());
+	group.addTo(failed);
+    }
+
+    /**
+     * Events of a single type for a single device assignment.
+     */
+    private static class PersistenceGroup {
+
+	/** Event type */
+	private DeviceEventType eventType;
+
+	/** Event context shared by all events in group */
+	private IDeviceEventContext context;
+
+	/** Sequence numbers of buffered events */
+	private List<Long> sequences = new ArrayList<>();
+
+	/** Create requests in arrival order */
+	private List<IDeviceEventCreateRequest> requests = new ArrayList<>();
+
+	public PersistenceGroup(DeviceEventType eventType, IDeviceEventContext context) {
+	    this.eventType = eventType;
+	    this.context = context;
+	}
+
+	public void add(Long sequence, IDeviceEventCreateRequest request) {
+	    sequences.add(sequence);
+	    requests.add(request);
+	}
+
+	/**
+	 * Add sequence number of each event in group.
+	 * 
+	 * @param events
+	 */
+	public void addTo(Set<Long> events) {
+	    events.addAll(sequences);
+	}
+
+	public DeviceEventType getEventType() {
+	    return eventType;
+	}
+
+	public IDeviceEventContext getContext() {
+	    return context;
+	}
+
+	public List<IDeviceEventCreateRequest> getRequests() {
+	    return requests;
+	}
+    }
+
+    /**
+     * Persists a group of events in system user context.
+     */
+    private class PersistenceProcessor extends SystemUserCallable<List<? extends IDeviceEvent>> {
+
+	private PersistenceGroup group;
+
+	public PersistenceProcessor(ITenantEngineLifecycleComponent component, PersistenceGroup group) {
+	    super(component);
+	    this.group = group;
+	}
+
+	/*
+	 * @see com.sitewhere.microservice.security.SystemUserCallable#runAsSystemUser()
+	 */
+	@Override
+	public List<? extends IDeviceEvent> runAsSystemUser() throws SiteWhereException {
+	    String eventType = group.getEventType().name();
+	    final Histogram.Timer writeTime = PERSISTENCE_WRITE_TIMER.labels(buildLabels(eventType)).startTimer();
+	    try {
+		List<? extends IDeviceEvent> events = persist(group.getContext(), group.getRequests());
+		PERSISTED_EVENTS.labels(buildLabels(eventType)).inc(group.getRequests().size());
+		return events;
+	    } finally {
+		writeTime.close();
+	    }
+	}
+
+	/**
+	 * Write all requests in the group with a single API call.
+	 * 
+	 * @param context
+	 * @param requests
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected List<? extends IDeviceEvent> persist(IDeviceEventContext context,
+		List<IDeviceEventCreateRequest> requests) throws SiteWhereException {
+	    switch (group.getEventType()) {
+	    case Measurement:
+		PROCESSED_EVENTS.labels(buildLabels()).inc(requests.size());
+		return getDeviceEventManagement().addDeviceMeasurements(context,
+			requests.toArray(new IDeviceMeasurementCreateRequest[requests.size()]));
+	    case Alert:
+		PROCESSED_EVENTS.labels(buildLabels()).inc(requests.size());
+		return getDeviceEventManagement().addDeviceAlerts(context,
+			requests.toArray(new IDeviceAlertCreateRequest[requests.size()]));
+	    case CommandInvocation:
+		PROCESSED_EVENTS.labels(buildLabels()).inc(requests.size());
+		return getDeviceEventManagement().addDeviceCommandInvocations(context,
+			requests.toArray(new IDeviceCommandInvocationCreateRequest[requests.size()]));
+	    case CommandResponse:
+		PROCESSED_EVENTS.labels(buildLabels()).inc(requests.size());
+		return getDeviceEventManagement().addDeviceCommandResponses(context,
+			requests.toArray(new IDeviceCommandResponseCreateRequest[requests.size()]));
+	    case Location:
+		PROCESSED_EVENTS.labels(buildLabels()).inc(requests.size());
+		return getDeviceEventManagement().addDeviceLocations(context,
+			requests.toArray(new IDeviceLocationCreateRequest[requests.size()]));
+	    case StateChange:
+		PROCESSED_EVENTS.labels(buildLabels()).inc(requests.size());
+		return getDeviceEventManagement().addDeviceStateChanges(context,
+			requests.toArray(new IDeviceStateChangeCreateRequest[requests.size()]));
+	    default:
+		getLogger().warn(
+			String.format("Unknown event type sent for storage: %s", group.getEventType().name()));
+		return new ArrayList<>();
+	    }
+	}
+
+	protected IDeviceEventManagement getDeviceEventManagement() {
+	    return ((IEventManagementTenantEngine) getTenantEngine()).getEventManagement();
+	}
+    }
+
+    /** Used for naming event persistence threads */
+    private class EventPersistenceThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "Event Persistence " + counter.incrementAndGet());
+	}
+    }
+
+    protected EventManagementTenantConfiguration getConfiguration() {
+	return configuration;
+    }
+
+    protected ExecutorService getPersistenceExecutor() {
+	return persistenceExecutor;
+    }
+}
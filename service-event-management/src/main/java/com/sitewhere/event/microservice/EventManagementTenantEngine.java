@@ -14,6 +14,8 @@ import com.sitewhere.event.kafka.KafkaEventPersistenceTriggers;
 import com.sitewhere.event.kafka.OutboundCommandInvocationsProducer;
 import com.sitewhere.event.kafka.OutboundEventsProducer;
 import com.sitewhere.event.kafka.EventPersistencePipeline;
+import com.sitewhere.event.persistence.AlternateIdIndex;
+import com.sitewhere.event.persistence.AlternateIdIndexDecorator;
 import com.sitewhere.event.spi.kafka.IOutboundCommandInvocationsProducer;
 import com.sitewhere.event.spi.kafka.IOutboundEventsProducer;
 import com.sitewhere.event.spi.kafka.IEventPersistencePipeline;
@@ -90,6 +92,12 @@ public class EventManagementTenantEngine extends MicroserviceTenantEngine<EventM
     public void loadEngineComponents() throws SiteWhereException {
 	// Create API implementation and gRPC server.
 	IDeviceEventManagement implementation = getInjector().getInstance(IDeviceEventManagement.class);
+	// Index recent events by alternate id if enabled.
+	EventManagementTenantConfiguration configuration = getActiveConfiguration();
+	if (configuration.getAlternateIdIndexSize() > 0) {
+	    implementation = new AlternateIdIndexDecorator(implementation, new AlternateIdIndex(
+		    configuration.getAlternateIdIndexSize(), configuration.getAlternateIdTtlMs()));
+	}
 	this.eventManagement = new KafkaEventPersistenceTriggers(this, implementation);
 	this.eventManagementImpl = new EventManagementImpl((IEventManagementMicroservice) getMicroservice(),
 		getEventManagement());
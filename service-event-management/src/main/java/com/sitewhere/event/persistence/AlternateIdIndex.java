@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.persistence;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+/**
+ * Bounded in-memory index of the ids of recently persisted events by alternate
+ * id. Only event ids are kept, so the index stays small. Entries are kept in
+ * insertion order, so the oldest entry is dropped when the index is full, and
+ * entries older than the time-to-live are not returned.
+ */
+public class AlternateIdIndex {
+
+    /** Maximum number of entries */
+    private int maxSize;
+
+    /** Time entries remain valid in milliseconds (0 is unbounded) */
+    private long ttlMs;
+
+    /** Entries in insertion order */
+    private Map<String, Entry> entries;
+
+    public AlternateIdIndex(int maxSize, long ttlMs) {
+	this.maxSize = maxSize;
+	this.ttlMs = ttlMs;
+	this.entries = new LinkedHashMap<String, Entry>() {
+
+	    /** Serial version UID */
+	    private static final long serialVersionUID = 1L;
+
+	    /*
+	     * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+	     */
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+		return (size() > getMaxSize()) || eldest.getValue().isExpired(System.currentTimeMillis());
+	    }
+	};
+    }
+
+    /**
+     * Add an event if it has an alternate id.
+     * 
+     * @param event
+     */
+    public void add(IDeviceEvent event) {
+	if ((event == null) || (event.getAlternateId() == null)) {
+	    return;
+	}
+	long expires = (getTtlMs() > 0) ? System.currentTimeMillis() + getTtlMs() : Long.MAX_VALUE;
+	synchronized (entries) {
+	    entries.remove(event.getAlternateId());
+	    entries.put(event.getAlternateId(), new Entry(event.getId(), expires));
+	}
+    }
+
+    /**
+     * Get event id for an alternate id or null if not indexed or expired.
+     * 
+     * @param alternateId
+     * @return
+     */
+    public UUID get(String alternateId) {
+	synchronized (entries) {
+	    Entry entry = entries.get(alternateId);
+	    if (entry == null) {
+		return null;
+	    }
+	    if (entry.isExpired(System.currentTimeMillis())) {
+		entries.remove(alternateId);
+		return null;
+	    }
+	    return entry.getEventId();
+	}
+    }
+
+    /**
+     * Get number of indexed alternate ids.
+     * 
+     * @return
+     */
+    public int size() {
+	synchronized (entries) {
+	    return entries.size();
+	}
+    }
+
+    public int getMaxSize() {
+	return maxSize;
+    }
+
+    public long getTtlMs() {
+	return ttlMs;
+    }
+
+    /**
+     * Indexed event id with its expiration time.
+     */
+    private static class Entry {
+
+	/** Indexed event id */
+	private UUID eventId;
+
+	/** Time entry expires */
+	private long expires;
+
+	public Entry(UUID eventId, long expires) {
+	    this.eventId = eventId;
+	    this.expires = expires;
+	}
+
+	public boolean isExpired(long now) {
+	    return now >= expires;
+	}
+
+	public UUID getEventId() {
+	    return eventId;
+	}
+    }
+}
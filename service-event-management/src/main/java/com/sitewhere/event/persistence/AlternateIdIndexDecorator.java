@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.persistence;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.sitewhere.event.DeviceEventManagementDecorator;
+import com.sitewhere.microservice.api.event.IDeviceEventManagement;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceAlert;
+import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
+import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventBatch;
+import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
+import com.sitewhere.spi.device.event.IDeviceEventContext;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+import com.sitewhere.spi.device.event.IDeviceMeasurement;
+import com.sitewhere.spi.device.event.IDeviceStateChange;
+import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceMeasurementCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest;
+
+/**
+ * Records the alternate id of each persisted event in an {@link AlternateIdIndex}
+ * so that lookups by alternate id for recent events are answered by loading the
+ * event by id. Lookups that miss the index are passed to the datastore, since
+ * the event may have been persisted before a restart or by another instance.
+ */
+public class AlternateIdIndexDecorator extends DeviceEventManagementDecorator {
+
+    /** Index of recent events by alternate id */
+    private AlternateIdIndex index;
+
+    public AlternateIdIndexDecorator(IDeviceEventManagement delegate, AlternateIdIndex index) {
+	super(delegate);
+	this.index = index;
+    }
+
+    /**
+     * Add persisted events to the index.
+     * 
+     * @param events
+     * @return
+     */
+    protected <T extends IDeviceEvent> List<T> indexEvents(List<T> events) {
+	for (T event : events) {
+	    getIndex().add(event);
+	}
+	return events;
+    }
+
+    /*
+     * @see com.sitewhere.event.DeviceEventManagementDecorator#
+     * getDeviceEventByAlternateId(java.lang.String)
+     */
+    @Override
+    public IDeviceEvent getDeviceEventByAlternateId(String alternateId) throws SiteWhereException {
+	UUID indexed = getIndex().get(alternateId);
+	if (indexed != null) {
+	    IDeviceEvent event = super.getDeviceEventById(indexed);
+	    if (event != null) {
+		return event;
+	    }
+	}
+	return super.getDeviceEventByAlternateId(alternateId);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.DeviceEventManagementDecorator#addDeviceEventBatch(com.
+     * sitewhere.spi.device.event.IDeviceEventContext,
+     * com.sitewhere.spi.device.event.IDeviceEventBatch)
+     */
+    @Override
+    public IDeviceEventBatchResponse addDeviceEventBatch(IDeviceEventContext context, IDeviceEventBatch batch)
+	    throws SiteWhereException {
+	IDeviceEventBatchResponse response = super.addDeviceEventBatch(context, batch);
+	indexEvents(response.getCreatedMeasurements());
+	indexEvents(response.getCreatedLocations());
+	indexEvents(response.getCreatedAlerts());
+	return response;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.DeviceEventManagementDecorator#addDeviceMeasurements(com.
+     * sitewhere.spi.device.event.IDeviceEventContext,
+     * com.sitewhere.spi.device.event.request.IDeviceMeasurementCreateRequest[])
+     */
+    @Override
+    public List<? extends IDeviceMeasurement> addDeviceMeasurements(IDeviceEventContext context,
+	    IDeviceMeasurementCreateRequest... measurements) throws SiteWhereException {
+	return indexEvents(super.addDeviceMeasurements(context, measurements));
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.DeviceEventManagementDecorator#addDeviceLocations(com.
+     * sitewhere.spi.device.event.IDeviceEventContext,
+     * com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest[])
+     */
+    @Override
+    public List<? extends IDeviceLocation> addDeviceLocations(IDeviceEventContext context,
+	    IDeviceLocationCreateRequest... request) throws SiteWhereException {
+	return indexEvents(super.addDeviceLocations(context, request));
+    }
+
+    /*
+     * @see com.sitewhere.event.DeviceEventManagementDecorator#addDeviceAlerts(com.
+     * sitewhere.spi.device.event.IDeviceEventContext,
+     * com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest[])
+     */
+    @Override
+    public List<? extends IDeviceAlert> addDeviceAlerts(IDeviceEventContext context,
+	    IDeviceAlertCreateRequest... request) throws SiteWhereException {
+	return indexEvents(super.addDeviceAlerts(context, request));
+    }
+
+    /*
+     * @see com.sitewhere.event.DeviceEventManagementDecorator#
+     * addDeviceCommandInvocations(com.sitewhere.spi.device.event.
+     * IDeviceEventContext,
+     * com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest[
+     * ])
+     */
+    @Override
+    public List<? extends IDeviceCommandInvocation> addDeviceCommandInvocations(IDeviceEventContext context,
+	    IDeviceCommandInvocationCreateRequest... request) throws SiteWhereException {
+	return indexEvents(super.addDeviceCommandInvocations(context, request));
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.DeviceEventManagementDecorator#addDeviceCommandResponses(
+     * com.sitewhere.spi.device.event.IDeviceEventContext,
+     * com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest[])
+     */
+    @Override
+    public List<? extends IDeviceCommandResponse> addDeviceCommandResponses(IDeviceEventContext context,
+	    IDeviceCommandResponseCreateRequest... request) throws SiteWhereException {
+	return indexEvents(super.addDeviceCommandResponses(context, request));
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.DeviceEventManagementDecorator#addDeviceStateChanges(com.
+     * sitewhere.spi.device.event.IDeviceEventContext,
+     * com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest[])
+     */
+    @Override
+    public List<? extends IDeviceStateChange> addDeviceStateChanges(IDeviceEventContext context,
+	    IDeviceStateChangeCreateRequest... request) throws SiteWhereException {
+	return indexEvents(super.addDeviceStateChanges(context, request));
+    }
+
+    protected AlternateIdIndex getIndex() {
+	return index;
+    }
+}
@@ -45,7 +45,9 @@ import com.sitewhere.spi.device.streaming.request.IDeviceStreamDataCreateRequest
 public class DeviceEventManagementPersistence extends Persistence {
 
     /**
-     * Executes logic to process a batch of device events.
+     * Executes logic to process a batch of device events. All events of a given
+     * type are passed to event management in a single call so that each
+     * implementation can store them with as few datastore writes as possible.
      * 
      * @param context
      * @param batch
@@ -56,14 +58,17 @@ public class DeviceEventManagementPersistence extends Persistence {
     public static DeviceEventBatchResponse deviceEventBatchLogic(IDeviceEventContext context, IDeviceEventBatch batch,
 	    IDeviceEventManagement eventManagement) throws SiteWhereException {
 	DeviceEventBatchResponse response = new DeviceEventBatchResponse();
-	for (IDeviceMeasurementCreateRequest mx : batch.getMeasurements()) {
-	    response.getCreatedMeasurements().addAll(eventManagement.addDeviceMeasurements(context, mx));
+	if (batch.getMeasurements() != null && !batch.getMeasurements().isEmpty()) {
+	    response.getCreatedMeasurements().addAll(eventManagement.addDeviceMeasurements(context,
+		    batch.getMeasurements().toArray(new IDeviceMeasurementCreateRequest[0])));
 	}
-	for (IDeviceLocationCreateRequest location : batch.getLocations()) {
-	    response.getCreatedLocations().addAll(eventManagement.addDeviceLocations(context, location));
+	if (batch.getLocations() != null && !batch.getLocations().isEmpty()) {
+	    response.getCreatedLocations().addAll(eventManagement.addDeviceLocations(context,
+		    batch.getLocations().toArray(new IDeviceLocationCreateRequest[0])));
 	}
-	for (IDeviceAlertCreateRequest alert : batch.getAlerts()) {
-	    response.getCreatedAlerts().addAll(eventManagement.addDeviceAlerts(context, alert));
+	if (batch.getAlerts() != null && !batch.getAlerts().isEmpty()) {
+	    response.getCreatedAlerts().addAll(eventManagement.addDeviceAlerts(context,
+		    batch.getAlerts().toArray(new IDeviceAlertCreateRequest[0])));
 	}
 	return response;
     }
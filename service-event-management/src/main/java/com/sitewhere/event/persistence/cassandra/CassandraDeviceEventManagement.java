@@ -7,18 +7,21 @@
  */
 package com.sitewhere.event.persistence.cassandra;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
-import com.google.common.util.concurrent.FutureCallback;
+import com.datastax.driver.core.Statement;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.sitewhere.cassandra.CassandraClient;
@@ -66,12 +69,27 @@ import com.sitewhere.spi.search.ISearchResults;
  */
 public class CassandraDeviceEventManagement extends TenantEngineLifecycleComponent implements IDeviceEventManagement {
 
+    /** Maximum number of write requests in flight */
+    private static final int MAX_IN_FLIGHT_WRITES = 256;
+
+    /** Maximum number of statements in an unlogged batch */
+    private static final int MAX_BATCH_STATEMENTS = 50;
+
+    /** Number of rows fetched per page when querying events */
+    private static final int QUERY_FETCH_SIZE = 500;
+
+    /** Maximum number of bucket queries in flight for a search */
+    private static final int MAX_CONCURRENT_QUERIES = 64;
+
     /** Configured Cassandra client */
     private CassandraClient client;
 
     /** Cassandra event management client */
     private CassandraEventManagementClient cassandraEventManagementClient;
 
+    /** Bounds write requests in flight */
+    private Semaphore inFlightWrites;
+
     public CassandraDeviceEventManagement() {
 	super(LifecycleComponentType.DataStore);
     }
@@ -87,6 +105,7 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
 	    throw new SiteWhereException("No Cassandra client configured.");
 	}
 	getClient().initialize(monitor);
+	this.inFlightWrites = new Semaphore(MAX_IN_FLIGHT_WRITES);
 
 	// Initialize event management client wrapper.
 	this.cassandraEventManagementClient = new CassandraEventManagementClient(getClient());
@@ -142,7 +161,15 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
      */
     @Override
     public IDeviceEvent getDeviceEventByAlternateId(String alternateId) throws SiteWhereException {
-	throw new SiteWhereException("Not implemented.");
+	BoundStatement query = getCassandraEventManagementClient().getSelectEventByAltId().bind();
+	query.setString(0, alternateId);
+	Row row = getClient().getSession().execute(query).one();
+	if (row == null) {
+	    return null;
+	}
+	DeviceEventType type = CassandraDeviceEvent
+		.getEventTypeForIndicator(row.getByte(CassandraDeviceEvent.FIELD_EVENT_TYPE));
+	return getBinderForEventType(type).load(getCassandraEventManagementClient(), row);
     }
 
     /*
@@ -154,11 +181,13 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
     public List<IDeviceMeasurement> addDeviceMeasurements(IDeviceEventContext context,
 	    IDeviceMeasurementCreateRequest... requests) throws SiteWhereException {
 	List<IDeviceMeasurement> result = new ArrayList<>();
+	CassandraPartitionedWrites writes = new CassandraPartitionedWrites();
 	for (IDeviceMeasurementCreateRequest request : requests) {
 	    DeviceMeasurement mx = DeviceEventManagementPersistence.deviceMeasurementCreateLogic(context, request);
-	    storeDeviceEvent(context, mx, CassandraDeviceMeasurement.INSTANCE);
+	    addEventInserts(writes, context, mx, CassandraDeviceMeasurement.INSTANCE);
 	    result.add(mx);
 	}
+	execute(writes);
 	return result;
     }
 
@@ -183,11 +212,13 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
     public List<IDeviceLocation> addDeviceLocations(IDeviceEventContext context,
 	    IDeviceLocationCreateRequest... requests) throws SiteWhereException {
 	List<IDeviceLocation> result = new ArrayList<>();
+	CassandraPartitionedWrites writes = new CassandraPartitionedWrites();
 	for (IDeviceLocationCreateRequest request : requests) {
 	    DeviceLocation location = DeviceEventManagementPersistence.deviceLocationCreateLogic(context, request);
-	    storeDeviceEvent(context, location, CassandraDeviceLocation.INSTANCE);
+	    addEventInserts(writes, context, location, CassandraDeviceLocation.INSTANCE);
 	    result.add(location);
 	}
+	execute(writes);
 	return result;
     }
 
@@ -212,11 +243,13 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
     public List<IDeviceAlert> addDeviceAlerts(IDeviceEventContext context, IDeviceAlertCreateRequest... requests)
 	    throws SiteWhereException {
 	List<IDeviceAlert> result = new ArrayList<>();
+	CassandraPartitionedWrites writes = new CassandraPartitionedWrites();
 	for (IDeviceAlertCreateRequest request : requests) {
 	    DeviceAlert alert = DeviceEventManagementPersistence.deviceAlertCreateLogic(context, request);
-	    storeDeviceEvent(context, alert, CassandraDeviceAlert.INSTANCE);
+	    addEventInserts(writes, context, alert, CassandraDeviceAlert.INSTANCE);
 	    result.add(alert);
 	}
+	execute(writes);
 	return result;
     }
 
@@ -242,14 +275,16 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
     public List<IDeviceCommandInvocation> addDeviceCommandInvocations(IDeviceEventContext context,
 	    IDeviceCommandInvocationCreateRequest... requests) throws SiteWhereException {
 	List<IDeviceCommandInvocation> result = new ArrayList<>();
+	CassandraPartitionedWrites writes = new CassandraPartitionedWrites();
 	for (IDeviceCommandInvocationCreateRequest request : requests) {
 	    IDeviceCommand command = getDeviceManagement().getDeviceCommandByToken(context.getDeviceTypeId(),
 		    request.getCommandToken());
 	    DeviceCommandInvocation invocation = DeviceEventManagementPersistence
 		    .deviceCommandInvocationCreateLogic(context, command, request);
-	    storeDeviceEvent(context, invocation, CassandraDeviceCommandInvocation.INSTANCE);
+	    addEventInserts(writes, context, invocation, CassandraDeviceCommandInvocation.INSTANCE);
 	    result.add(invocation);
 	}
+	execute(writes);
 	return result;
     }
 
@@ -284,12 +319,14 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
     public List<IDeviceCommandResponse> addDeviceCommandResponses(IDeviceEventContext context,
 	    IDeviceCommandResponseCreateRequest... requests) throws SiteWhereException {
 	List<IDeviceCommandResponse> result = new ArrayList<>();
+	CassandraPartitionedWrites writes = new CassandraPartitionedWrites();
 	for (IDeviceCommandResponseCreateRequest request : requests) {
 	    DeviceCommandResponse response = DeviceEventManagementPersistence.deviceCommandResponseCreateLogic(context,
 		    request);
-	    storeDeviceEvent(context, response, CassandraDeviceCommandResponse.INSTANCE);
+	    addEventInserts(writes, context, response, CassandraDeviceCommandResponse.INSTANCE);
 	    result.add(response);
 	}
+	execute(writes);
 	return result;
     }
 
@@ -314,11 +351,13 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
     public List<IDeviceStateChange> addDeviceStateChanges(IDeviceEventContext context,
 	    IDeviceStateChangeCreateRequest... requests) throws SiteWhereException {
 	List<IDeviceStateChange> result = new ArrayList<>();
+	CassandraPartitionedWrites writes = new CassandraPartitionedWrites();
 	for (IDeviceStateChangeCreateRequest request : requests) {
 	    DeviceStateChange state = DeviceEventManagementPersistence.deviceStateChangeCreateLogic(context, request);
-	    storeDeviceEvent(context, state, CassandraDeviceStateChange.INSTANCE);
+	    addEventInserts(writes, context, state, CassandraDeviceStateChange.INSTANCE);
 	    result.add(state);
 	}
+	execute(writes);
 	return result;
     }
 
@@ -335,65 +374,75 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
     }
 
     /**
-     * Store a device event using various indexing strategies.
+     * Add inserts that store a device event using various indexing strategies.
      * 
+     * @param writes
      * @param context
      * @param event
      * @param binder
      * @throws SiteWhereException
      */
-    protected <I extends IDeviceEvent> void storeDeviceEvent(IDeviceEventContext context, I event,
-	    ICassandraEventBinder<I> binder) throws SiteWhereException {
+    protected <I extends IDeviceEvent> void addEventInserts(CassandraPartitionedWrites writes,
+	    IDeviceEventContext context, I event, ICassandraEventBinder<I> binder) throws SiteWhereException {
+	CassandraEventManagementClient client = getCassandraEventManagementClient();
+	byte eventType = CassandraDeviceEvent.getIndicatorForEventType(binder.getEventType());
+	int bucket = getClient().getBucketValue(event.getEventDate().getTime());
+
 	// Build insert for event by id.
-	BoundStatement eventById = getCassandraEventManagementClient().getInsertDeviceEventById().bind();
-	binder.bind(getCassandraEventManagementClient(), eventById, event);
-	process(eventById, event);
+	BoundStatement eventById = client.getInsertDeviceEventById().bind();
+	binder.bind(client, eventById, event);
+	writes.add(client.getInsertDeviceEventById(), eventById, event.getId());
 
 	// Build insert for event by alternate id.
 	if (event.getAlternateId() != null) {
-	    BoundStatement eventByAltId = getCassandraEventManagementClient().getInsertDeviceEventByAltId().bind();
-	    binder.bind(getCassandraEventManagementClient(), eventByAltId, event);
-	    process(eventByAltId, event);
+	    BoundStatement eventByAltId = client.getInsertDeviceEventByAltId().bind();
+	    binder.bind(client, eventByAltId, event);
+	    writes.add(client.getInsertDeviceEventByAltId(), eventByAltId, event.getAlternateId());
 	}
 
 	// Build insert for event by assignment.
-	BoundStatement eventByAssn = getCassandraEventManagementClient().getInsertDeviceEventByAssignment().bind();
-	binder.bind(getCassandraEventManagementClient(), eventByAssn, event);
-	eventByAssn.setInt("bucket", getClient().getBucketValue(event.getEventDate().getTime()));
-	process(eventByAssn, event);
+	BoundStatement eventByAssn = client.getInsertDeviceEventByAssignment().bind();
+	binder.bind(client, eventByAssn, event);
+	eventByAssn.setInt("bucket", bucket);
+	writes.add(client.getInsertDeviceEventByAssignment(), eventByAssn, event.getDeviceAssignmentId(), eventType,
+		bucket);
 
 	// Build insert for event by customer.
 	if (context.getCustomerId() != null) {
-	    BoundStatement eventByCustomer = getCassandraEventManagementClient().getInsertDeviceEventByCustomer()
-		    .bind();
-	    binder.bind(getCassandraEventManagementClient(), eventByCustomer, event);
-	    eventByCustomer.setInt("bucket", getClient().getBucketValue(event.getEventDate().getTime()));
-	    process(eventByCustomer, event);
+	    BoundStatement eventByCustomer = client.getInsertDeviceEventByCustomer().bind();
+	    binder.bind(client, eventByCustomer, event);
+	    eventByCustomer.setInt("bucket", bucket);
+	    writes.add(client.getInsertDeviceEventByCustomer(), eventByCustomer, context.getCustomerId(), eventType,
+		    bucket);
 	}
 
 	// Build insert for event by area.
 	if (context.getAreaId() != null) {
-	    BoundStatement eventByArea = getCassandraEventManagementClient().getInsertDeviceEventByArea().bind();
-	    binder.bind(getCassandraEventManagementClient(), eventByArea, event);
-	    eventByArea.setInt("bucket", getClient().getBucketValue(event.getEventDate().getTime()));
-	    process(eventByArea, event);
+	    BoundStatement eventByArea = client.getInsertDeviceEventByArea().bind();
+	    binder.bind(client, eventByArea, event);
+	    eventByArea.setInt("bucket", bucket);
+	    writes.add(client.getInsertDeviceEventByArea(), eventByArea, context.getAreaId(), eventType, bucket);
 	}
 
 	// Build insert for event by asset.
 	if (context.getAssetId() != null) {
-	    BoundStatement eventByAsset = getCassandraEventManagementClient().getInsertDeviceEventByAsset().bind();
-	    binder.bind(getCassandraEventManagementClient(), eventByAsset, event);
-	    eventByAsset.setInt("bucket", getClient().getBucketValue(event.getEventDate().getTime()));
-	    process(eventByAsset, event);
+	    BoundStatement eventByAsset = client.getInsertDeviceEventByAsset().bind();
+	    binder.bind(client, eventByAsset, event);
+	    eventByAsset.setInt("bucket", bucket);
+	    writes.add(client.getInsertDeviceEventByAsset(), eventByAsset, context.getAssetId(), eventType, bucket);
 	}
     }
 
     /**
-     * Search events by a given index.
+     * Search events by a given index. Buckets are read newest first and the
+     * partitions for each bucket are merged in clustering order, so reading stops
+     * as soon as the requested page has been filled. If reading stops early, the
+     * total is estimated from the portion of the date range that was read.
+     * Queries for upcoming buckets are issued while the current bucket is merged,
+     * bounded by the maximum number of concurrent queries.
      * 
      * @param index
      * @param entityIds
-     * @param eventType
      * @param criteria
      * @param binder
      * @return
@@ -404,47 +453,154 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
 	    throws SiteWhereException {
 	PreparedStatement query = getQueryForIndex(index);
 	Pager<I> pager = new Pager<>(criteria);
-	List<Integer> buckets = getBucketsForDateRange(criteria);
-	for (int bucket : buckets) {
-	    List<ResultSet> perBucket = listResultsForBucket(query, entityIds, criteria, binder.getEventType(), bucket);
-	    List<I> bucketEvents = new ArrayList<>();
-	    for (ResultSet perKey : perBucket) {
-		for (Row row : perKey) {
-		    bucketEvents.add(binder.load(getCassandraEventManagementClient(), row));
+	long limit = getResultLimit(criteria);
+	long matched = 0;
+	I last = null;
+	Iterator<Integer> buckets = getBucketsForDateRange(criteria).iterator();
+	Deque<BucketQueries> queued = new ArrayDeque<>();
+	int inFlight = 0;
+	try {
+	    while (true) {
+		// Keep queries for upcoming buckets in flight while merging.
+		while (buckets.hasNext()
+			&& (queued.isEmpty() || (inFlight + entityIds.size()) <= MAX_CONCURRENT_QUERIES)) {
+		    BucketQueries next = startQueriesForBucket(query, entityIds, criteria, binder.getEventType(),
+			    buckets.next());
+		    queued.add(next);
+		    inFlight += next.getFutures().size();
+		}
+		BucketQueries current = queued.poll();
+		if (current == null) {
+		    return new SearchResults<I>(pager.getResults(), matched);
+		}
+		inFlight -= current.getFutures().size();
+		CassandraEventMergeIterator<I> merged = new CassandraEventMergeIterator<>(
+			getCassandraEventManagementClient(), binder, getResults(current));
+		while (merged.hasNext()) {
+		    if (matched == limit) {
+			long total = estimateTotal(criteria, matched, last);
+			getLogger().debug(
+				"Stopped after " + matched + " events in bucket " + current.getBucket() + ".");
+			return new SearchResults<I>(pager.getResults(), total);
+		    }
+		    last = merged.next();
+		    pager.process(last);
+		    matched++;
+		}
+	    }
+	} finally {
+	    for (BucketQueries unused : queued) {
+		for (ResultSetFuture future : unused.getFutures()) {
+		    future.cancel(true);
 		}
 	    }
-	    addSortedEventsToPager(pager, bucketEvents, bucket);
 	}
-	return new SearchResults<I>(pager.getResults(), pager.getTotal());
     }
 
     /**
-     * Process a Cassandra query and handle failures.
+     * Get the number of events that must be read to fill the requested page.
      * 
-     * @param statement
-     * @param event
+     * @param criteria
+     * @return
+     */
+    protected long getResultLimit(IDateRangeSearchCriteria criteria) {
+	if (criteria.getPageSize() == null || criteria.getPageSize() <= 0) {
+	    return Long.MAX_VALUE;
+	}
+	int pageNumber = (criteria.getPageNumber() != null) ? Math.max(1, criteria.getPageNumber()) : 1;
+	return (long) pageNumber * criteria.getPageSize();
+    }
+
+    /**
+     * Estimate the total number of matching events assuming events read so far
+     * are representative of the rest of the date range.
+     * 
+     * @param criteria
+     * @param matched
+     * @param last
+     * @return
+     */
+    protected long estimateTotal(IDateRangeSearchCriteria criteria, long matched, IDeviceEvent last) {
+	if (criteria.getStartDate() == null || last == null) {
+	    return matched + 1;
+	}
+	long end = criteria.getEndDate() != null ? criteria.getEndDate().getTime() : System.currentTimeMillis();
+	long range = end - criteria.getStartDate().getTime();
+	long covered = end - last.getEventDate().getTime();
+	if (covered <= 0 || covered >= range) {
+	    return matched + 1;
+	}
+	return Math.max(matched + 1, (long) (matched * ((double) range / covered)));
+    }
+
+    /**
+     * Execute writes, grouping inserts for the same partition into unlogged
+     * batches. Blocks while the maximum number of write requests are in flight
+     * and waits for all writes to complete so that failures are reported to the
+     * caller.
+     * 
+     * @param writes
      * @throws SiteWhereException
      */
-    protected void process(BoundStatement statement, IDeviceEvent event) throws SiteWhereException {
-	ResultSetFuture future = getClient().getSession().executeAsync(statement);
-	Futures.addCallback(future, new FutureCallback<ResultSet>() {
-	    /*
-	     * @see
-	     * com.google.common.util.concurrent.FutureCallback#onSuccess(java.lang.Object)
-	     */
-	    @Override
-	    public void onSuccess(ResultSet result) {
+    protected void execute(CassandraPartitionedWrites writes) throws SiteWhereException {
+	List<ResultSetFuture> futures = new ArrayList<>();
+	try {
+	    for (Statement statement : writes.getStatements(MAX_BATCH_STATEMENTS)) {
+		getInFlightWrites().acquire();
+		ResultSetFuture future;
+		try {
+		    future = getClient().getSession().executeAsync(statement);
+		} catch (RuntimeException e) {
+		    getInFlightWrites().release();
+		    throw e;
+		}
+		future.addListener(() -> getInFlightWrites().release(), MoreExecutors.directExecutor());
+		futures.add(future);
 	    }
+	    Futures.allAsList(futures).get();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while persisting events to Cassandra.", e);
+	} catch (ExecutionException e) {
+	    throw new SiteWhereException(String.format("Failed to persist %d event inserts to Cassandra.",
+		    writes.getStatementCount()), e.getCause());
+	} catch (RuntimeException e) {
+	    throw new SiteWhereException("Failed to persist events to Cassandra.", e);
+	}
+    }
 
-	    /*
-	     * @see com.google.common.util.concurrent.FutureCallback#onFailure(java.lang.
-	     * Throwable)
-	     */
-	    @Override
-	    public void onFailure(Throwable t) {
-		getLogger().error("Failed to persist Cassandra event: " + event.getId(), t);
-	    }
-	}, MoreExecutors.directExecutor());
+    /**
+     * Get binder used to load events of the given type.
+     * 
+     * @param type
+     * @return
+     * @throws SiteWhereException
+     */
+    protected ICassandraEventBinder<? extends IDeviceEvent> getBinderForEventType(DeviceEventType type)
+	    throws SiteWhereException {
+	switch (type) {
+	case Measurement: {
+	    return CassandraDeviceMeasurement.INSTANCE;
+	}
+	case Location: {
+	    return CassandraDeviceLocation.INSTANCE;
+	}
+	case Alert: {
+	    return CassandraDeviceAlert.INSTANCE;
+	}
+	case CommandInvocation: {
+	    return CassandraDeviceCommandInvocation.INSTANCE;
+	}
+	case CommandResponse: {
+	    return CassandraDeviceCommandResponse.INSTANCE;
+	}
+	case StateChange: {
+	    return CassandraDeviceStateChange.INSTANCE;
+	}
+	default: {
+	    throw new SiteWhereException("Unsupported event type: " + type.name());
+	}
+	}
     }
 
     /**
@@ -493,9 +649,9 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
     }
 
     /**
-     * Perform parallel queries to get results for a single bucket.
+     * Start asynchronous queries for each entity in a single bucket.
      * 
-     * @param keyField
+     * @param statement
      * @param keys
      * @param criteria
      * @param eventType
@@ -503,7 +659,7 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
      * @return
      * @throws SiteWhereException
      */
-    protected List<ResultSet> listResultsForBucket(PreparedStatement statement, List<UUID> keys,
+    protected BucketQueries startQueriesForBucket(PreparedStatement statement, List<UUID> keys,
 	    IDateRangeSearchCriteria criteria, DeviceEventType eventType, int bucket) throws SiteWhereException {
 	List<ResultSetFuture> futures = new ArrayList<>();
 	for (UUID key : keys) {
@@ -513,34 +669,59 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
 	    query.setInt(2, bucket);
 	    query.setTimestamp(3, criteria.getStartDate());
 	    query.setTimestamp(4, criteria.getEndDate());
+	    query.setFetchSize(QUERY_FETCH_SIZE);
 	    ResultSetFuture resultSetFuture = getClient().getSession().executeAsync(query);
 	    futures.add(resultSetFuture);
 	}
+	return new BucketQueries(bucket, futures);
+    }
+
+    /**
+     * Wait for the first page of results for each query in a bucket.
+     * 
+     * @param queries
+     * @return
+     * @throws SiteWhereException
+     */
+    protected List<ResultSet> getResults(BucketQueries queries) throws SiteWhereException {
 	List<ResultSet> results = new ArrayList<>();
-	for (ResultSetFuture future : futures) {
-	    results.add(future.getUninterruptibly());
+	try {
+	    for (ResultSetFuture future : queries.getFutures()) {
+		results.add(future.get());
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while querying Cassandra events.", e);
+	} catch (ExecutionException e) {
+	    throw new SiteWhereException("Unable to query events for bucket " + queries.getBucket() + ".",
+		    e.getCause());
 	}
 	return results;
     }
 
     /**
-     * Sort the list of device events, then add them to the pager.
-     * 
-     * @param pager
-     * @param events
+     * Queries issued for all entities in a single bucket.
      */
-    protected <T extends IDeviceEvent> void addSortedEventsToPager(Pager<T> pager, List<T> events, int bucket) {
-	Collections.sort(events, new Comparator<T>() {
+    protected static class BucketQueries {
 
-	    @Override
-	    public int compare(IDeviceEvent o1, IDeviceEvent o2) {
-		return 1 - (o1.getEventDate().compareTo(o2.getEventDate()));
-	    }
-	});
-	for (T event : events) {
-	    pager.process(event);
+	/** Bucket being queried */
+	private int bucket;
+
+	/** Query per entity */
+	private List<ResultSetFuture> futures;
+
+	public BucketQueries(int bucket, List<ResultSetFuture> futures) {
+	    this.bucket = bucket;
+	    this.futures = futures;
+	}
+
+	public int getBucket() {
+	    return bucket;
+	}
+
+	public List<ResultSetFuture> getFutures() {
+	    return futures;
 	}
-	getLogger().debug("Processed " + events.size() + " events for bucket " + bucket + ".");
     }
 
     protected IDeviceManagement getDeviceManagement() {
@@ -562,4 +743,8 @@ public class CassandraDeviceEventManagement extends TenantEngineLifecycleCompone
     protected void setCassandraEventManagementClient(CassandraEventManagementClient cassandraEventManagementClient) {
 	this.cassandraEventManagementClient = cassandraEventManagementClient;
     }
+
+    protected Semaphore getInFlightWrites() {
+	return inFlightWrites;
+    }
 }
\ No newline at end of file
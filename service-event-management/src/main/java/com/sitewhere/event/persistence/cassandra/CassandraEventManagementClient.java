@@ -58,6 +58,9 @@ public class CassandraEventManagementClient extends TenantEngineLifecycleCompone
     /** Prepared statement for inserting a device event by asset */
     private PreparedStatement insertDeviceEventByAsset;
 
+    /** Prepared statement for selecting a device event by alternate id */
+    private PreparedStatement selectEventByAltId;
+
     /** Prepared statement for selecting device events by type for an assignment */
     private PreparedStatement selectEventsByAssignmentForType;
 
@@ -181,6 +184,8 @@ public class CassandraEventManagementClient extends TenantEngineLifecycleCompone
 	this.insertDeviceEventByAsset = getClient().getSession().prepare("insert into "
 		+ getClient().getKeyspace().getValue()
 		+ ".events_by_asset (device_id, bucket, event_id, alt_id, event_type, assignment_id, customer_id, area_id, asset_id, event_date, received_date, location, measurement, alert, invocation, response, state_change) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+	this.selectEventByAltId = getClient().getSession().prepare(
+		"select * from " + getClient().getKeyspace().getValue() + ".events_by_alt_id where alt_id=?");
 	this.selectEventsByAssignmentForType = getClient().getSession().prepare("select * from "
 		+ getClient().getKeyspace().getValue()
 		+ ".events_by_assignment where assignment_id=? and event_type=? and bucket=? and event_date >= ? and event_date <= ?");
@@ -323,6 +328,14 @@ public class CassandraEventManagementClient extends TenantEngineLifecycleCompone
 	this.selectEventsByAssetForType = selectEventsByAssetForType;
     }
 
+    public PreparedStatement getSelectEventByAltId() {
+	return selectEventByAltId;
+    }
+
+    public void setSelectEventByAltId(PreparedStatement selectEventByAltId) {
+	this.selectEventByAltId = selectEventByAltId;
+    }
+
     public CassandraClient getClient() {
 	return client;
     }
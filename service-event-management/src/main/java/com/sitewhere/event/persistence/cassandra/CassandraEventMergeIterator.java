@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.persistence.cassandra;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.datastax.driver.core.ResultSet;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+/**
+ * Merges events from several partitions of a bucket into a single stream
+ * ordered by event date (newest first). Each partition is already returned in
+ * clustering order, so only the head row of each partition is loaded at a time
+ * and rows are pulled from the driver page by page as the merge advances. This
+ * allows a search to stop reading once enough events have been returned.
+ *
+ * @param <I>
+ */
+public class CassandraEventMergeIterator<I extends IDeviceEvent> {
+
+    /** Remaining rows in a page that trigger a prefetch of the next page */
+    private static final int PREFETCH_THRESHOLD = 10;
+
+    /** Event management client */
+    private CassandraEventManagementClient client;
+
+    /** Binder used to load events */
+    private ICassandraEventBinder<I> binder;
+
+    /** Partitions ordered by date of their head event */
+    private PriorityQueue<PartitionCursor> cursors = new PriorityQueue<>();
+
+    public CassandraEventMergeIterator(CassandraEventManagementClient client, ICassandraEventBinder<I> binder,
+	    List<ResultSet> partitions) throws SiteWhereException {
+	this.client = client;
+	this.binder = binder;
+	for (ResultSet partition : partitions) {
+	    PartitionCursor cursor = new PartitionCursor(partition);
+	    if (cursor.advance()) {
+		cursors.add(cursor);
+	    }
+	}
+    }
+
+    /**
+     * Indicates whether more events are available.
+     *
+     * @return
+     */
+    public boolean hasNext() {
+	return !cursors.isEmpty();
+    }
+
+    /**
+     * Get the newest remaining event across all partitions.
+     *
+     * @return
+     * @throws SiteWhereException
+     */
+    public I next() throws SiteWhereException {
+	PartitionCursor cursor = cursors.poll();
+	if (cursor == null) {
+	    return null;
+	}
+	I event = cursor.getHead();
+	if (cursor.advance()) {
+	    cursors.add(cursor);
+	}
+	return event;
+    }
+
+    /**
+     * Tracks the current event for a single partition.
+     */
+    private class PartitionCursor implements Comparable<PartitionCursor> {
+
+	/** Rows for the partition */
+	private ResultSet rows;
+
+	/** Next event in clustering order */
+	private I head;
+
+	public PartitionCursor(ResultSet rows) {
+	    this.rows = rows;
+	}
+
+	/**
+	 * Load the next event for the partition, prefetching the following page
+	 * when the current one is nearly consumed.
+	 *
+	 * @return false if the partition has no more rows
+	 * @throws SiteWhereException
+	 */
+	public boolean advance() throws SiteWhereException {
+	    if (rows.getAvailableWithoutFetching() <= PREFETCH_THRESHOLD && !rows.isFullyFetched()) {
+		rows.fetchMoreResults();
+	    }
+	    if (rows.isExhausted()) {
+		this.head = null;
+		return false;
+	    }
+	    this.head = binder.load(client, rows.one());
+	    return true;
+	}
+
+	/*
+	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	 */
+	@Override
+	public int compareTo(PartitionCursor other) {
+	    return other.getHead().getEventDate().compareTo(getHead().getEventDate());
+	}
+
+	public I getHead() {
+	    return head;
+	}
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.persistence.cassandra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Statement;
+
+/**
+ * Collects insert statements grouped by the table and partition they write to.
+ * Statements that share a partition are sent as a single unlogged batch, which
+ * is applied by one replica set in a single round trip. Statements for
+ * different partitions are never batched together since that would force a
+ * coordinator to fan the batch out.
+ */
+public class CassandraPartitionedWrites {
+
+    /** Statements grouped by table and partition key */
+    private Map<List<Object>, List<Statement>> partitions = new LinkedHashMap<>();
+
+    /** Number of statements added */
+    private int statementCount;
+
+    /**
+     * Add a statement that writes to the given partition of the table for a
+     * prepared insert.
+     *
+     * @param insert
+     * @param statement
+     * @param partitionKey
+     */
+    public void add(PreparedStatement insert, Statement statement, Object... partitionKey) {
+	List<Object> key = new ArrayList<>(partitionKey.length + 1);
+	key.add(insert.getQueryString());
+	key.addAll(Arrays.asList(partitionKey));
+	List<Statement> statements = partitions.get(key);
+	if (statements == null) {
+	    statements = new ArrayList<>();
+	    partitions.put(key, statements);
+	}
+	statements.add(statement);
+	statementCount++;
+    }
+
+    /**
+     * Get statements to execute. Single writes to a partition are returned as-is
+     * while multiple writes are combined into unlogged batches of at most the
+     * given size.
+     *
+     * @param maxBatchSize
+     * @return
+     */
+    public List<Statement> getStatements(int maxBatchSize) {
+	List<Statement> result = new ArrayList<>();
+	for (List<Statement> statements : partitions.values()) {
+	    if (statements.size() == 1) {
+		result.add(statements.get(0));
+		continue;
+	    }
+	    for (int i = 0; i < statements.size(); i += maxBatchSize) {
+		BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+		batch.addAll(statements.subList(i, Math.min(i + maxBatchSize, statements.size())));
+		result.add(batch);
+	    }
+	}
+	return result;
+    }
+
+    public int getStatementCount() {
+	return statementCount;
+    }
+
+    public int getPartitionCount() {
+	return partitions.size();
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.persistence.influxdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+
+import com.sitewhere.influxdb.InfluxDbClient;
+import com.sitewhere.microservice.lifecycle.TenantEngineLifecycleComponent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.microservice.lifecycle.ILifecycleProgressMonitor;
+import com.sitewhere.spi.microservice.lifecycle.LifecycleComponentType;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+/**
+ * Buffers points from concurrent writers and sends them to InfluxDB as
+ * {@link BatchPoints}, one per database and retention policy. Points are sent
+ * as soon as no batch is being written, so a lone writer is not delayed. While
+ * a batch is being written, points are buffered and sent when it completes or
+ * when the configured number of points is buffered. Writers block once the
+ * maximum number of points are waiting to be written. Buffered points are
+ * flushed when the writer is stopped and later writes are sent directly. A
+ * writer that times out only reports failure if its points could be removed
+ * from the buffer, so points that are reported as failed are never written.
+ */
+public class InfluxDbBatchWriter extends TenantEngineLifecycleComponent {
+
+    /** Histogram for batch writes */
+    private static final Histogram BATCH_WRITE_TIMER = TenantEngineLifecycleComponent
+	    .createHistogramMetric("influxdb_batch_write_timer", "Timer for writing a batch of points to InfluxDB");
+
+    /** Counter for points written */
+    private static final Counter POINTS_WRITTEN = TenantEngineLifecycleComponent
+	    .createCounterMetric("influxdb_points_written_count", "Count of points written to InfluxDB in batches");
+
+    /** Maximum time to wait for pending writes on stop */
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+
+    /** Maximum time a writer waits for its points to be written */
+    private static final long WRITE_TIMEOUT_SECONDS = 60;
+
+    /** Client */
+    private InfluxDbClient client;
+
+    /** Number of buffered points that triggers a flush */
+    private int batchSize;
+
+    /** Maximum time points are buffered before a flush */
+    private long batchIntervalMs;
+
+    /** Maximum number of points buffered or being written */
+    private int maxPendingPoints;
+
+    /** Buffered writes by database and retention policy */
+    private Map<BatchKey, List<PendingWrite>> buffered = new LinkedHashMap<>();
+
+    /** Number of points buffered */
+    private int bufferedPoints;
+
+    /** Number of points buffered or being written */
+    private int pendingPoints;
+
+    /** Indicates a flush has been submitted and has not yet taken the buffer */
+    private boolean flushQueued;
+
+    /** Indicates a batch is being written */
+    private boolean writing;
+
+    /** Indicates writer was stopped and no longer buffers points */
+    private boolean stopped;
+
+    /** Executes scheduled and size-triggered flushes */
+    private ScheduledExecutorService flusher;
+
+    /** Serializes flushes */
+    private final Object flushLock = new Object();
+
+    public InfluxDbBatchWriter(InfluxDbClient client, int batchSize, long batchIntervalMs, int maxPendingPoints) {
+	super(LifecycleComponentType.Other);
+	this.client = client;
+	this.batchSize = Math.max(1, batchSize);
+	this.batchIntervalMs = batchIntervalMs;
+	this.maxPendingPoints = Math.max(this.batchSize, maxPendingPoints);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.microservice.lifecycle.LifecycleComponent#start(com.sitewhere.
+     * spi.microservice.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	this.flusher = Executors.newSingleThreadScheduledExecutor(new InfluxDbFlushThreadFactory());
+	getFlusher().scheduleWithFixedDelay(() -> flush(), getBatchIntervalMs(), getBatchIntervalMs(),
+		TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.microservice.lifecycle.LifecycleComponent#stop(com.sitewhere.
+     * spi.microservice.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	synchronized (this) {
+	    this.stopped = true;
+	}
+	if (getFlusher() != null) {
+	    getFlusher().shutdown();
+	    try {
+		getFlusher().awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+	flush();
+    }
+
+    /**
+     * Write points and wait until the batch containing them has been written. If
+     * the points are still buffered when the timeout expires they are removed
+     * and the write fails. If they are already being written, the outcome of that
+     * write is reported instead.
+     * 
+     * @param database
+     * @param retentionPolicy
+     * @param points
+     * @throws SiteWhereException
+     */
+    public void write(String database, String retentionPolicy, List<Point> points) throws SiteWhereException {
+	if (points.isEmpty()) {
+	    return;
+	}
+	long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(WRITE_TIMEOUT_SECONDS);
+	PendingWrite write = new PendingWrite(new BatchKey(database, retentionPolicy), points);
+	try {
+	    enqueue(write, deadline);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while buffering points for InfluxDB.", e);
+	} catch (TimeoutException e) {
+	    throw new SiteWhereException("Timed out waiting to buffer points for InfluxDB.", e);
+	}
+	try {
+	    try {
+		write.getResult().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+	    } catch (TimeoutException e) {
+		if (cancel(write)) {
+		    throw new SiteWhereException("Timed out waiting for points to be written to InfluxDB.", e);
+		}
+		// Points were taken by a batch that is being written.
+		write.getResult().get();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    if (cancel(write)) {
+		throw new SiteWhereException("Interrupted while writing points to InfluxDB.", e);
+	    }
+	    throw new SiteWhereException("Interrupted while points were being written to InfluxDB.", e);
+	} catch (ExecutionException e) {
+	    throw new SiteWhereException("Unable to write points to InfluxDB.", e.getCause());
+	}
+    }
+
+    /**
+     * Add points to the buffer, blocking while the maximum number of points are
+     * pending. Points are written directly once the writer has been stopped.
+     * 
+     * @param write
+     * @param deadline
+     * @throws InterruptedException
+     * @throws TimeoutException
+     */
+    protected void enqueue(PendingWrite write, long deadline) throws InterruptedException, TimeoutException {
+	List<Point> points = write.getPoints();
+	BatchKey key = write.getKey();
+	boolean direct;
+	boolean trigger = false;
+	synchronized (this) {
+	    while (!stopped && pendingPoints > 0 && pendingPoints + points.size() > getMaxPendingPoints()) {
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining <= 0) {
+		    throw new TimeoutException();
+		}
+		wait(remaining);
+	    }
+	    pendingPoints += points.size();
+	    direct = stopped;
+	    if (!direct) {
+		List<PendingWrite> writes = buffered.get(key);
+		if (writes == null) {
+		    writes = new ArrayList<>();
+		    buffered.put(key, writes);
+		}
+		writes.add(write);
+		bufferedPoints += points.size();
+		trigger = !flushQueued && (!writing || bufferedPoints >= getBatchSize());
+		flushQueued |= trigger;
+	    }
+	}
+	if (direct) {
+	    writeBatch(key, Collections.singletonList(write));
+	} else if (trigger) {
+	    try {
+		getFlusher().execute(() -> flush());
+	    } catch (RejectedExecutionException e) {
+		flush();
+	    }
+	}
+    }
+
+    /**
+     * Remove a write from the buffer if it has not yet been taken by a flush.
+     * 
+     * @param write
+     * @return true if removed, false if its points are being or have been written
+     */
+    protected synchronized boolean cancel(PendingWrite write) {
+	List<PendingWrite> writes = buffered.get(write.getKey());
+	if (writes == null || !writes.remove(write)) {
+	    return false;
+	}
+	if (writes.isEmpty()) {
+	    buffered.remove(write.getKey());
+	}
+	bufferedPoints -= write.getPoints().size();
+	pendingPoints -= write.getPoints().size();
+	notifyAll();
+	return true;
+    }
+
+    /**
+     * Write all buffered points as one batch per database and retention policy.
+     * Points buffered while a batch was being written are written as soon as it
+     * completes.
+     */
+    protected void flush() {
+	synchronized (flushLock) {
+	    while (true) {
+		Map<BatchKey, List<PendingWrite>> batch;
+		synchronized (this) {
+		    this.flushQueued = false;
+		    if (bufferedPoints == 0) {
+			return;
+		    }
+		    batch = buffered;
+		    this.buffered = new LinkedHashMap<>();
+		    this.bufferedPoints = 0;
+		    this.writing = true;
+		}
+		try {
+		    for (Map.Entry<BatchKey, List<PendingWrite>> entry : batch.entrySet()) {
+			writeBatch(entry.getKey(), entry.getValue());
+		    }
+		} finally {
+		    synchronized (this) {
+			this.writing = false;
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Write pending writes for a database and retention policy as a single batch
+     * and notify writers of the outcome.
+     * 
+     * @param key
+     * @param writes
+     */
+    protected void writeBatch(BatchKey key, List<PendingWrite> writes) {
+	BatchPoints points = BatchPoints.database(key.getDatabase()).retentionPolicy(key.getRetentionPolicy())
+		.build();
+	int count = 0;
+	for (PendingWrite write : writes) {
+	    for (Point point : write.getPoints()) {
+		points.point(point);
+	    }
+	    count += write.getPoints().size();
+	}
+	final Histogram.Timer writeTime = BATCH_WRITE_TIMER.labels(getTenantEngine().buildLabels()).startTimer();
+	try {
+	    getClient().getInflux().write(points);
+	    POINTS_WRITTEN.labels(getTenantEngine().buildLabels()).inc(count);
+	    for (PendingWrite write : writes) {
+		write.getResult().complete(null);
+	    }
+	} catch (Throwable t) {
+	    getLogger().error(String.format("Unable to write batch of %d points to InfluxDB.", count), t);
+	    for (PendingWrite write : writes) {
+		write.getResult().completeExceptionally(t);
+	    }
+	} finally {
+	    writeTime.close();
+	    synchronized (this) {
+		pendingPoints -= count;
+		notifyAll();
+	    }
+	}
+    }
+
+    /**
+     * Database and retention policy a batch is written to.
+     */
+    private static class BatchKey {
+
+	/** Database name */
+	private String database;
+
+	/** Retention policy */
+	private String retentionPolicy;
+
+	public BatchKey(String database, String retentionPolicy) {
+	    this.database = database;
+	    this.retentionPolicy = retentionPolicy;
+	}
+
+	/*
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+	    if (!(obj instanceof BatchKey)) {
+		return false;
+	    }
+	    BatchKey other = (BatchKey) obj;
+	    return Objects.equals(database, other.database) && Objects.equals(retentionPolicy, other.retentionPolicy);
+	}
+
+	/*
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+	    return Objects.hash(database, retentionPolicy);
+	}
+
+	public String getDatabase() {
+	    return database;
+	}
+
+	public String getRetentionPolicy() {
+	    return retentionPolicy;
+	}
+    }
+
+    /**
+     * Points from a single writer along with the result of writing them.
+     */
+    private static class PendingWrite {
+
+	/** Database and retention policy */
+	private BatchKey key;
+
+	/** Points to write */
+	private List<Point> points;
+
+	/** Completes when points have been written */
+	private CompletableFuture<Void> result = new CompletableFuture<>();
+
+	public PendingWrite(BatchKey key, List<Point> points) {
+	    this.key = key;
+	    this.points = points;
+	}
+
+	public BatchKey getKey() {
+	    return key;
+	}
+
+	public List<Point> getPoints() {
+	    return points;
+	}
+
+	public CompletableFuture<Void> getResult() {
+	    return result;
+	}
+    }
+
+    /** Used for naming flush thread */
+    private class InfluxDbFlushThreadFactory implements ThreadFactory {
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "InfluxDB Batch Writer");
+	}
+    }
+
+    protected InfluxDbClient getClient() {
+	return client;
+    }
+
+    protected int getBatchSize() {
+	return batchSize;
+    }
+
+    protected long getBatchIntervalMs() {
+	return batchIntervalMs;
+    }
+
+    protected int getMaxPendingPoints() {
+	return maxPendingPoints;
+    }
+
+    protected ScheduledExecutorService getFlusher() {
+	return flusher;
+    }
+}
@@ -13,10 +13,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.influxdb.InfluxDB.Cancellable;
 import org.influxdb.dto.Point;
 import org.influxdb.dto.Query;
 import org.influxdb.dto.QueryResult;
@@ -32,7 +36,6 @@ import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.DeviceEventIndex;
 import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceEvent;
-import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 import com.sitewhere.spi.search.ISearchCriteria;
 
 /**
@@ -46,6 +49,9 @@ public class InfluxDbDeviceEvent {
     /** Collection for events */
     public static final String COLLECTION_EVENTS = "events";
 
+    /** Collection indexing events by alternate id */
+    public static final String COLLECTION_ALTERNATE_IDS = "altids";
+
     /** Event id tag */
     public static final String EVENT_ID = "eid";
 
@@ -73,9 +79,18 @@ public class InfluxDbDeviceEvent {
     /** Event received date field */
     public static final String RECEIVED_DATE = "rcvdate";
 
+    /** Event time field in alternate id index (nanoseconds) */
+    public static final String EVENT_TIME = "etime";
+
     /** Event metadata field */
     public static final String EVENT_METADATA_PREFIX = "meta:";
 
+    /** Error reported by the client when a chunked query has completed */
+    private static final String CHUNKED_QUERY_DONE = "DONE";
+
+    /** Maximum time to wait for a chunked query to complete */
+    private static final long CHUNKED_QUERY_TIMEOUT_MS = 60 * 1000;
+
     /** The meta data field to check if user has specified a time precision */
     private static final String EVENT_TIME_PRECISION_META_DATA_KEY = "precision";
 
@@ -110,28 +125,83 @@ public class InfluxDbDeviceEvent {
     }
 
     /**
-     * Get an event by alternate id.
+     * Get an event by alternate id. The alternate id index is checked first, since
+     * alternate ids are tags there and a miss is answered from the series index.
+     * If enabled, events persisted before the index existed are looked up in the
+     * events collection, limited to events dated within the time-to-live.
      * 
      * @param alternateId
+     * @param ttlMs
+     * @param fallback
      * @param client
      * @return
      * @throws SiteWhereException
      */
-    public static IDeviceEvent getEventByAlternateId(String alternateId, InfluxDbClient client)
-	    throws SiteWhereException {
-	Query query = new Query("SELECT * FROM " + InfluxDbDeviceEvent.COLLECTION_EVENTS + " where " + ALTERNATE_ID
-		+ "='" + alternateId + "'", client.getDatabase().getValue());
-	QueryResult response = client.getInflux().query(query, TimeUnit.MILLISECONDS);
-	List<IDeviceEvent> results = InfluxDbDeviceEvent.eventsOfType(response, IDeviceEvent.class);
+    public static IDeviceEvent getEventByAlternateId(String alternateId, long ttlMs, boolean fallback,
+	    InfluxDbClient client) throws SiteWhereException {
+	String database = client.getDatabase().getValue();
+	Long since = (ttlMs > 0) ? TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - ttlMs) : null;
+	Query indexQuery = InfluxDbQueryTemplates.alternateIdIndex(alternateId, since, database);
+	Map<String, Object> indexed = first(client.getInflux().query(indexQuery, TimeUnit.MILLISECONDS));
+	if (indexed != null) {
+	    long time = Long.parseLong(find(indexed, EVENT_TIME));
+	    Query query = InfluxDbQueryTemplates.eventAt(find(indexed, EVENT_ID), time, database);
+	    List<IDeviceEvent> results = eventsOfType(client.getInflux().query(query, TimeUnit.MILLISECONDS),
+		    IDeviceEvent.class);
+	    if (results.size() > 0) {
+		return results.get(0);
+	    }
+	}
+	if (!fallback) {
+	    return null;
+	}
+	Query query = InfluxDbQueryTemplates.alternateId(alternateId, since, database);
+	List<IDeviceEvent> results = eventsOfType(client.getInflux().query(query, TimeUnit.MILLISECONDS),
+		IDeviceEvent.class);
 	if (results.size() > 0) {
 	    return results.get(0);
 	}
 	return null;
     }
 
+    /**
+     * Create a point that indexes an event by alternate id. The point is stored at
+     * the time the event was received and holds the event id and the time of the
+     * event point, so the event can be read without scanning.
+     * 
+     * @param event
+     * @return
+     * @throws SiteWhereException
+     */
+    public static Point createAlternateIdPoint(DeviceEvent event) throws SiteWhereException {
+	Point.Builder builder = Point.measurement(COLLECTION_ALTERNATE_IDS);
+	builder.time(event.getReceivedDate().getTime(), TimeUnit.MILLISECONDS);
+	builder.tag(ALTERNATE_ID, event.getAlternateId());
+	builder.tag(EVENT_TYPE, event.getEventType().name());
+	builder.addField(EVENT_ID, event.getId().toString());
+	builder.addField(EVENT_TIME, String.valueOf(getTimePrecision(event).toNanos(event.getEventDate().getTime())));
+	return builder.build();
+    }
+
+    /**
+     * Add point indexing an event by alternate id if the event has one.
+     * 
+     * @param event
+     * @param points
+     * @throws SiteWhereException
+     */
+    public static void addAlternateIdPoint(DeviceEvent event, List<Point> points) throws SiteWhereException {
+	if (event.getAlternateId() != null) {
+	    points.add(createAlternateIdPoint(event));
+	}
+    }
+
     /**
      * Search for of events of a given type associated with one or more entities for
-     * a given index.
+     * a given index. If a chunk size is given, results are streamed from InfluxDB
+     * in chunks and parsed as they arrive. If counts are skipped, one extra event
+     * is requested to detect whether another page exists and the reported total
+     * only covers pages up to the next one.
      * 
      * @param index
      * @param entityIds
@@ -139,19 +209,33 @@ public class InfluxDbDeviceEvent {
      * @param criteria
      * @param client
      * @param clazz
+     * @param chunkSize
+     * @param skipCount
      * @return
      * @throws SiteWhereException
      */
     public static <T> SearchResults<T> searchByIndex(DeviceEventIndex index, List<UUID> entityIds, DeviceEventType type,
-	    ISearchCriteria criteria, InfluxDbClient client, Class<T> clazz) throws SiteWhereException {
-	Query query = InfluxDbDeviceEvent.queryEventsOfTypeForIndex(index, type, entityIds, criteria,
-		client.getDatabase().getValue());
+	    ISearchCriteria criteria, InfluxDbClient client, Class<T> clazz, int chunkSize, boolean skipCount)
+	    throws SiteWhereException {
+	if (entityIds.isEmpty()) {
+	    return new SearchResults<T>(new ArrayList<>(), 0);
+	}
+	String database = client.getDatabase().getValue();
+	Integer pageSize = getPageSize(criteria);
+	int offset = (pageSize != null) ? (getPageNumber(criteria) - 1) * pageSize : 0;
+	Integer limit = (pageSize != null && skipCount) ? pageSize + 1 : pageSize;
+	Query query = InfluxDbQueryTemplates.search(index, type, entityIds, criteria, database, limit, offset);
 	LOGGER.debug("Query: " + query.getCommand());
-	QueryResult response = client.getInflux().query(query, TimeUnit.MILLISECONDS);
-	List<T> results = InfluxDbDeviceEvent.eventsOfType(response, clazz);
+	List<T> results = (chunkSize > 0) ? queryChunked(client, query, chunkSize, clazz)
+		: eventsOfType(client.getInflux().query(query, TimeUnit.MILLISECONDS), clazz);
 
-	Query countQuery = InfluxDbDeviceEvent.queryEventsOfTypeForIndexCount(index, type, entityIds, criteria,
-		client.getDatabase().getValue());
+	if (skipCount) {
+	    if (pageSize != null && results.size() > pageSize) {
+		return new SearchResults<T>(new ArrayList<>(results.subList(0, pageSize)), offset + results.size());
+	    }
+	    return new SearchResults<T>(results, offset + results.size());
+	}
+	Query countQuery = InfluxDbQueryTemplates.count(index, type, entityIds, criteria, database);
 	LOGGER.debug("Count: " + countQuery.getCommand());
 	QueryResult countResponse = client.getInflux().query(countQuery);
 	long count = parseCount(countResponse);
@@ -159,86 +243,105 @@ public class InfluxDbDeviceEvent {
     }
 
     /**
-     * Get a query for events of a given type associated with one or more entities
-     * for a given index and that meet the search criteria.
+     * Run a query with results streamed from InfluxDB in chunks. Each chunk is
+     * parsed as it arrives so the raw response is never held in full. Failures
+     * reported by the client are rethrown on the calling thread. If the query
+     * times out, the stream is cancelled so the client stops reading it. A stream
+     * that has not delivered a chunk yet is cancelled when its first chunk
+     * arrives.
      * 
-     * @param index
-     * @param type
-     * @param entityIds
-     * @param criteria
-     * @param database
+     * @param client
+     * @param query
+     * @param chunkSize
+     * @param clazz
      * @return
      * @throws SiteWhereException
      */
-    protected static Query queryEventsOfTypeForIndex(DeviceEventIndex index, DeviceEventType type, List<UUID> entityIds,
-	    ISearchCriteria criteria, String database) throws SiteWhereException {
-	return new Query("SELECT * FROM " + InfluxDbDeviceEvent.COLLECTION_EVENTS + " where type='" + type.name()
-		+ "' and " + buildInClause(index, entityIds) + buildDateRangeCriteria(criteria) + " ORDER BY time DESC"
-		+ buildPagingCriteria(criteria), database);
+    protected static <T> List<T> queryChunked(InfluxDbClient client, Query query, int chunkSize, Class<T> clazz)
+	    throws SiteWhereException {
+	List<T> results = new ArrayList<>();
+	AtomicReference<SiteWhereException> failure = new AtomicReference<>();
+	AtomicReference<Cancellable> stream = new AtomicReference<>();
+	AtomicBoolean abandoned = new AtomicBoolean();
+	CountDownLatch done = new CountDownLatch(1);
+	client.getInflux().query(query, chunkSize, (cancellable, chunk) -> {
+	    stream.set(cancellable);
+	    if (abandoned.get()) {
+		cancellable.cancel();
+		return;
+	    }
+	    if (chunk.getError() != null) {
+		if (!CHUNKED_QUERY_DONE.equals(chunk.getError())) {
+		    failure.set(new SiteWhereException("Error performing query: " + chunk.getError()));
+		}
+		done.countDown();
+		return;
+	    }
+	    try {
+		results.addAll(eventsOfType(chunk, clazz));
+	    } catch (SiteWhereException e) {
+		failure.set(e);
+		cancellable.cancel();
+		done.countDown();
+	    }
+	}, () -> done.countDown(), error -> {
+	    failure.set(new SiteWhereException("Error performing query.", error));
+	    done.countDown();
+	});
+	try {
+	    if (!done.await(CHUNKED_QUERY_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+		cancelChunked(stream, abandoned);
+		throw new SiteWhereException("Timed out waiting for InfluxDB query results.");
+	    }
+	} catch (InterruptedException e) {
+	    cancelChunked(stream, abandoned);
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while querying InfluxDB.", e);
+	}
+	if (failure.get() != null) {
+	    throw failure.get();
+	}
+	return results;
     }
 
     /**
-     * Get a query for counting events of a given type associated with one or more
-     * entities for a given index and that meet the search criteria.
+     * Stop reading a chunked query whose results are no longer wanted.
      * 
-     * @param index
-     * @param type
-     * @param entityIds
-     * @param criteria
-     * @param database
-     * @return
-     * @throws SiteWhereException
+     * @param stream
+     * @param abandoned
      */
-    protected static Query queryEventsOfTypeForIndexCount(DeviceEventIndex index, DeviceEventType type,
-	    List<UUID> entityIds, ISearchCriteria criteria, String database) throws SiteWhereException {
-	return new Query(
-		"SELECT count(" + EVENT_ID + ") FROM " + InfluxDbDeviceEvent.COLLECTION_EVENTS + " where type='"
-			+ type.name() + "' and " + buildInClause(index, entityIds) + buildDateRangeCriteria(criteria),
-		database);
+    protected static void cancelChunked(AtomicReference<Cancellable> stream, AtomicBoolean abandoned) {
+	abandoned.set(true);
+	Cancellable cancellable = stream.get();
+	if (cancellable != null) {
+	    cancellable.cancel();
+	}
     }
 
     /**
-     * Build search criteria clause.
+     * Get page size from criteria or null if all results were requested.
      * 
      * @param criteria
      * @return
-     * @throws SiteWhereException
      */
-    protected static String buildPagingCriteria(ISearchCriteria criteria) throws SiteWhereException {
-	if (criteria == null) {
-	    return "";
-	}
-	String clause = " ";
-	if (criteria.getPageSize() != null) {
-	    clause += " LIMIT " + criteria.getPageSize();
-	}
-	if (criteria.getPageNumber() != null) {
-	    clause += " OFFSET " + ((criteria.getPageNumber() - 1) * criteria.getPageSize());
+    protected static Integer getPageSize(ISearchCriteria criteria) {
+	if (criteria == null || criteria.getPageSize() == null || criteria.getPageSize() <= 0) {
+	    return null;
 	}
-	return clause;
+	return criteria.getPageSize();
     }
 
     /**
-     * Build search criteria clause that handles date ranges specified for event
-     * queries.
+     * Get page number from criteria.
      * 
      * @param criteria
      * @return
-     * @throws SiteWhereException
      */
-    protected static String buildDateRangeCriteria(ISearchCriteria criteria) throws SiteWhereException {
-	String dateClause = "";
-	if (criteria instanceof IDateRangeSearchCriteria) {
-	    IDateRangeSearchCriteria dates = (IDateRangeSearchCriteria) criteria;
-	    if (dates.getStartDate() != null) {
-		dateClause += " and time >= '" + ISODateTimeFormat.dateTime().print(dates.getStartDate().getTime())
-			+ "'";
-	    }
-	    if (dates.getEndDate() != null) {
-		dateClause += " and time <= '" + ISODateTimeFormat.dateTime().print(dates.getEndDate().getTime()) + "'";
-	    }
+    protected static int getPageNumber(ISearchCriteria criteria) {
+	if (criteria == null || criteria.getPageNumber() == null) {
+	    return 1;
 	}
-	return dateClause;
+	return Math.max(1, criteria.getPageNumber());
     }
 
     /**
@@ -346,6 +449,29 @@ public class InfluxDbDeviceEvent {
 	return 0;
     }
 
+    /**
+     * Get values of the first row in a query result or null if no rows were
+     * returned.
+     * 
+     * @param response
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static Map<String, Object> first(QueryResult response) throws SiteWhereException {
+	handleError(response);
+
+	for (Result result : response.getResults()) {
+	    if (result.getSeries() != null) {
+		for (Series series : result.getSeries()) {
+		    for (List<Object> values : series.getValues()) {
+			return getValueMap(series, values);
+		    }
+		}
+	    }
+	}
+	return null;
+    }
+
     /**
      * Finds String value and throws exception if null.
      * 
@@ -467,6 +593,39 @@ public class InfluxDbDeviceEvent {
      * @throws SiteWhereException
      */
     protected static void saveToBuilder(DeviceEvent event, Point.Builder builder) throws SiteWhereException {
+	builder.time(event.getEventDate().getTime(), getTimePrecision(event));
+	builder.addField(EVENT_ID, event.getId().toString());
+	if (event.getAlternateId() != null) {
+	    builder.addField(ALTERNATE_ID, event.getAlternateId());
+	}
+	builder.tag(EVENT_TYPE, event.getEventType().name());
+	builder.tag(EVENT_DEVICE, event.getDeviceId().toString());
+	builder.tag(EVENT_ASSIGNMENT, event.getDeviceAssignmentId().toString());
+	if (event.getCustomerId() != null) {
+	    builder.tag(EVENT_CUSTOMER, event.getCustomerId().toString());
+	}
+	if (event.getAreaId() != null) {
+	    builder.tag(EVENT_AREA, event.getAreaId().toString());
+	}
+	if (event.getAssetId() != null) {
+	    builder.tag(EVENT_ASSET, event.getAssetId().toString());
+	}
+	builder.addField(RECEIVED_DATE, ISODateTimeFormat.dateTime().print(event.getReceivedDate().getTime()));
+
+	// Add field for each metadata value.
+	for (String key : event.getMetadata().keySet()) {
+	    builder.addField(EVENT_METADATA_PREFIX + key, event.getMetadata().get(key));
+	}
+    }
+
+    /**
+     * Get precision of the event date from the meta data, recording the default
+     * precision if none or an unknown one is specified.
+     * 
+     * @param event
+     * @return
+     */
+    protected static TimeUnit getTimePrecision(DeviceEvent event) {
 	String timePrecision = event.getMetadata().get(EVENT_TIME_PRECISION_META_DATA_KEY);
 	TimeUnit precision = TimeUnit.MILLISECONDS;
 
@@ -496,29 +655,7 @@ public class InfluxDbDeviceEvent {
 	    event.getMetadata().put(EVENT_TIME_PRECISION_META_DATA_KEY, "ms");
 	}
 
-	builder.time(event.getEventDate().getTime(), precision);
-	builder.addField(EVENT_ID, event.getId().toString());
-	if (event.getAlternateId() != null) {
-	    builder.addField(ALTERNATE_ID, event.getAlternateId());
-	}
-	builder.tag(EVENT_TYPE, event.getEventType().name());
-	builder.tag(EVENT_DEVICE, event.getDeviceId().toString());
-	builder.tag(EVENT_ASSIGNMENT, event.getDeviceAssignmentId().toString());
-	if (event.getCustomerId() != null) {
-	    builder.tag(EVENT_CUSTOMER, event.getCustomerId().toString());
-	}
-	if (event.getAreaId() != null) {
-	    builder.tag(EVENT_AREA, event.getAreaId().toString());
-	}
-	if (event.getAssetId() != null) {
-	    builder.tag(EVENT_ASSET, event.getAssetId().toString());
-	}
-	builder.addField(RECEIVED_DATE, ISODateTimeFormat.dateTime().print(event.getReceivedDate().getTime()));
-
-	// Add field for each metadata value.
-	for (String key : event.getMetadata().keySet()) {
-	    builder.addField(EVENT_METADATA_PREFIX + key, event.getMetadata().get(key));
-	}
+	return precision;
     }
 
     /**
@@ -546,23 +683,6 @@ public class InfluxDbDeviceEvent {
 	throw new SiteWhereException("Unknown index: " + index.name());
     }
 
-    /**
-     * Get "in" clause for matching on a list of entity ids for an index.
-     * 
-     * @param index
-     * @param entityIds
-     * @return
-     * @throws SiteWhereException
-     */
-    protected static String buildInClause(DeviceEventIndex index, List<UUID> entityIds) throws SiteWhereException {
-	String field = getFieldForIndex(index);
-	List<String> clauses = new ArrayList<>();
-	for (UUID entityId : entityIds) {
-	    clauses.add(field + "='" + entityId.toString() + "'");
-	}
-	return "(" + String.join(" or ", clauses) + ")";
-    }
-
     /**
      * Add a tag to an existing object
      * 
@@ -584,7 +704,7 @@ public class InfluxDbDeviceEvent {
     protected static Date parseDateField(Map<String, Object> values, String tag) {
 	Object value = (Object) values.get(tag);
 	if (value instanceof String) {
-	    return ISODateTimeFormat.dateTime().parseDateTime((String) value).toDate();
+	    return ISODateTimeFormat.dateTimeParser().parseDateTime((String) value).toDate();
 	} else if (value instanceof Double) {
 	    return new Date(((Double) value).longValue());
 	}
@@ -15,6 +15,7 @@ import java.util.UUID;
 import org.influxdb.dto.Point;
 
 import com.google.inject.Inject;
+import com.sitewhere.event.configuration.EventManagementTenantConfiguration;
 import com.sitewhere.event.persistence.DeviceEventManagementPersistence;
 import com.sitewhere.event.spi.microservice.IEventManagementMicroservice;
 import com.sitewhere.influxdb.InfluxDbClient;
@@ -65,6 +66,12 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     /** Client */
     private InfluxDbClient client;
 
+    /** Configuration */
+    private EventManagementTenantConfiguration configuration;
+
+    /** Writes points in batches */
+    private InfluxDbBatchWriter batchWriter;
+
     /**
      * Prefix to compare against when adding user defined tags from assignment meta
      * data
@@ -75,9 +82,10 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     private final String ASSIGNMENT_META_DATA_RETENTION_POLICY = "INFLUX_RETENTION_POLICY";
 
     @Inject
-    public InfluxDbDeviceEventManagement(InfluxDbClient client) {
+    public InfluxDbDeviceEventManagement(InfluxDbClient client, EventManagementTenantConfiguration configuration) {
 	super(LifecycleComponentType.DataStore);
 	this.client = client;
+	this.configuration = configuration;
     }
 
     /*
@@ -97,6 +105,11 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     @Override
     public void initialize(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	getClient().initialize(monitor);
+
+	this.batchWriter = new InfluxDbBatchWriter(getClient(), getConfiguration().getDatastoreWriteBatchSize(),
+		getConfiguration().getDatastoreWriteBatchIntervalMs(),
+		getConfiguration().getDatastoreMaxPendingWrites());
+	initializeNestedComponent(getBatchWriter(), monitor, true);
     }
 
     /*
@@ -109,6 +122,18 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	getClient().start(monitor);
+	startNestedComponent(getBatchWriter(), monitor, true);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.microservice.lifecycle.LifecycleComponent#stop(com.sitewhere.
+     * spi.microservice.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	// Flush buffered points before shutting down.
+	stopNestedComponent(getBatchWriter(), monitor);
     }
 
     /*
@@ -176,7 +201,8 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
      */
     @Override
     public IDeviceEvent getDeviceEventByAlternateId(String alternateId) throws SiteWhereException {
-	return InfluxDbDeviceEvent.getEventByAlternateId(alternateId, getClient());
+	return InfluxDbDeviceEvent.getEventByAlternateId(alternateId, getConfiguration().getAlternateIdTtlMs(),
+		getConfiguration().isAlternateIdFallbackEnabled(), getClient());
     }
 
     /**
@@ -187,7 +213,8 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
      * @return
      */
     private String getAssignmentSpecificRetentionPolicy(IDeviceEventContext context) {
-	String policy = context.getDeviceAssignmentMetadata().get(ASSIGNMENT_META_DATA_RETENTION_POLICY);
+	Map<String, String> metadata = context.getDeviceAssignmentMetadata();
+	String policy = metadata != null ? metadata.get(ASSIGNMENT_META_DATA_RETENTION_POLICY) : null;
 
 	if (policy == null) {
 	    return getClient().getConfiguration().getRetention();
@@ -195,6 +222,35 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
 	return policy;
     }
 
+    /**
+     * Write all points for a request with the same context in a single batch.
+     * 
+     * @param context
+     * @param points
+     * @throws SiteWhereException
+     */
+    protected void writePoints(IDeviceEventContext context, List<Point> points) throws SiteWhereException {
+	getBatchWriter().write(getClient().getDatabase().getValue(), getAssignmentSpecificRetentionPolicy(context),
+		points);
+    }
+
+    /**
+     * Search events of a given type by index using the configured query options.
+     * 
+     * @param index
+     * @param entityIds
+     * @param type
+     * @param criteria
+     * @param clazz
+     * @return
+     * @throws SiteWhereException
+     */
+    protected <T> ISearchResults<T> search(DeviceEventIndex index, List<UUID> entityIds, DeviceEventType type,
+	    IDateRangeSearchCriteria criteria, Class<T> clazz) throws SiteWhereException {
+	return InfluxDbDeviceEvent.searchByIndex(index, entityIds, type, criteria, getClient(), clazz,
+		getConfiguration().getDatastoreQueryChunkSize(), getConfiguration().isDatastoreSkipSearchCounts());
+    }
+
     /*
      * @see com.sitewhere.microservice.api.event.IDeviceEventManagement#
      * addDeviceMeasurements(com.sitewhere.spi.device.event.IDeviceEventContext,
@@ -204,15 +260,17 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     public List<IDeviceMeasurement> addDeviceMeasurements(IDeviceEventContext context,
 	    IDeviceMeasurementCreateRequest... requests) throws SiteWhereException {
 	List<IDeviceMeasurement> result = new ArrayList<>();
+	List<Point> points = new ArrayList<>();
 	for (IDeviceMeasurementCreateRequest request : requests) {
 	    DeviceMeasurement mxs = DeviceEventManagementPersistence.deviceMeasurementCreateLogic(context, request);
 	    Point.Builder builder = InfluxDbDeviceEvent.createBuilder();
 	    InfluxDbDeviceMeasurement.saveToBuilder(mxs, builder);
 	    addUserDefinedTags(context, builder);
-	    getClient().getInflux().write(getClient().getDatabase().getValue(),
-		    getAssignmentSpecificRetentionPolicy(context), builder.build());
+	    points.add(builder.build());
+	    InfluxDbDeviceEvent.addAlternateIdPoint(mxs, points);
 	    result.add(mxs);
 	}
+	writePoints(context, points);
 	return result;
     }
 
@@ -225,8 +283,7 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     @Override
     public ISearchResults<IDeviceMeasurement> listDeviceMeasurementsForIndex(DeviceEventIndex index,
 	    List<UUID> entityIds, IDateRangeSearchCriteria criteria) throws SiteWhereException {
-	return InfluxDbDeviceEvent.searchByIndex(index, entityIds, DeviceEventType.Measurement, criteria, getClient(),
-		IDeviceMeasurement.class);
+	return search(index, entityIds, DeviceEventType.Measurement, criteria, IDeviceMeasurement.class);
     }
 
     /*
@@ -238,15 +295,17 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     public List<IDeviceLocation> addDeviceLocations(IDeviceEventContext context,
 	    IDeviceLocationCreateRequest... requests) throws SiteWhereException {
 	List<IDeviceLocation> result = new ArrayList<>();
+	List<Point> points = new ArrayList<>();
 	for (IDeviceLocationCreateRequest request : requests) {
 	    DeviceLocation location = DeviceEventManagementPersistence.deviceLocationCreateLogic(context, request);
 	    Point.Builder builder = InfluxDbDeviceEvent.createBuilder();
 	    InfluxDbDeviceLocation.saveToBuilder(location, builder);
 	    addUserDefinedTags(context, builder);
-	    getClient().getInflux().write(getClient().getDatabase().getValue(),
-		    getAssignmentSpecificRetentionPolicy(context), builder.build());
+	    points.add(builder.build());
+	    InfluxDbDeviceEvent.addAlternateIdPoint(location, points);
 	    result.add(location);
 	}
+	writePoints(context, points);
 	return result;
     }
 
@@ -258,8 +317,7 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     @Override
     public ISearchResults<IDeviceLocation> listDeviceLocationsForIndex(DeviceEventIndex index, List<UUID> entityIds,
 	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
-	return InfluxDbDeviceEvent.searchByIndex(index, entityIds, DeviceEventType.Location, criteria, getClient(),
-		IDeviceLocation.class);
+	return search(index, entityIds, DeviceEventType.Location, criteria, IDeviceLocation.class);
     }
 
     /*
@@ -272,15 +330,17 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     public List<IDeviceAlert> addDeviceAlerts(IDeviceEventContext context, IDeviceAlertCreateRequest... requests)
 	    throws SiteWhereException {
 	List<IDeviceAlert> result = new ArrayList<>();
+	List<Point> points = new ArrayList<>();
 	for (IDeviceAlertCreateRequest request : requests) {
 	    DeviceAlert alert = DeviceEventManagementPersistence.deviceAlertCreateLogic(context, request);
 	    Point.Builder builder = InfluxDbDeviceEvent.createBuilder();
 	    InfluxDbDeviceAlert.saveToBuilder(alert, builder);
 	    addUserDefinedTags(context, builder);
-	    getClient().getInflux().write(getClient().getDatabase().getValue(),
-		    getAssignmentSpecificRetentionPolicy(context), builder.build());
+	    points.add(builder.build());
+	    InfluxDbDeviceEvent.addAlternateIdPoint(alert, points);
 	    result.add(alert);
 	}
+	writePoints(context, points);
 	return result;
     }
 
@@ -292,8 +352,7 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     @Override
     public ISearchResults<IDeviceAlert> listDeviceAlertsForIndex(DeviceEventIndex index, List<UUID> entityIds,
 	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
-	return InfluxDbDeviceEvent.searchByIndex(index, entityIds, DeviceEventType.Alert, criteria, getClient(),
-		IDeviceAlert.class);
+	return search(index, entityIds, DeviceEventType.Alert, criteria, IDeviceAlert.class);
     }
 
     /*
@@ -307,6 +366,7 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     public List<IDeviceCommandInvocation> addDeviceCommandInvocations(IDeviceEventContext context,
 	    IDeviceCommandInvocationCreateRequest... requests) throws SiteWhereException {
 	List<IDeviceCommandInvocation> result = new ArrayList<>();
+	List<Point> points = new ArrayList<>();
 	for (IDeviceCommandInvocationCreateRequest request : requests) {
 	    IDeviceCommand command = getDeviceManagement().getDeviceCommandByToken(context.getDeviceTypeId(),
 		    request.getCommandToken());
@@ -315,10 +375,11 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
 	    Point.Builder builder = InfluxDbDeviceEvent.createBuilder();
 	    InfluxDbDeviceCommandInvocation.saveToBuilder(ci, builder);
 	    addUserDefinedTags(context, builder);
-	    getClient().getInflux().write(getClient().getDatabase().getValue(),
-		    getAssignmentSpecificRetentionPolicy(context), builder.build());
+	    points.add(builder.build());
+	    InfluxDbDeviceEvent.addAlternateIdPoint(ci, points);
 	    result.add(ci);
 	}
+	writePoints(context, points);
 	return result;
     }
 
@@ -331,8 +392,7 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     @Override
     public ISearchResults<IDeviceCommandInvocation> listDeviceCommandInvocationsForIndex(DeviceEventIndex index,
 	    List<UUID> entityIds, IDateRangeSearchCriteria criteria) throws SiteWhereException {
-	return InfluxDbDeviceEvent.searchByIndex(index, entityIds, DeviceEventType.CommandInvocation, criteria,
-		getClient(), IDeviceCommandInvocation.class);
+	return search(index, entityIds, DeviceEventType.CommandInvocation, criteria, IDeviceCommandInvocation.class);
     }
 
     /*
@@ -355,16 +415,18 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     public List<IDeviceCommandResponse> addDeviceCommandResponses(IDeviceEventContext context,
 	    IDeviceCommandResponseCreateRequest... requests) throws SiteWhereException {
 	List<IDeviceCommandResponse> result = new ArrayList<>();
+	List<Point> points = new ArrayList<>();
 	for (IDeviceCommandResponseCreateRequest request : requests) {
 	    DeviceCommandResponse cr = DeviceEventManagementPersistence.deviceCommandResponseCreateLogic(context,
 		    request);
 	    Point.Builder builder = InfluxDbDeviceEvent.createBuilder();
 	    InfluxDbDeviceCommandResponse.saveToBuilder(cr, builder);
 	    addUserDefinedTags(context, builder);
-	    getClient().getInflux().write(getClient().getDatabase().getValue(),
-		    getAssignmentSpecificRetentionPolicy(context), builder.build());
+	    points.add(builder.build());
+	    InfluxDbDeviceEvent.addAlternateIdPoint(cr, points);
 	    result.add(cr);
 	}
+	writePoints(context, points);
 	return result;
     }
 
@@ -377,8 +439,7 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     @Override
     public ISearchResults<IDeviceCommandResponse> listDeviceCommandResponsesForIndex(DeviceEventIndex index,
 	    List<UUID> entityIds, IDateRangeSearchCriteria criteria) throws SiteWhereException {
-	return InfluxDbDeviceEvent.searchByIndex(index, entityIds, DeviceEventType.CommandResponse, criteria,
-		getClient(), IDeviceCommandResponse.class);
+	return search(index, entityIds, DeviceEventType.CommandResponse, criteria, IDeviceCommandResponse.class);
     }
 
     /*
@@ -390,15 +451,17 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     public List<IDeviceStateChange> addDeviceStateChanges(IDeviceEventContext context,
 	    IDeviceStateChangeCreateRequest... requests) throws SiteWhereException {
 	List<IDeviceStateChange> result = new ArrayList<>();
+	List<Point> points = new ArrayList<>();
 	for (IDeviceStateChangeCreateRequest request : requests) {
 	    DeviceStateChange sc = DeviceEventManagementPersistence.deviceStateChangeCreateLogic(context, request);
 	    Point.Builder builder = InfluxDbDeviceEvent.createBuilder();
 	    InfluxDbDeviceStateChange.saveToBuilder(sc, builder);
 	    addUserDefinedTags(context, builder);
-	    getClient().getInflux().write(getClient().getDatabase().getValue(),
-		    getAssignmentSpecificRetentionPolicy(context), builder.build());
+	    points.add(builder.build());
+	    InfluxDbDeviceEvent.addAlternateIdPoint(sc, points);
 	    result.add(sc);
 	}
+	writePoints(context, points);
 	return result;
     }
 
@@ -411,8 +474,7 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     @Override
     public ISearchResults<IDeviceStateChange> listDeviceStateChangesForIndex(DeviceEventIndex index,
 	    List<UUID> entityIds, IDateRangeSearchCriteria criteria) throws SiteWhereException {
-	return InfluxDbDeviceEvent.searchByIndex(index, entityIds, DeviceEventType.StateChange, criteria, getClient(),
-		IDeviceStateChange.class);
+	return search(index, entityIds, DeviceEventType.StateChange, criteria, IDeviceStateChange.class);
     }
 
     /**
@@ -441,4 +503,12 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
     public void setClient(InfluxDbClient client) {
 	this.client = client;
     }
+
+    protected EventManagementTenantConfiguration getConfiguration() {
+	return configuration;
+    }
+
+    protected InfluxDbBatchWriter getBatchWriter() {
+	return batchWriter;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.persistence.influxdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.influxdb.dto.BoundParameterQuery;
+import org.influxdb.dto.Query;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventIndex;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+import com.sitewhere.spi.search.ISearchCriteria;
+
+/**
+ * Builds parameterized InfluxDB queries for searching events by index. The
+ * query text depends only on the index, event type, number of entities and
+ * which date bounds are present, so it is built once per shape and cached.
+ * Values are passed as bound parameters rather than concatenated into the
+ * query.
+ */
+public class InfluxDbQueryTemplates {
+
+    /** Maximum number of cached templates */
+    private static final int MAX_TEMPLATES = 1024;
+
+    /** Parameter name for event type */
+    private static final String PARAM_TYPE = "type";
+
+    /** Parameter name prefix for entity ids */
+    private static final String PARAM_ENTITY = "e";
+
+    /** Parameter name for start date */
+    private static final String PARAM_START = "start";
+
+    /** Parameter name for end date */
+    private static final String PARAM_END = "end";
+
+    /** Parameter name for alternate id */
+    private static final String PARAM_ALTERNATE_ID = "alternateId";
+
+    /** Parameter name for event id */
+    private static final String PARAM_EVENT_ID = "eventId";
+
+    /** Cached templates by query shape */
+    private static final Map<String, String> TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * Get a query for a page of events of a given type associated with one or
+     * more entities for a given index.
+     * 
+     * @param index
+     * @param type
+     * @param entityIds
+     * @param criteria
+     * @param database
+     * @param limit
+     * @param offset
+     * @return
+     * @throws SiteWhereException
+     */
+    public static Query search(DeviceEventIndex index, DeviceEventType type, List<UUID> entityIds,
+	    ISearchCriteria criteria, String database, Integer limit, int offset) throws SiteWhereException {
+	String command = getTemplate(false, index, type, entityIds.size(), criteria);
+	if (limit != null) {
+	    command += " LIMIT " + limit;
+	}
+	if (offset > 0) {
+	    command += " OFFSET " + offset;
+	}
+	return bind(command, type, entityIds, criteria, database);
+    }
+
+    /**
+     * Get a query that counts events of a given type associated with one or more
+     * entities for a given index.
+     * 
+     * @param index
+     * @param type
+     * @param entityIds
+     * @param criteria
+     * @param database
+     * @return
+     * @throws SiteWhereException
+     */
+    public static Query count(DeviceEventIndex index, DeviceEventType type, List<UUID> entityIds,
+	    ISearchCriteria criteria, String database) throws SiteWhereException {
+	return bind(getTemplate(true, index, type, entityIds.size(), criteria), type, entityIds, criteria, database);
+    }
+
+    /**
+     * Get a query for the most recent alternate id index entry for an alternate
+     * id. Index entries are stored at the time events were received.
+     * 
+     * @param alternateId
+     * @param since
+     * @param database
+     * @return
+     */
+    public static Query alternateIdIndex(String alternateId, Long since, String database) {
+	String command = "SELECT " + InfluxDbDeviceEvent.EVENT_ID + ", " + InfluxDbDeviceEvent.EVENT_TIME + " FROM "
+		+ InfluxDbDeviceEvent.COLLECTION_ALTERNATE_IDS + " where " + InfluxDbDeviceEvent.ALTERNATE_ID + "=$"
+		+ PARAM_ALTERNATE_ID;
+	return bindAlternateId(command, alternateId, since, database);
+    }
+
+    /**
+     * Get a query for the event with the given alternate id in the events
+     * collection. Points are stored with the event date as their time, so the
+     * bound applies to the event date.
+     * 
+     * @param alternateId
+     * @param since
+     * @param database
+     * @return
+     */
+    public static Query alternateId(String alternateId, Long since, String database) {
+	String command = "SELECT * FROM " + InfluxDbDeviceEvent.COLLECTION_EVENTS + " where "
+		+ InfluxDbDeviceEvent.ALTERNATE_ID + "=$" + PARAM_ALTERNATE_ID;
+	return bindAlternateId(command, alternateId, since, database);
+    }
+
+    /**
+     * Get a query for the event with the given id stored at the given time.
+     * 
+     * @param eventId
+     * @param time
+     * @param database
+     * @return
+     */
+    public static Query eventAt(String eventId, long time, String database) {
+	String command = "SELECT * FROM " + InfluxDbDeviceEvent.COLLECTION_EVENTS + " where time = $" + PARAM_START
+		+ " and " + InfluxDbDeviceEvent.EVENT_ID + "=$" + PARAM_EVENT_ID;
+	return BoundParameterQuery.QueryBuilder.newQuery(command).forDatabase(database).bind(PARAM_START, time)
+		.bind(PARAM_EVENT_ID, eventId).create();
+    }
+
+    /**
+     * Complete and bind a query for the most recent point with an alternate id.
+     * 
+     * @param command
+     * @param alternateId
+     * @param since
+     * @param database
+     * @return
+     */
+    protected static Query bindAlternateId(String command, String alternateId, Long since, String database) {
+	if (since != null) {
+	    command += " and time >= $" + PARAM_START;
+	}
+	command += " ORDER BY time DESC LIMIT 1";
+	BoundParameterQuery.QueryBuilder builder = BoundParameterQuery.QueryBuilder.newQuery(command)
+		.forDatabase(database).bind(PARAM_ALTERNATE_ID, alternateId);
+	if (since != null) {
+	    builder.bind(PARAM_START, since);
+	}
+	return builder.create();
+    }
+
+    /**
+     * Get the cached template for a query shape, building it if necessary.
+     * 
+     * @param count
+     * @param index
+     * @param type
+     * @param entityCount
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static String getTemplate(boolean count, DeviceEventIndex index, DeviceEventType type, int entityCount,
+	    ISearchCriteria criteria) throws SiteWhereException {
+	if (entityCount == 0) {
+	    throw new SiteWhereException("No entity ids specified for event query.");
+	}
+	IDateRangeSearchCriteria dates = getDateRange(criteria);
+	boolean hasStart = (dates != null) && (dates.getStartDate() != null);
+	boolean hasEnd = (dates != null) && (dates.getEndDate() != null);
+	String key = (count ? "count" : "select") + ":" + index.name() + ":" + type.name() + ":" + entityCount + ":"
+		+ hasStart + ":" + hasEnd;
+	String template = TEMPLATES.get(key);
+	if (template == null) {
+	    template = buildTemplate(count, index, entityCount, hasStart, hasEnd);
+	    if (TEMPLATES.size() >= MAX_TEMPLATES) {
+		TEMPLATES.clear();
+	    }
+	    TEMPLATES.put(key, template);
+	}
+	return template;
+    }
+
+    /**
+     * Build query text for a query shape.
+     * 
+     * @param count
+     * @param index
+     * @param entityCount
+     * @param hasStart
+     * @param hasEnd
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static String buildTemplate(boolean count, DeviceEventIndex index, int entityCount, boolean hasStart,
+	    boolean hasEnd) throws SiteWhereException {
+	String field = InfluxDbDeviceEvent.getFieldForIndex(index);
+	List<String> clauses = new ArrayList<>();
+	for (int i = 0; i < entityCount; i++) {
+	    clauses.add(field + "=$" + PARAM_ENTITY + i);
+	}
+	StringBuilder query = new StringBuilder();
+	query.append(count ? "SELECT count(" + InfluxDbDeviceEvent.EVENT_ID + ")" : "SELECT *");
+	query.append(" FROM ").append(InfluxDbDeviceEvent.COLLECTION_EVENTS);
+	query.append(" where ").append(InfluxDbDeviceEvent.EVENT_TYPE).append("=$").append(PARAM_TYPE);
+	query.append(" and (").append(String.join(" or ", clauses)).append(")");
+	if (hasStart) {
+	    query.append(" and time >= $").append(PARAM_START);
+	}
+	if (hasEnd) {
+	    query.append(" and time <= $").append(PARAM_END);
+	}
+	if (!count) {
+	    query.append(" ORDER BY time DESC");
+	}
+	return query.toString();
+    }
+
+    /**
+     * Bind values for a query.
+     * 
+     * @param command
+     * @param type
+     * @param entityIds
+     * @param criteria
+     * @param database
+     * @return
+     */
+    protected static Query bind(String command, DeviceEventType type, List<UUID> entityIds, ISearchCriteria criteria,
+	    String database) {
+	BoundParameterQuery.QueryBuilder builder = BoundParameterQuery.QueryBuilder.newQuery(command)
+		.forDatabase(database).bind(PARAM_TYPE, type.name());
+	for (int i = 0; i < entityIds.size(); i++) {
+	    builder.bind(PARAM_ENTITY + i, entityIds.get(i).toString());
+	}
+	IDateRangeSearchCriteria dates = getDateRange(criteria);
+	if ((dates != null) && (dates.getStartDate() != null)) {
+	    builder.bind(PARAM_START, TimeUnit.MILLISECONDS.toNanos(dates.getStartDate().getTime()));
+	}
+	if ((dates != null) && (dates.getEndDate() != null)) {
+	    builder.bind(PARAM_END, TimeUnit.MILLISECONDS.toNanos(dates.getEndDate().getTime()));
+	}
+	return builder.create();
+    }
+
+    /**
+     * Get date range from criteria if available.
+     * 
+     * @param criteria
+     * @return
+     */
+    protected static IDateRangeSearchCriteria getDateRange(ISearchCriteria criteria) {
+	return (criteria instanceof IDateRangeSearchCriteria) ? (IDateRangeSearchCriteria) criteria : null;
+    }
+}
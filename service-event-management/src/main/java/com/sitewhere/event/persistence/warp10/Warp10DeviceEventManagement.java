@@ -18,12 +18,6 @@ import com.sitewhere.event.spi.microservice.IEventManagementMicroservice;
 import com.sitewhere.microservice.api.device.IDeviceManagement;
 import com.sitewhere.microservice.api.event.IDeviceEventManagement;
 import com.sitewhere.microservice.lifecycle.TenantEngineLifecycleComponent;
-import com.sitewhere.rest.model.device.event.DeviceAlert;
-import com.sitewhere.rest.model.device.event.DeviceCommandInvocation;
-import com.sitewhere.rest.model.device.event.DeviceCommandResponse;
-import com.sitewhere.rest.model.device.event.DeviceLocation;
-import com.sitewhere.rest.model.device.event.DeviceMeasurement;
-import com.sitewhere.rest.model.device.event.DeviceStateChange;
 import com.sitewhere.rest.model.search.DeviceMeasurementsSearchResults;
 import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.spi.SiteWhereException;
@@ -52,7 +46,6 @@ import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.warp10.Warp10Client;
 import com.sitewhere.warp10.Warp10Persistence;
-import com.sitewhere.warp10.rest.GTSInput;
 import com.sitewhere.warp10.rest.GTSOutput;
 import com.sitewhere.warp10.rest.QueryParams;
 
@@ -64,10 +57,14 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
     /** Warp 10 client */
     private Warp10Client client;
 
+    /** Writes event GTS to Warp 10 */
+    private Warp10EventWriter writer;
+
     @Inject
     public Warp10DeviceEventManagement(Warp10Client client) {
 	super(LifecycleComponentType.DataStore);
 	this.client = client;
+	this.writer = new Warp10EventWriter(client);
     }
 
     /*
@@ -121,17 +118,11 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
     @Override
     public List<IDeviceMeasurement> addDeviceMeasurements(IDeviceEventContext context,
 	    IDeviceMeasurementCreateRequest... requests) throws SiteWhereException {
-	List<IDeviceMeasurement> result = new ArrayList<>();
+	List<IDeviceMeasurement> measurements = new ArrayList<>();
 	for (IDeviceMeasurementCreateRequest request : requests) {
-	    DeviceMeasurement measurements = DeviceEventManagementPersistence.deviceMeasurementCreateLogic(context,
-		    request);
-	    GTSInput gtsMeasurement = Warp10DeviceMeasurement.toGTS(measurements, false);
-	    int ingress = getClient().insertGTS(gtsMeasurement);
-	    if (ingress == 200) {
-		result.add(measurements);
-	    }
+	    measurements.add(DeviceEventManagementPersistence.deviceMeasurementCreateLogic(context, request));
 	}
-	return result;
+	return getWriter().write(measurements, mx -> Warp10DeviceMeasurement.toGTS(mx, false));
     }
 
     /*
@@ -149,14 +140,11 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
 		entityIds.stream().map(Object::toString).collect(Collectors.joining("|")));
 	Warp10Persistence.addDateSearchCriteria(queryParams, criteria);
 
-	List<IDeviceMeasurement> results = new ArrayList<>();
-	List<GTSOutput> fetch = getClient().findGTS(queryParams);
-	for (GTSOutput gtsOutput : fetch) {
-	    DeviceMeasurement deviceMeasurement = Warp10DeviceMeasurement.fromGTS(gtsOutput, false);
-	    results.add(deviceMeasurement);
-	}
-
-	return new DeviceMeasurementsSearchResults(results);
+	SearchResults<IDeviceMeasurement> page = Warp10DeviceEventManagementPersistence
+		.page(getClient().findGTS(queryParams), criteria, gts -> Warp10DeviceMeasurement.fromGTS(gts, false));
+	DeviceMeasurementsSearchResults results = new DeviceMeasurementsSearchResults(page.getResults());
+	results.setNumResults(page.getNumResults());
+	return results;
     }
 
     /*
@@ -167,16 +155,11 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
     @Override
     public List<IDeviceLocation> addDeviceLocations(IDeviceEventContext context,
 	    IDeviceLocationCreateRequest... requests) throws SiteWhereException {
-	List<IDeviceLocation> result = new ArrayList<>();
+	List<IDeviceLocation> locations = new ArrayList<>();
 	for (IDeviceLocationCreateRequest request : requests) {
-	    DeviceLocation location = DeviceEventManagementPersistence.deviceLocationCreateLogic(context, request);
-	    GTSInput gtsLocations = Warp10DeviceLocation.toGTS(location, false);
-	    int ingress = getClient().insertGTS(gtsLocations);
-	    if (ingress == 200) {
-		result.add(location);
-	    }
+	    locations.add(DeviceEventManagementPersistence.deviceLocationCreateLogic(context, request));
 	}
-	return result;
+	return getWriter().write(locations, location -> Warp10DeviceLocation.toGTS(location, false));
     }
 
     /*
@@ -193,13 +176,8 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
 		entityIds.stream().map(Object::toString).collect(Collectors.joining("|")));
 	Warp10Persistence.addDateSearchCriteria(queryParams, criteria);
 
-	List<IDeviceLocation> results = new ArrayList<>();
-	List<GTSOutput> fetch = getClient().findGTS(queryParams);
-	for (GTSOutput gtsOutput : fetch) {
-	    DeviceLocation deviceLocation = Warp10DeviceLocation.fromGTS(gtsOutput, false);
-	    results.add(deviceLocation);
-	}
-	return new SearchResults<IDeviceLocation>(results);
+	return Warp10DeviceEventManagementPersistence.page(getClient().findGTS(queryParams), criteria,
+		gts -> Warp10DeviceLocation.fromGTS(gts, false));
     }
 
     /*
@@ -211,16 +189,11 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
     @Override
     public List<IDeviceAlert> addDeviceAlerts(IDeviceEventContext context, IDeviceAlertCreateRequest... requests)
 	    throws SiteWhereException {
-	List<IDeviceAlert> result = new ArrayList<>();
+	List<IDeviceAlert> alerts = new ArrayList<>();
 	for (IDeviceAlertCreateRequest request : requests) {
-	    DeviceAlert alert = DeviceEventManagementPersistence.deviceAlertCreateLogic(context, request);
-	    GTSInput gtsAlert = Warp10DeviceAlert.toGTS(alert, false);
-	    int ingress = getClient().insertGTS(gtsAlert);
-	    if (ingress == 200) {
-		result.add(alert);
-	    }
+	    alerts.add(DeviceEventManagementPersistence.deviceAlertCreateLogic(context, request));
 	}
-	return result;
+	return getWriter().write(alerts, alert -> Warp10DeviceAlert.toGTS(alert, false));
     }
 
     /*
@@ -237,13 +210,8 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
 		entityIds.stream().map(Object::toString).collect(Collectors.joining("|")));
 	Warp10Persistence.addDateSearchCriteria(queryParams, criteria);
 
-	List<IDeviceAlert> results = new ArrayList<>();
-	List<GTSOutput> fetch = getClient().findGTS(queryParams);
-	for (GTSOutput gtsOutput : fetch) {
-	    DeviceAlert deviceAlert = Warp10DeviceAlert.fromGTS(gtsOutput, false);
-	    results.add(deviceAlert);
-	}
-	return new SearchResults<IDeviceAlert>(results);
+	return Warp10DeviceEventManagementPersistence.page(getClient().findGTS(queryParams), criteria,
+		gts -> Warp10DeviceAlert.fromGTS(gts, false));
     }
 
     /*
@@ -256,20 +224,14 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
     @Override
     public List<IDeviceCommandInvocation> addDeviceCommandInvocations(IDeviceEventContext context,
 	    IDeviceCommandInvocationCreateRequest... requests) throws SiteWhereException {
-	List<IDeviceCommandInvocation> result = new ArrayList<>();
+	List<IDeviceCommandInvocation> invocations = new ArrayList<>();
 	for (IDeviceCommandInvocationCreateRequest request : requests) {
 	    IDeviceCommand command = getDeviceManagement().getDeviceCommandByToken(context.getDeviceTypeId(),
 		    request.getCommandToken());
-	    DeviceCommandInvocation ci = DeviceEventManagementPersistence.deviceCommandInvocationCreateLogic(context,
-		    command, request);
-
-	    GTSInput gtsCi = Warp10DeviceCommandInvocation.toGTS(ci);
-	    int ingress = getClient().insertGTS(gtsCi);
-	    if (ingress == 200) {
-		result.add(ci);
-	    }
+	    invocations.add(
+		    DeviceEventManagementPersistence.deviceCommandInvocationCreateLogic(context, command, request));
 	}
-	return result;
+	return getWriter().write(invocations, Warp10DeviceCommandInvocation::toGTS);
     }
 
     /*
@@ -288,13 +250,8 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
 		entityIds.stream().map(Object::toString).collect(Collectors.joining("|")));
 	Warp10Persistence.addDateSearchCriteria(queryParams, criteria);
 
-	List<IDeviceCommandInvocation> results = new ArrayList<>();
-	List<GTSOutput> fetch = getClient().findGTS(queryParams);
-	for (GTSOutput gtsOutput : fetch) {
-	    DeviceCommandInvocation deviceCommandInvocation = Warp10DeviceCommandInvocation.fromGTS(gtsOutput);
-	    results.add(deviceCommandInvocation);
-	}
-	return new SearchResults<IDeviceCommandInvocation>(results);
+	return Warp10DeviceEventManagementPersistence.page(getClient().findGTS(queryParams), criteria,
+		Warp10DeviceCommandInvocation::fromGTS);
     }
 
     /*
@@ -305,18 +262,11 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
     @Override
     public List<IDeviceCommandResponse> addDeviceCommandResponses(IDeviceEventContext context,
 	    IDeviceCommandResponseCreateRequest... requests) throws SiteWhereException {
-	List<IDeviceCommandResponse> result = new ArrayList<>();
+	List<IDeviceCommandResponse> responses = new ArrayList<>();
 	for (IDeviceCommandResponseCreateRequest request : requests) {
-	    DeviceCommandResponse response = DeviceEventManagementPersistence.deviceCommandResponseCreateLogic(context,
-		    request);
-
-	    GTSInput gtsResponse = Warp10DeviceCommandResponse.toGTS(response);
-	    int ingress = getClient().insertGTS(gtsResponse);
-	    if (ingress == 200) {
-		result.add(response);
-	    }
+	    responses.add(DeviceEventManagementPersistence.deviceCommandResponseCreateLogic(context, request));
 	}
-	return result;
+	return getWriter().write(responses, Warp10DeviceCommandResponse::toGTS);
     }
 
     /*
@@ -331,13 +281,8 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
 	queryParams.addParameter(Warp10DeviceCommandResponse.PROP_ORIGINATING_EVENT_ID,
 		DeviceEventType.CommandResponse.name());
 
-	List<IDeviceCommandResponse> results = new ArrayList<>();
-	List<GTSOutput> fetch = getClient().findGTS(queryParams);
-	for (GTSOutput gtsOutput : fetch) {
-	    DeviceCommandResponse deviceCommandResponse = Warp10DeviceCommandResponse.fromGTS(gtsOutput);
-	    results.add(deviceCommandResponse);
-	}
-	return new SearchResults<IDeviceCommandResponse>(results);
+	return Warp10DeviceEventManagementPersistence.page(getClient().findGTS(queryParams), null,
+		Warp10DeviceCommandResponse::fromGTS);
     }
 
     /*
@@ -355,13 +300,8 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
 		entityIds.stream().map(Object::toString).collect(Collectors.joining("|")));
 	Warp10Persistence.addDateSearchCriteria(queryParams, criteria);
 
-	List<IDeviceCommandResponse> results = new ArrayList<>();
-	List<GTSOutput> fetch = getClient().findGTS(queryParams);
-	for (GTSOutput gtsOutput : fetch) {
-	    DeviceCommandResponse deviceCommandResponse = Warp10DeviceCommandResponse.fromGTS(gtsOutput);
-	    results.add(deviceCommandResponse);
-	}
-	return new SearchResults<IDeviceCommandResponse>(results);
+	return Warp10DeviceEventManagementPersistence.page(getClient().findGTS(queryParams), criteria,
+		Warp10DeviceCommandResponse::fromGTS);
     }
 
     /*
@@ -372,17 +312,11 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
     @Override
     public List<IDeviceStateChange> addDeviceStateChanges(IDeviceEventContext context,
 	    IDeviceStateChangeCreateRequest... requests) throws SiteWhereException {
-	List<IDeviceStateChange> result = new ArrayList<>();
+	List<IDeviceStateChange> states = new ArrayList<>();
 	for (IDeviceStateChangeCreateRequest request : requests) {
-	    DeviceStateChange state = DeviceEventManagementPersistence.deviceStateChangeCreateLogic(context, request);
-
-	    GTSInput gtsState = Warp10DeviceStateChange.toGTS(state);
-	    int ingress = getClient().insertGTS(gtsState);
-	    if (ingress == 200) {
-		result.add(state);
-	    }
+	    states.add(DeviceEventManagementPersistence.deviceStateChangeCreateLogic(context, request));
 	}
-	return result;
+	return getWriter().write(states, Warp10DeviceStateChange::toGTS);
     }
 
     /*
@@ -401,15 +335,8 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
 		entityIds.stream().map(Object::toString).collect(Collectors.joining("|")));
 	Warp10Persistence.addDateSearchCriteria(queryParams, criteria);
 
-	List<IDeviceStateChange> results = new ArrayList<>();
-	List<GTSOutput> fetch = getClient().findGTS(queryParams);
-
-	for (GTSOutput gtsOutput : fetch) {
-	    DeviceStateChange deviceStateChange = Warp10DeviceStateChange.fromGTS(gtsOutput);
-	    results.add(deviceStateChange);
-	}
-
-	return new SearchResults<IDeviceStateChange>(results);
+	return Warp10DeviceEventManagementPersistence.page(getClient().findGTS(queryParams), criteria,
+		Warp10DeviceStateChange::fromGTS);
     }
 
     /*
@@ -429,6 +356,7 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	startNestedComponent(getClient(), monitor, true);
+	getWriter().start();
     }
 
     /*
@@ -438,6 +366,7 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
      */
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	getWriter().stop();
 	stopNestedComponent(getClient(), monitor);
     }
 
@@ -445,6 +374,10 @@ public class Warp10DeviceEventManagement extends TenantEngineLifecycleComponent
 	return client;
     }
 
+    protected Warp10EventWriter getWriter() {
+	return writer;
+    }
+
     protected IDeviceManagement getDeviceManagement() {
 	return ((IEventManagementMicroservice) getMicroservice()).getDeviceManagement();
     }
@@ -7,9 +7,16 @@
  */
 package com.sitewhere.event.persistence.warp10;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.search.ISearchCriteria;
 import com.sitewhere.warp10.Warp10Persistence;
 import com.sitewhere.warp10.rest.GTSOutput;
 
@@ -59,4 +66,71 @@ public class Warp10DeviceEventManagementPersistence extends Warp10Persistence {
             }
         }
     }
+
+    /**
+     * Build a page of results from the GTS matched by a query. Matches are
+     * ordered by event date (newest first) using only their labels, and only
+     * the GTS on the requested page are unmarshaled. The total is the number of
+     * matches.
+     *
+     * @param founds
+     * @param criteria
+     * @param parser
+     * @return
+     * @throws SiteWhereException
+     */
+    public static <T> SearchResults<T> page(List<GTSOutput> founds, ISearchCriteria criteria, IGtsParser<T> parser)
+            throws SiteWhereException {
+        if (founds == null || founds.isEmpty()) {
+            return new SearchResults<T>(new ArrayList<>(), 0);
+        }
+        DatedGTS[] dated = new DatedGTS[founds.size()];
+        for (int i = 0; i < dated.length; i++) {
+            dated[i] = new DatedGTS(founds.get(i));
+        }
+        Arrays.sort(dated, Comparator.comparingLong((DatedGTS d) -> d.eventDate).reversed());
+
+        int start = 0;
+        int end = dated.length;
+        if (criteria != null && criteria.getPageSize() != null && criteria.getPageSize() > 0) {
+            int pageNumber = (criteria.getPageNumber() != null) ? Math.max(1, criteria.getPageNumber()) : 1;
+            long offset = (long) (pageNumber - 1) * criteria.getPageSize();
+            start = (int) Math.min(offset, dated.length);
+            end = (int) Math.min(offset + criteria.getPageSize(), dated.length);
+        }
+        List<T> results = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            results.add(parser.fromGTS(dated[i].gts));
+        }
+        return new SearchResults<T>(results, dated.length);
+    }
+
+    /**
+     * Converts a GTS to the event it holds.
+     *
+     * @param <T>
+     */
+    @FunctionalInterface
+    public static interface IGtsParser<T> {
+
+        public T fromGTS(GTSOutput gts) throws SiteWhereException;
+    }
+
+    /**
+     * GTS paired with the event date from its labels.
+     */
+    private static class DatedGTS {
+
+        /** Event date from labels */
+        private long eventDate;
+
+        /** Matched GTS */
+        private GTSOutput gts;
+
+        public DatedGTS(GTSOutput gts) {
+            String date = (gts.getLabels() != null) ? gts.getLabels().get(Warp10DeviceEvent.PROP_EVENT_DATE) : null;
+            this.eventDate = (date != null) ? Long.parseLong(date) : 0L;
+            this.gts = gts;
+        }
+    }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.persistence.warp10;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.warp10.Warp10Client;
+import com.sitewhere.warp10.rest.GTSInput;
+
+/**
+ * Writes the GTS for a group of events to Warp 10. All events are converted
+ * before any are written, and the writes are then issued on a shared pool
+ * rather than one after another, so a batch costs roughly one round trip per
+ * pool thread instead of one per event. The pool size bounds the number of
+ * concurrent updates sent to Warp 10.
+ */
+public class Warp10EventWriter {
+
+    /** Default number of updates in flight at once */
+    private static final int DEFAULT_MAX_CONCURRENT_WRITES = 8;
+
+    /** Status returned by Warp 10 for a successful update */
+    private static final int STATUS_OK = 200;
+
+    /** Warp 10 client */
+    private Warp10Client client;
+
+    /** Number of updates in flight at once */
+    private int maxConcurrentWrites = DEFAULT_MAX_CONCURRENT_WRITES;
+
+    /** Pool used for issuing updates */
+    private ExecutorService executor;
+
+    public Warp10EventWriter(Warp10Client client) {
+	this.client = client;
+    }
+
+    /**
+     * Start the pool used for issuing updates.
+     */
+    public void start() {
+	this.executor = Executors.newFixedThreadPool(Math.max(1, getMaxConcurrentWrites()),
+		new Warp10WriterThreadFactory());
+    }
+
+    /**
+     * Stop the pool used for issuing updates.
+     */
+    public void stop() {
+	if (executor != null) {
+	    executor.shutdown();
+	    executor = null;
+	}
+    }
+
+    /**
+     * Write the GTS for each event. Events that were stored successfully are
+     * returned in the order they were passed.
+     *
+     * @param events
+     * @param converter
+     * @return
+     * @throws SiteWhereException
+     */
+    public <T> List<T> write(List<T> events, IGtsConverter<T> converter) throws SiteWhereException {
+	List<GTSInput> inputs = new ArrayList<>(events.size());
+	for (T event : events) {
+	    inputs.add(converter.toGTS(event));
+	}
+	List<T> written = new ArrayList<>(events.size());
+	ExecutorService pool = executor;
+	if ((pool == null) || (inputs.size() == 1)) {
+	    for (int i = 0; i < inputs.size(); i++) {
+		if (getClient().insertGTS(inputs.get(i)) == STATUS_OK) {
+		    written.add(events.get(i));
+		}
+	    }
+	    return written;
+	}
+
+	List<Future<Integer>> futures = new ArrayList<>(inputs.size());
+	try {
+	    for (GTSInput input : inputs) {
+		futures.add(pool.submit(() -> getClient().insertGTS(input)));
+	    }
+	    for (int i = 0; i < futures.size(); i++) {
+		if (futures.get(i).get() == STATUS_OK) {
+		    written.add(events.get(i));
+		}
+	    }
+	    return written;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while writing events to Warp 10.", e);
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof SiteWhereException) {
+		throw (SiteWhereException) e.getCause();
+	    }
+	    throw new SiteWhereException("Unable to write events to Warp 10.", e.getCause());
+	} finally {
+	    for (Future<Integer> future : futures) {
+		future.cancel(false);
+	    }
+	}
+    }
+
+    /**
+     * Converts an event to the GTS written for it.
+     *
+     * @param <T>
+     */
+    @FunctionalInterface
+    public static interface IGtsConverter<T> {
+
+	public GTSInput toGTS(T event) throws SiteWhereException;
+    }
+
+    /** Used for naming Warp 10 writer threads */
+    private static class Warp10WriterThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, "Warp10 Writer " + counter.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+
+    public Warp10Client getClient() {
+	return client;
+    }
+
+    public int getMaxConcurrentWrites() {
+	return maxConcurrentWrites;
+    }
+
+    public void setMaxConcurrentWrites(int maxConcurrentWrites) {
+	this.maxConcurrentWrites = maxConcurrentWrites;
+    }
+}
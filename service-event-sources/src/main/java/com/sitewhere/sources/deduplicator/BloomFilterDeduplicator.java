@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.sources.deduplicator;
+
+import com.sitewhere.microservice.api.event.IDeviceEventManagement;
+import com.sitewhere.microservice.lifecycle.TenantEngineLifecycleComponent;
+import com.sitewhere.sources.spi.IDecodedDeviceRequest;
+import com.sitewhere.sources.spi.IDeviceEventDeduplicator;
+import com.sitewhere.sources.spi.microservice.IEventSourcesMicroservice;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.microservice.lifecycle.ILifecycleProgressMonitor;
+import com.sitewhere.spi.microservice.lifecycle.LifecycleComponentType;
+
+/**
+ * Implementation of {@link IDeviceEventDeduplicator} that tracks alternate ids
+ * seen by this event source in memory. Ids within a time window are kept in a
+ * {@link RotatingBloomFilter}. An id that the filter has definitely not seen is
+ * new and is accepted without a remote call. Event management is only asked
+ * when the filter reports a possible match, so an event that is sent again
+ * because it was never stored is not dropped.
+ * 
+ * Unlike {@link AlternateIdDeduplicator}, duplicates of events first received
+ * by another instance, or before a restart, are not detected.
+ */
+public class BloomFilterDeduplicator extends TenantEngineLifecycleComponent implements IDeviceEventDeduplicator {
+
+    /** Default number of alternate ids expected per window */
+    private static final int DEFAULT_EXPECTED_IDS = 1000000;
+
+    /** Default false positive rate for the filter */
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+
+    /** Default length of window alternate ids are remembered for */
+    private static final long DEFAULT_WINDOW_MS = 60 * 60 * 1000;
+
+    /** Number of alternate ids expected per window */
+    private int expectedIds = DEFAULT_EXPECTED_IDS;
+
+    /** False positive rate for the filter */
+    private double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+
+    /** Length of window alternate ids are remembered for */
+    private long windowMs = DEFAULT_WINDOW_MS;
+
+    /** Filter of alternate ids seen within the window */
+    private RotatingBloomFilter filter;
+
+    public BloomFilterDeduplicator() {
+	super(LifecycleComponentType.DeviceEventDeduplicator);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.microservice.lifecycle.LifecycleComponent#initialize(com.
+     * sitewhere.spi.microservice.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void initialize(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	this.filter = new RotatingBloomFilter(getExpectedIds(), getFalsePositiveRate(), getWindowMs());
+	getLogger().info(String.format("Deduplicating with %d bit filter using %d hashes.", filter.getBitCount(),
+		filter.getHashCount()));
+    }
+
+    /*
+     * @see com.sitewhere.sources.spi.IDeviceEventDeduplicator#isDuplicate(com.
+     * sitewhere.sources.spi.IDecodedDeviceRequest)
+     */
+    @Override
+    public boolean isDuplicate(IDecodedDeviceRequest<?> request) throws SiteWhereException {
+	if (!(request.getRequest() instanceof IDeviceEventCreateRequest)) {
+	    return false;
+	}
+	String alternateId = ((IDeviceEventCreateRequest) request.getRequest()).getAlternateId();
+	if (alternateId == null) {
+	    return false;
+	}
+	if (!getFilter().put(alternateId)
+		&& (getDeviceEventManagement().getDeviceEventByAlternateId(alternateId) != null)) {
+	    getLogger().info("Found event with same alternate id. Will be treated as duplicate.");
+	    return true;
+	}
+	return false;
+    }
+
+    private IDeviceEventManagement getDeviceEventManagement() {
+	return ((IEventSourcesMicroservice) getMicroservice()).getDeviceEventManagementApiChannel();
+    }
+
+    protected RotatingBloomFilter getFilter() {
+	return filter;
+    }
+
+    public int getExpectedIds() {
+	return expectedIds;
+    }
+
+    public void setExpectedIds(int expectedIds) {
+	this.expectedIds = expectedIds;
+    }
+
+    public double getFalsePositiveRate() {
+	return falsePositiveRate;
+    }
+
+    public void setFalsePositiveRate(double falsePositiveRate) {
+	this.falsePositiveRate = falsePositiveRate;
+    }
+
+    public long getWindowMs() {
+	return windowMs;
+    }
+
+    public void setWindowMs(long windowMs) {
+	this.windowMs = windowMs;
+    }
+}
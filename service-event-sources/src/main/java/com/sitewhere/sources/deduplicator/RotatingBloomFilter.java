@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.sources.deduplicator;
+
+import java.util.Arrays;
+
+/**
+ * Bloom filter over a sliding time window. Values are added to the current
+ * generation and checked against both the current and previous generations.
+ * When the window elapses, or the current generation holds as many values as
+ * it was sized for, the previous generation is dropped and the current one
+ * takes its place. Memory use stays fixed no matter how many values are
+ * added. A value is remembered for at least one window as long as no more
+ * values than the configured capacity arrive within a window. Beyond that,
+ * generations rotate early and older values are forgotten sooner.
+ * 
+ * A negative answer is exact. A positive answer may be wrong at roughly the
+ * configured false positive rate.
+ */
+public class RotatingBloomFilter {
+
+    /** Number of values each generation is sized for */
+    private int capacity;
+
+    /** Length of window in milliseconds */
+    private long windowMs;
+
+    /** Number of bits per generation */
+    private int bitCount;
+
+    /** Number of hash functions */
+    private int hashCount;
+
+    /** Generation values are added to */
+    private long[] current;
+
+    /** Generation from the previous window */
+    private long[] previous;
+
+    /** Number of values added to the current generation */
+    private int added;
+
+    /** Time the current generation was started */
+    private long started;
+
+    public RotatingBloomFilter(int capacity, double falsePositiveRate, long windowMs) {
+	this.capacity = Math.max(1, capacity);
+	this.windowMs = windowMs;
+	double p = Math.min(Math.max(falsePositiveRate, 1e-9), 0.5);
+	long bits = (long) Math.ceil(-this.capacity * Math.log(p) / (Math.log(2) * Math.log(2)));
+	this.bitCount = (int) Math.min(Math.max(64, bits), Integer.MAX_VALUE - 63);
+	this.hashCount = Math.max(1, (int) Math.round(((double) bitCount / this.capacity) * Math.log(2)));
+	this.current = new long[(bitCount + 63) / 64];
+	this.previous = new long[current.length];
+	this.started = System.currentTimeMillis();
+    }
+
+    /**
+     * Add a value to the current generation. The check and the add happen
+     * atomically, so only one of several concurrent callers adding the same value
+     * is told that it is new.
+     * 
+     * @param value
+     * @return true if the value was definitely not added within the window
+     */
+    public boolean put(String value) {
+	return put(value, System.currentTimeMillis());
+    }
+
+    /**
+     * Add a value to the current generation at the given time.
+     * 
+     * @param value
+     * @param now
+     * @return true if the value was definitely not added within the window
+     */
+    protected synchronized boolean put(String value, long now) {
+	rotateIfNeeded(now);
+	long hash = hash(value);
+	int h1 = (int) hash;
+	int h2 = (int) (hash >>> 32);
+	if (contains(current, h1, h2)) {
+	    return false;
+	}
+	boolean seen = contains(previous, h1, h2);
+	for (int i = 1; i <= hashCount; i++) {
+	    int bit = ((h1 + (i * h2)) & Integer.MAX_VALUE) % bitCount;
+	    current[bit >>> 6] |= (1L << bit);
+	}
+	added++;
+	return !seen;
+    }
+
+    /**
+     * Indicates whether a value may have been added within the window. A false
+     * result means the value was definitely not added.
+     * 
+     * @param value
+     * @return
+     */
+    public boolean mightContain(String value) {
+	return mightContain(value, System.currentTimeMillis());
+    }
+
+    /**
+     * Indicates whether a value may have been added within the window ending at
+     * the given time.
+     * 
+     * @param value
+     * @param now
+     * @return
+     */
+    protected synchronized boolean mightContain(String value, long now) {
+	rotateIfNeeded(now);
+	long hash = hash(value);
+	int h1 = (int) hash;
+	int h2 = (int) (hash >>> 32);
+	return contains(current, h1, h2) || contains(previous, h1, h2);
+    }
+
+    /**
+     * Check whether all bits for a value are set in a generation.
+     * 
+     * @param bits
+     * @param h1
+     * @param h2
+     * @return
+     */
+    protected boolean contains(long[] bits, int h1, int h2) {
+	for (int i = 1; i <= hashCount; i++) {
+	    int bit = ((h1 + (i * h2)) & Integer.MAX_VALUE) % bitCount;
+	    if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Start a new generation if the window has elapsed or the current generation
+     * is full.
+     * 
+     * @param now
+     */
+    protected void rotateIfNeeded(long now) {
+	boolean expired = (windowMs > 0) && (now - started >= windowMs);
+	if (!expired && (added < capacity)) {
+	    return;
+	}
+	long[] recycled = previous;
+	Arrays.fill(recycled, 0L);
+	if (expired && (now - started >= 2 * windowMs)) {
+	    // Nothing in the current generation is inside the window any more.
+	    Arrays.fill(current, 0L);
+	}
+	previous = current;
+	current = recycled;
+	added = 0;
+	started = now;
+    }
+
+    /**
+     * Compute a 64-bit hash of a string (FNV-1a followed by a MurmurHash3
+     * finalizer to spread the bits).
+     * 
+     * @param value
+     * @return
+     */
+    protected static long hash(String value) {
+	long hash = 0xcbf29ce484222325L;
+	for (int i = 0; i < value.length(); i++) {
+	    hash ^= value.charAt(i);
+	    hash *= 0x100000001b3L;
+	}
+	hash ^= (hash >>> 33);
+	hash *= 0xff51afd7ed558ccdL;
+	hash ^= (hash >>> 33);
+	hash *= 0xc4ceb9fe1a85ec53L;
+	hash ^= (hash >>> 33);
+	return hash;
+    }
+
+    public int getBitCount() {
+	return bitCount;
+    }
+
+    public int getHashCount() {
+	return hashCount;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.sources.deduplicator;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link RotatingBloomFilter}.
+ */
+public class RotatingBloomFilterTests {
+
+    /** Number of values added */
+    private static final int COUNT = 100000;
+
+    @Test
+    public void testNoFalseNegatives() throws Exception {
+	RotatingBloomFilter filter = new RotatingBloomFilter(COUNT, 0.001, 0);
+	for (int i = 0; i < COUNT; i++) {
+	    filter.put("id-" + i);
+	}
+	for (int i = 0; i < COUNT; i++) {
+	    assertTrue(filter.mightContain("id-" + i));
+	}
+    }
+
+    @Test
+    public void testPutReportsNewValues() throws Exception {
+	RotatingBloomFilter filter = new RotatingBloomFilter(COUNT, 0.001, 0);
+	assertTrue(filter.put("first"));
+	assertFalse(filter.put("first"));
+	assertTrue(filter.mightContain("first"));
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws Exception {
+	RotatingBloomFilter filter = new RotatingBloomFilter(COUNT, 0.001, 0);
+	for (int i = 0; i < COUNT; i++) {
+	    filter.put("id-" + i);
+	}
+	int falsePositives = 0;
+	for (int i = 0; i < COUNT; i++) {
+	    if (filter.mightContain("other-" + i)) {
+		falsePositives++;
+	    }
+	}
+	assertTrue("False positives: " + falsePositives, falsePositives < (COUNT * 0.003));
+    }
+
+    @Test
+    public void testWindowExpiry() throws Exception {
+	long start = System.currentTimeMillis();
+	RotatingBloomFilter filter = new RotatingBloomFilter(COUNT, 0.001, 60000);
+	filter.put("first", start);
+	assertTrue(filter.mightContain("first", start + 90000));
+	assertFalse(filter.put("first", start + 90000));
+	assertFalse(filter.mightContain("other", start + 90000));
+	assertFalse(filter.mightContain("first", start + 210000));
+    }
+}
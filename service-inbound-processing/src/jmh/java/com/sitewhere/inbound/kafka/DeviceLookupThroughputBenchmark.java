@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.inbound.kafka;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Compares per-event device lookup with batched device lookup against a
+ * simulated device management round trip. Scores are events per second for
+ * batches with 1, 100 and 10k distinct tokens. Run with 'gradle jmh' in this
+ * project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceLookupThroughputBenchmark {
+
+    /** Simulated device management round trip in milliseconds */
+    private static final long SIMULATED_RTT_MS = 1;
+
+    /** Number of events in each batch */
+    private static final int EVENTS_PER_BATCH = 10000;
+
+    /** Number of threads used for concurrent lookups */
+    private static final int LOOKUP_THREADS = 10;
+
+    /** Number of distinct tokens in each batch */
+    @Param({ "1", "100", "10000" })
+    private int distinctTokens;
+
+    /** Device tokens for events in a batch */
+    private List<String> tokens;
+
+    /** Index of next event for per-event lookup */
+    private int next;
+
+    /** Executor for concurrent lookups */
+    private ExecutorService executor;
+
+    /** Resolves batches of tokens */
+    private DeviceTokenBatchResolver resolver;
+
+    @Setup
+    public void setup() {
+	this.tokens = new ArrayList<>(EVENTS_PER_BATCH);
+	for (int i = 0; i < EVENTS_PER_BATCH; i++) {
+	    tokens.add("device-" + (i % distinctTokens));
+	}
+	this.executor = Executors.newFixedThreadPool(LOOKUP_THREADS);
+	this.resolver = new DeviceTokenBatchResolver(executor, LOOKUP_THREADS) {
+
+	    /*
+	     * @see com.sitewhere.inbound.kafka.DeviceTokenBatchResolver#createLookupTask(
+	     * java.util.List)
+	     */
+	    @Override
+	    protected Callable<Map<String, ResolvedDeviceContext>> createLookupTask(List<String> chunk) {
+		return () -> {
+		    Map<String, ResolvedDeviceContext> resolved = new HashMap<>();
+		    for (String token : chunk) {
+			resolved.put(token, lookup(token));
+		    }
+		    return resolved;
+		};
+	    }
+	};
+    }
+
+    @TearDown
+    public void tearDown() {
+	executor.shutdownNow();
+    }
+
+    /**
+     * Look up the device for a single event on the calling thread, as a map() on
+     * the stream thread would.
+     * 
+     * @return
+     * @throws InterruptedException
+     */
+    @Benchmark
+    public ResolvedDeviceContext perEvent() throws InterruptedException {
+	String token = tokens.get(next);
+	next = (next + 1) % EVENTS_PER_BATCH;
+	return lookup(token);
+    }
+
+    /**
+     * Resolve a whole batch of events.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_BATCH)
+    public Map<String, ResolvedDeviceContext> batched() throws SiteWhereException {
+	return resolver.resolve(tokens);
+    }
+
+    /**
+     * Simulate device lookup round trip.
+     * 
+     * @param token
+     * @return
+     * @throws InterruptedException
+     */
+    protected static ResolvedDeviceContext lookup(String token) throws InterruptedException {
+	Thread.sleep(SIMULATED_RTT_MS);
+	Device device = new Device();
+	device.setId(UUID.randomUUID());
+	device.setToken(token);
+	return new ResolvedDeviceContext(device, new ArrayList<>());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.inbound.kafka;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.streams.KeyValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.grpc.model.DeviceEventModel.GDecodedEventPayload;
+import com.sitewhere.grpc.model.DeviceEventModel.GPreprocessedEventPayload;
+import com.sitewhere.inbound.configuration.InboundProcessingTenantConfiguration;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Compares building preprocessed payloads with a gRPC event context built for
+ * every event against {@link PreprocessedEventMapper}, which reuses a cached
+ * context. Run with the GC profiler to report bytes allocated per event
+ * (gc.alloc.rate.norm):
+ * 
+ * <pre>
+ * gradle jmh --args='PreprocessedEventMapperBenchmark -prof gc'
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PreprocessedEventMapperBenchmark {
+
+    /** Number of metadata entries on device and assignment */
+    private static final int METADATA_ENTRIES = 10;
+
+    /** Mapper under test */
+    private PreprocessedEventMapper mapper;
+
+    /** Device for events */
+    private Device device;
+
+    /** Active assignment for device */
+    private DeviceAssignment assignment;
+
+    /** Decoded event */
+    private GDecodedEventPayload payload;
+
+    /** Inbound context with device and assignment resolved */
+    private InboundEventContext context;
+
+    @Setup
+    public void setup() {
+	this.mapper = new PreprocessedEventMapper(new InboundProcessingTenantConfiguration());
+	this.device = createDevice();
+	this.assignment = createAssignment(device);
+	this.payload = GDecodedEventPayload.newBuilder().setDeviceToken(device.getToken()).build();
+	this.context = new InboundEventContext(payload);
+	context.setDevice(device);
+	List<DeviceAssignment> assignments = new ArrayList<>();
+	assignments.add(assignment);
+	context.setDeviceAssignments(assignments);
+    }
+
+    /**
+     * Build the event context for every event, as before it was cached.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    @Benchmark
+    public GPreprocessedEventPayload uncachedContext() throws SiteWhereException {
+	return GPreprocessedEventPayload.newBuilder().setContext(mapper.buildEventContext(device, assignment))
+		.setEvent(payload.getEvent()).build();
+    }
+
+    /**
+     * Map an event with the cached event context.
+     * 
+     * @return
+     */
+    @Benchmark
+    public KeyValue<UUID, List<GPreprocessedEventPayload>> cachedContext() {
+	return mapper.apply(device.getId(), context);
+    }
+
+    protected static Device createDevice() {
+	Device device = new Device();
+	device.setId(UUID.randomUUID());
+	device.setToken("device-1");
+	device.setDeviceTypeId(UUID.randomUUID());
+	device.setUpdatedDate(new Date());
+	device.setMetadata(createMetadata("device"));
+	return device;
+    }
+
+    protected static DeviceAssignment createAssignment(Device device) {
+	DeviceAssignment assignment = new DeviceAssignment();
+	assignment.setId(UUID.randomUUID());
+	assignment.setDeviceId(device.getId());
+	assignment.setCustomerId(UUID.randomUUID());
+	assignment.setAreaId(UUID.randomUUID());
+	assignment.setAssetId(UUID.randomUUID());
+	assignment.setUpdatedDate(new Date());
+	assignment.setMetadata(createMetadata("assignment"));
+	return assignment;
+    }
+
+    protected static Map<String, String> createMetadata(String prefix) {
+	Map<String, String> metadata = new HashMap<>();
+	for (int i = 0; i < METADATA_ENTRIES; i++) {
+	    metadata.put(prefix + "-key-" + i, prefix + "-value-" + i);
+	}
+	return metadata;
+    }
+}
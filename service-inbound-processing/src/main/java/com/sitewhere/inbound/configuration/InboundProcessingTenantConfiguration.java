@@ -19,9 +19,51 @@ public class InboundProcessingTenantConfiguration
     /** Default number of threads used for concurrent processing of events */
     private static final int DEFAULT_PROCESSING_THREAD_COUNT = 10;
 
+    /** Default maximum number of events in a device lookup batch */
+    private static final int DEFAULT_DEVICE_LOOKUP_BATCH_SIZE = 500;
+
+    /** Default maximum time events wait for a device lookup batch */
+    private static final long DEFAULT_DEVICE_LOOKUP_BATCH_INTERVAL_MS = 50;
+
+    /** Default maximum number of device lookup batches in flight per task */
+    private static final int DEFAULT_DEVICE_LOOKUP_MAX_IN_FLIGHT_BATCHES = 4;
+
+    /** Default maximum number of device tokens with cached context */
+    private static final int DEFAULT_DEVICE_CONTEXT_CACHE_SIZE = 100000;
+
+    /** Default maximum age of cached device context */
+    private static final long DEFAULT_DEVICE_CONTEXT_CACHE_TTL_MS = 5 * 60 * 1000;
+
+    /** Default maximum number of unregistered device tokens remembered */
+    private static final int DEFAULT_UNREGISTERED_TOKEN_CACHE_SIZE = 10000;
+
+    /** Default maximum time a device token is remembered as unregistered */
+    private static final long DEFAULT_UNREGISTERED_TOKEN_CACHE_TTL_MS = 60 * 1000;
+
     /** Number of threads used for concurrent processing of events */
     private int processingThreadCount = DEFAULT_PROCESSING_THREAD_COUNT;
 
+    /** Maximum number of events in a device lookup batch */
+    private int deviceLookupBatchSize = DEFAULT_DEVICE_LOOKUP_BATCH_SIZE;
+
+    /** Maximum time events wait for a device lookup batch */
+    private long deviceLookupBatchIntervalMs = DEFAULT_DEVICE_LOOKUP_BATCH_INTERVAL_MS;
+
+    /** Maximum number of device lookup batches in flight per task */
+    private int deviceLookupMaxInFlightBatches = DEFAULT_DEVICE_LOOKUP_MAX_IN_FLIGHT_BATCHES;
+
+    /** Maximum number of device tokens with cached context */
+    private int deviceContextCacheSize = DEFAULT_DEVICE_CONTEXT_CACHE_SIZE;
+
+    /** Maximum age of cached device context */
+    private long deviceContextCacheTtlMs = DEFAULT_DEVICE_CONTEXT_CACHE_TTL_MS;
+
+    /** Maximum number of unregistered device tokens remembered */
+    private int unregisteredTokenCacheSize = DEFAULT_UNREGISTERED_TOKEN_CACHE_SIZE;
+
+    /** Maximum time a device token is remembered as unregistered */
+    private long unregisteredTokenCacheTtlMs = DEFAULT_UNREGISTERED_TOKEN_CACHE_TTL_MS;
+
     /*
      * @see com.sitewhere.inbound.spi.processing.IInboundProcessingConfiguration#
      * getProcessingThreadCount()
@@ -34,4 +76,95 @@ public class InboundProcessingTenantConfiguration
     public void setProcessingThreadCount(int processingThreadCount) {
 	this.processingThreadCount = processingThreadCount;
     }
+
+    /*
+     * @see com.sitewhere.inbound.spi.processing.IInboundProcessingConfiguration#
+     * getDeviceLookupBatchSize()
+     */
+    @Override
+    public int getDeviceLookupBatchSize() {
+	return deviceLookupBatchSize;
+    }
+
+    public void setDeviceLookupBatchSize(int deviceLookupBatchSize) {
+	this.deviceLookupBatchSize = deviceLookupBatchSize;
+    }
+
+    /*
+     * @see com.sitewhere.inbound.spi.processing.IInboundProcessingConfiguration#
+     * getDeviceLookupBatchIntervalMs()
+     */
+    @Override
+    public long getDeviceLookupBatchIntervalMs() {
+	return deviceLookupBatchIntervalMs;
+    }
+
+    public void setDeviceLookupBatchIntervalMs(long deviceLookupBatchIntervalMs) {
+	this.deviceLookupBatchIntervalMs = deviceLookupBatchIntervalMs;
+    }
+
+    /*
+     * @see com.sitewhere.inbound.spi.processing.IInboundProcessingConfiguration#
+     * getDeviceLookupMaxInFlightBatches()
+     */
+    @Override
+    public int getDeviceLookupMaxInFlightBatches() {
+	return deviceLookupMaxInFlightBatches;
+    }
+
+    public void setDeviceLookupMaxInFlightBatches(int deviceLookupMaxInFlightBatches) {
+	this.deviceLookupMaxInFlightBatches = deviceLookupMaxInFlightBatches;
+    }
+
+    /*
+     * @see com.sitewhere.inbound.spi.processing.IInboundProcessingConfiguration#
+     * getDeviceContextCacheSize()
+     */
+    @Override
+    public int getDeviceContextCacheSize() {
+	return deviceContextCacheSize;
+    }
+
+    public void setDeviceContextCacheSize(int deviceContextCacheSize) {
+	this.deviceContextCacheSize = deviceContextCacheSize;
+    }
+
+    /*
+     * @see com.sitewhere.inbound.spi.processing.IInboundProcessingConfiguration#
+     * getDeviceContextCacheTtlMs()
+     */
+    @Override
+    public long getDeviceContextCacheTtlMs() {
+	return deviceContextCacheTtlMs;
+    }
+
+    public void setDeviceContextCacheTtlMs(long deviceContextCacheTtlMs) {
+	this.deviceContextCacheTtlMs = deviceContextCacheTtlMs;
+    }
+
+    /*
+     * @see com.sitewhere.inbound.spi.processing.IInboundProcessingConfiguration#
+     * getUnregisteredTokenCacheSize()
+     */
+    @Override
+    public int getUnregisteredTokenCacheSize() {
+	return unregisteredTokenCacheSize;
+    }
+
+    public void setUnregisteredTokenCacheSize(int unregisteredTokenCacheSize) {
+	this.unregisteredTokenCacheSize = unregisteredTokenCacheSize;
+    }
+
+    /*
+     * @see com.sitewhere.inbound.spi.processing.IInboundProcessingConfiguration#
+     * getUnregisteredTokenCacheTtlMs()
+     */
+    @Override
+    public long getUnregisteredTokenCacheTtlMs() {
+	return unregisteredTokenCacheTtlMs;
+    }
+
+    public void setUnregisteredTokenCacheTtlMs(long unregisteredTokenCacheTtlMs) {
+	this.unregisteredTokenCacheTtlMs = unregisteredTokenCacheTtlMs;
+    }
 }
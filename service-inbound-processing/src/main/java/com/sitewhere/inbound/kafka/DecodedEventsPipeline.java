@@ -20,6 +20,7 @@ import org.apache.kafka.streams.kstream.Consumed;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.Predicate;
 import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.Stores;
 
 import com.sitewhere.grpc.kafka.serdes.SiteWhereSerdes;
 import com.sitewhere.grpc.model.DeviceEventModel.GDecodedEventPayload;
@@ -36,11 +37,8 @@ import com.sitewhere.spi.microservice.lifecycle.ITenantEngineLifecycleComponent;
  */
 public class DecodedEventsPipeline extends KafkaStreamPipeline implements IDecodedEventsPipeline {
 
-    /** Mapper that looks up a device by token */
-    private DeviceLookupMapper deviceLookupMapper;
-
-    /** Mapper that looks up active assignments for a device */
-    private DeviceAssignmentsLookupMapper deviceAssignmentsLookupMapper;
+    /** Looks up devices and active assignments by token in batches */
+    private DeviceLookupTransformerSupplier deviceLookupTransformerSupplier;
 
     /** Mapper that builds preprocessed events from lookup data */
     private PreprocessedEventMapper preprocessedEventMapper;
@@ -89,8 +87,14 @@ public class DecodedEventsPipeline extends KafkaStreamPipeline implements IDecod
 	KStream<String, GDecodedEventPayload> input = builder.stream(getSourceTopicNames(),
 		Consumed.with(Serdes.String(), SiteWhereSerdes.forDecodedEventPayload()));
 
+	// Buffer events so that devices may be resolved in batches.
+	builder.addStateStore(Stores.keyValueStoreBuilder(
+		Stores.inMemoryKeyValueStore(DeviceLookupTransformerSupplier.BUFFER_STORE_NAME), Serdes.Long(),
+		SiteWhereSerdes.forDecodedEventPayload()));
+
 	// Attempt to resolve device and split stream based on resolution.
-	KStream<UUID, InboundEventContext> deviceResolver = input.map(getDeviceLookupMapper());
+	KStream<UUID, InboundEventContext> deviceResolver = input.transform(getDeviceLookupTransformerSupplier(),
+		DeviceLookupTransformerSupplier.BUFFER_STORE_NAME);
 
 	// Create branches based on whether device was resolved.
 	Predicate<UUID, InboundEventContext> deviceFound = (key, value) -> value.getDevice() != null;
@@ -109,7 +113,7 @@ public class DecodedEventsPipeline extends KafkaStreamPipeline implements IDecod
 	// forward to inbound events topic.
 	String inboundEventsTopic = getMicroservice().getKafkaTopicNaming()
 		.getInboundEventsTopic(getTenantEngine().getTenantResource());
-	deviceFoundBranch.map(getDeviceAssignmentsLookupMapper()).map(getPreprocessedEventMapper())
+	deviceFoundBranch.map(getPreprocessedEventMapper())
 		.flatMapValues((key, value) -> value)
 		.to(inboundEventsTopic, Produced.with(Serdes.UUID(), SiteWhereSerdes.forPreprocessedEventPayload()));
     }
@@ -121,16 +125,13 @@ public class DecodedEventsPipeline extends KafkaStreamPipeline implements IDecod
      */
     @Override
     public void initialize(ILifecycleProgressMonitor monitor) throws SiteWhereException {
-	this.deviceLookupMapper = new DeviceLookupMapper(
-		((IInboundProcessingTenantEngine) getTenantEngine()).getActiveConfiguration());
-	this.deviceAssignmentsLookupMapper = new DeviceAssignmentsLookupMapper(
+	this.deviceLookupTransformerSupplier = new DeviceLookupTransformerSupplier(
 		((IInboundProcessingTenantEngine) getTenantEngine()).getActiveConfiguration());
 	this.preprocessedEventMapper = new PreprocessedEventMapper(
 		((IInboundProcessingTenantEngine) getTenantEngine()).getActiveConfiguration());
 
 	super.initialize(monitor);
-	initializeNestedComponent(getDeviceLookupMapper(), monitor, true);
-	initializeNestedComponent(getDeviceAssignmentsLookupMapper(), monitor, true);
+	initializeNestedComponent(getDeviceLookupTransformerSupplier(), monitor, true);
 	initializeNestedComponent(getPreprocessedEventMapper(), monitor, true);
     }
 
@@ -165,8 +166,7 @@ public class DecodedEventsPipeline extends KafkaStreamPipeline implements IDecod
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.start(monitor);
-	startNestedComponent(getDeviceLookupMapper(), monitor, true);
-	startNestedComponent(getDeviceAssignmentsLookupMapper(), monitor, true);
+	startNestedComponent(getDeviceLookupTransformerSupplier(), monitor, true);
 	startNestedComponent(getPreprocessedEventMapper(), monitor, true);
 
 	// Wait for Kafka topics to be created/validated.
@@ -182,8 +182,7 @@ public class DecodedEventsPipeline extends KafkaStreamPipeline implements IDecod
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.stop(monitor);
 	stopNestedComponent(getPreprocessedEventMapper(), monitor);
-	stopNestedComponent(getDeviceAssignmentsLookupMapper(), monitor);
-	stopNestedComponent(getDeviceLookupMapper(), monitor);
+	stopNestedComponent(getDeviceLookupTransformerSupplier(), monitor);
     }
 
     /**
@@ -224,12 +223,8 @@ public class DecodedEventsPipeline extends KafkaStreamPipeline implements IDecod
 	}
     }
 
-    protected DeviceLookupMapper getDeviceLookupMapper() {
-	return deviceLookupMapper;
-    }
-
-    protected DeviceAssignmentsLookupMapper getDeviceAssignmentsLookupMapper() {
-	return deviceAssignmentsLookupMapper;
+    protected DeviceLookupTransformerSupplier getDeviceLookupTransformerSupplier() {
+	return deviceLookupTransformerSupplier;
     }
 
     protected PreprocessedEventMapper getPreprocessedEventMapper() {
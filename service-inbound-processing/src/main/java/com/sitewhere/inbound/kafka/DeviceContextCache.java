@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.inbound.kafka;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of resolved device context (device and active assignments)
+ * keyed by device token. The least recently used entry is evicted when the
+ * cache is full. Entries are invalidated explicitly when assignments change and
+ * expire after a maximum age as a safety net for changes that are not
+ * signaled.
+ * 
+ * The cache is shared by all stream tasks, so a lookup that started before an
+ * invalidation may finish after it. Invalidation leaves a marker with a new
+ * generation and context is only cached if the lookup started after the last
+ * invalidation for its token.
+ */
+public class DeviceContextCache {
+
+    /** Maximum number of entries */
+    private int maxSize;
+
+    /** Maximum age of an entry in milliseconds */
+    private long maxAgeMs;
+
+    /** Entries in access order */
+    private Map<String, Entry> entries;
+
+    /** Incremented for each invalidation */
+    private long generation;
+
+    public DeviceContextCache(int maxSize, long maxAgeMs) {
+	this.maxSize = maxSize;
+	this.maxAgeMs = maxAgeMs;
+	this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+	    private static final long serialVersionUID = -3431447069577546468L;
+
+	    /*
+	     * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+	     */
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+		if (size() > getMaxSize()) {
+		    onEviction(eldest.getKey());
+		    return true;
+		}
+		return false;
+	    }
+	};
+    }
+
+    /**
+     * Get cached context for a device token.
+     * 
+     * @param token
+     * @return context or null if not cached or expired
+     */
+    public synchronized ResolvedDeviceContext get(String token) {
+	Entry entry = entries.get(token);
+	if (entry == null) {
+	    return null;
+	}
+	if ((System.currentTimeMillis() - entry.created) > getMaxAgeMs()) {
+	    entries.remove(token);
+	    return null;
+	}
+	return entry.context;
+    }
+
+    /**
+     * Get the current generation. Capture it before starting a lookup and pass it
+     * to {@link #put(String, ResolvedDeviceContext, long)} with the result.
+     * 
+     * @return
+     */
+    public synchronized long getGeneration() {
+	return generation;
+    }
+
+    /**
+     * Cache context for a device token unless the token was invalidated after
+     * the lookup started.
+     * 
+     * @param token
+     * @param context
+     * @param since
+     *            generation captured before the lookup started
+     */
+    public synchronized void put(String token, ResolvedDeviceContext context, long since) {
+	if (getMaxSize() <= 0) {
+	    return;
+	}
+	Entry existing = entries.get(token);
+	if (existing != null && existing.context == null && existing.generation > since) {
+	    return;
+	}
+	entries.put(token, new Entry(context, System.currentTimeMillis(), generation));
+    }
+
+    /**
+     * Remove cached context for a device token.
+     * 
+     * @param token
+     */
+    public synchronized void invalidate(String token) {
+	generation++;
+	if (getMaxSize() > 0) {
+	    entries.put(token, new Entry(null, System.currentTimeMillis(), generation));
+	}
+    }
+
+    /**
+     * Remove all cached context.
+     */
+    public synchronized void clear() {
+	entries.clear();
+    }
+
+    /**
+     * Called when an entry is evicted to make room for a new entry.
+     * 
+     * @param token
+     */
+    protected void onEviction(String token) {
+    }
+
+    public int getMaxSize() {
+	return maxSize;
+    }
+
+    public long getMaxAgeMs() {
+	return maxAgeMs;
+    }
+
+    /**
+     * Cached context with creation timestamp. Invalidation markers have no
+     * context.
+     */
+    private static class Entry {
+
+	/** Cached context */
+	private final ResolvedDeviceContext context;
+
+	/** Time entry was created */
+	private final long created;
+
+	/** Generation when entry was created */
+	private final long generation;
+
+	public Entry(ResolvedDeviceContext context, long created, long generation) {
+	    this.context = context;
+	    this.created = created;
+	    this.generation = generation;
+	}
+    }
+}
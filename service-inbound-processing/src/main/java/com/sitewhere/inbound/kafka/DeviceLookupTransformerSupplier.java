@@ -0,0 +1,661 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.inbound.kafka;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.TransformerSupplier;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import com.sitewhere.grpc.model.DeviceEventModel.GDecodedEventPayload;
+import com.sitewhere.inbound.spi.microservice.IInboundProcessingMicroservice;
+import com.sitewhere.inbound.spi.processing.IInboundProcessingConfiguration;
+import com.sitewhere.microservice.api.device.IDeviceManagement;
+import com.sitewhere.microservice.lifecycle.TenantEngineLifecycleComponent;
+import com.sitewhere.microservice.security.SystemUserCallable;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.microservice.lifecycle.ILifecycleProgressMonitor;
+import com.sitewhere.spi.microservice.lifecycle.ITenantEngineLifecycleComponent;
+import com.sitewhere.spi.microservice.lifecycle.LifecycleComponentType;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+/**
+ * Buffers decoded events and resolves the device and active assignments for
+ * the buffered events as a batch. Each distinct token in a batch is looked up
+ * once and lookups for different tokens are executed concurrently. Results are
+ * forwarded in the order events were received. Buffered events are held in a
+ * logged state store so that events consumed (and committed) but not yet
+ * forwarded survive a restart or rebalance. Tokens that recently failed to
+ * resolve are remembered so that repeat events for unregistered devices are
+ * routed without a device lookup.
+ */
+public class DeviceLookupTransformerSupplier extends TenantEngineLifecycleComponent
+	implements TransformerSupplier<String, GDecodedEventPayload, KeyValue<UUID, InboundEventContext>> {
+
+    /** Prefix for source id of device context change signals */
+    private static final String CONTEXT_CHANGE_SOURCE_PREFIX = "system:context:";
+
+    /** Name of state store that buffers events awaiting lookup */
+    public static final String BUFFER_STORE_NAME = "device-lookup-buffer";
+
+    /** Histogram for device lookup */
+    private static final Histogram DEVICE_LOOKUP_TIMER = TenantEngineLifecycleComponent
+	    .createHistogramMetric("inbound_device_lookup_timer", "Timer for device lookup on inbound events");
+
+    /** Counter for device context cache hits */
+    private static final Counter DEVICE_CONTEXT_CACHE_HITS = TenantEngineLifecycleComponent.createCounterMetric(
+	    "inbound_device_context_cache_hit_count", "Count of device lookups served from device context cache");
+
+    /** Counter for device context cache misses */
+    private static final Counter DEVICE_CONTEXT_CACHE_MISSES = TenantEngineLifecycleComponent.createCounterMetric(
+	    "inbound_device_context_cache_miss_count", "Count of device lookups not found in device context cache");
+
+    /** Counter for device context cache evictions */
+    private static final Counter DEVICE_CONTEXT_CACHE_EVICTIONS = TenantEngineLifecycleComponent.createCounterMetric(
+	    "inbound_device_context_cache_eviction_count", "Count of entries evicted from device context cache");
+
+    /** Counter for events routed as unregistered without device lookup */
+    private static final Counter UNREGISTERED_TOKEN_CACHE_HITS = TenantEngineLifecycleComponent.createCounterMetric(
+	    "inbound_unregistered_token_cache_hit_count",
+	    "Count of device lookups skipped for tokens known to be unregistered");
+
+    /** Histogram for assignment lookup */
+    private static final Histogram ASSIGNMENT_LOOKUP_TIMER = TenantEngineLifecycleComponent
+	    .createHistogramMetric("inbound_assignment_lookup_timer", "Timer for assignment lookup on inbound events");
+
+    /** Histogram for device lookup batches */
+    private static final Histogram DEVICE_LOOKUP_BATCH_TIMER = TenantEngineLifecycleComponent.createHistogramMetric(
+	    "inbound_device_lookup_batch_timer", "Timer for resolving a batch of device lookups on inbound events");
+
+    /** Counter for events resolved in batches */
+    private static final Counter DEVICE_LOOKUP_BATCHED_EVENTS = TenantEngineLifecycleComponent.createCounterMetric(
+	    "inbound_device_lookup_batched_event_count", "Count of events resolved by batched device lookup");
+
+    /** Configuration */
+    private IInboundProcessingConfiguration configuration;
+
+    /** Executor for concurrent lookups */
+    private ExecutorService lookupExecutor;
+
+    /** Resolves devices for batches of tokens */
+    private DeviceTokenBatchResolver resolver;
+
+    /** Cache of resolved device context for this tenant */
+    private DeviceContextCache deviceContextCache;
+
+    /** Tokens recently found to be unregistered for this tenant */
+    private UnregisteredTokenCache unregisteredTokenCache;
+
+    public DeviceLookupTransformerSupplier(IInboundProcessingConfiguration configuration) {
+	super(LifecycleComponentType.Other);
+	this.configuration = configuration;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.microservice.lifecycle.LifecycleComponent#start(com.sitewhere.
+     * spi.microservice.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	this.deviceContextCache = new DeviceContextCache(getConfiguration().getDeviceContextCacheSize(),
+		getConfiguration().getDeviceContextCacheTtlMs()) {
+
+	    /*
+	     * @see com.sitewhere.inbound.kafka.DeviceContextCache#onEviction(java.lang.
+	     * String)
+	     */
+	    @Override
+	    protected void onEviction(String token) {
+		DEVICE_CONTEXT_CACHE_EVICTIONS.labels(getTenantEngine().buildLabels()).inc();
+	    }
+	};
+	this.unregisteredTokenCache = new UnregisteredTokenCache(getConfiguration().getUnregisteredTokenCacheSize(),
+		getConfiguration().getUnregisteredTokenCacheTtlMs());
+
+	int threads = getConfiguration().getProcessingThreadCount();
+	this.lookupExecutor = Executors.newFixedThreadPool(threads, new DeviceLookupThreadFactory("Device Lookup"));
+	this.resolver = new DeviceTokenBatchResolver(getLookupExecutor(), threads) {
+
+	    /*
+	     * @see com.sitewhere.inbound.kafka.DeviceTokenBatchResolver#createLookupTask(
+	     * java.util.List)
+	     */
+	    @Override
+	    protected Callable<Map<String, ResolvedDeviceContext>> createLookupTask(List<String> tokens) {
+		return new DeviceLookupProcessor(DeviceLookupTransformerSupplier.this, tokens);
+	    }
+	};
+    }
+
+    /*
+     * @see
+     * com.sitewhere.microservice.lifecycle.LifecycleComponent#stop(com.sitewhere.
+     * spi.microservice.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (getLookupExecutor() != null) {
+	    getLookupExecutor().shutdownNow();
+	}
+	if (getDeviceContextCache() != null) {
+	    getDeviceContextCache().clear();
+	}
+	if (getUnregisteredTokenCache() != null) {
+	    getUnregisteredTokenCache().clear();
+	}
+    }
+
+    /**
+     * Resolve device context for a batch of tokens, using cached context where
+     * available and caching newly resolved context. Tokens known to be
+     * unregistered resolve to null without a lookup.
+     * 
+     * @param tokens
+     * @return
+     * @throws SiteWhereException
+     */
+    protected Map<String, ResolvedDeviceContext> resolveDeviceContext(List<String> tokens)
+	    throws SiteWhereException {
+	Map<String, ResolvedDeviceContext> resolved = new HashMap<>();
+	Set<String> misses = new LinkedHashSet<>();
+	int unregistered = 0;
+	for (String token : tokens) {
+	    if (resolved.containsKey(token) || misses.contains(token)) {
+		continue;
+	    }
+	    if (getUnregisteredTokenCache().contains(token)) {
+		resolved.put(token, null);
+		unregistered++;
+		continue;
+	    }
+	    ResolvedDeviceContext cached = getDeviceContextCache().get(token);
+	    if (cached != null) {
+		resolved.put(token, cached);
+	    } else {
+		misses.add(token);
+	    }
+	}
+	UNREGISTERED_TOKEN_CACHE_HITS.labels(getTenantEngine().buildLabels()).inc(unregistered);
+	DEVICE_CONTEXT_CACHE_HITS.labels(getTenantEngine().buildLabels()).inc(resolved.size() - unregistered);
+	DEVICE_CONTEXT_CACHE_MISSES.labels(getTenantEngine().buildLabels()).inc(misses.size());
+
+	// Capture generations so results of a lookup that races an invalidation from
+	// another task are not cached.
+	long contextGeneration = getDeviceContextCache().getGeneration();
+	long unregisteredGeneration = getUnregisteredTokenCache().getGeneration();
+	Map<String, ResolvedDeviceContext> looked = getResolver().resolve(misses);
+	for (Map.Entry<String, ResolvedDeviceContext> entry : looked.entrySet()) {
+	    if (entry.getValue() != null) {
+		if (entry.getValue().getError() == null) {
+		    getDeviceContextCache().put(entry.getKey(), entry.getValue(), contextGeneration);
+		}
+	    } else {
+		getUnregisteredTokenCache().put(entry.getKey(), unregisteredGeneration);
+	    }
+	}
+	resolved.putAll(looked);
+	return resolved;
+    }
+
+    /**
+     * Indicates whether the payload is a signal from device management that the
+     * context for a device has changed. Signals only invalidate cached context
+     * and are not forwarded. The event that caused the change is sent by device
+     * management with its own assignment context.
+     * 
+     * @param payload
+     * @return
+     */
+    protected boolean isContextChangeSignal(GDecodedEventPayload payload) {
+	return payload.getSourceId().startsWith(CONTEXT_CHANGE_SOURCE_PREFIX);
+    }
+
+    /*
+     * @see org.apache.kafka.streams.kstream.TransformerSupplier#get()
+     */
+    @Override
+    public Transformer<String, GDecodedEventPayload, KeyValue<UUID, InboundEventContext>> get() {
+	return new DeviceLookupTransformer();
+    }
+
+    /**
+     * Transformer that buffers events and resolves devices in batches. Batches are
+     * resolved off the stream thread so that consumption continues while lookups
+     * are in progress. Batches are resolved one at a time and forwarded in the
+     * order they were submitted, so events for a given token are never reordered.
+     * Events stay in the buffer until forwarded, so offsets committed for events
+     * with lookups in progress do not lose them. Each transformer resolves its
+     * batches on its own executor, which is shut down when the transformer is
+     * closed so that a lookup in progress is interrupted.
+     */
+    private class DeviceLookupTransformer
+	    implements Transformer<String, GDecodedEventPayload, KeyValue<UUID, InboundEventContext>> {
+
+	/** Processor context */
+	private ProcessorContext context;
+
+	/** Executor that resolves submitted batches off the stream thread */
+	private ExecutorService batchExecutor;
+
+	/** Buffered events keyed by arrival sequence */
+	private KeyValueStore<Long, GDecodedEventPayload> buffer;
+
+	/** Next sequence number (null until recovered from store) */
+	private Long nextSequence;
+
+	/** First sequence number not yet submitted for lookup */
+	private long submittedSequence;
+
+	/** Number of buffered events not yet submitted for lookup */
+	private int unsubmittedCount;
+
+	/** Batches submitted for lookup in submission order */
+	private Deque<LookupBatch> inFlight = new ArrayDeque<>();
+
+	/** Completes when the most recently submitted batch is resolved */
+	private CompletableFuture<Map<String, ResolvedDeviceContext>> lastSubmitted = CompletableFuture
+		.completedFuture(null);
+
+	/*
+	 * @see
+	 * org.apache.kafka.streams.kstream.Transformer#init(org.apache.kafka.streams.
+	 * processor.ProcessorContext)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void init(ProcessorContext context) {
+	    this.context = context;
+	    this.buffer = (KeyValueStore<Long, GDecodedEventPayload>) context.getStateStore(BUFFER_STORE_NAME);
+	    this.batchExecutor = Executors.newFixedThreadPool(
+		    Math.max(1, getConfiguration().getDeviceLookupMaxInFlightBatches()),
+		    new DeviceLookupThreadFactory("Device Lookup Batch"));
+	    context.schedule(Duration.ofMillis(getConfiguration().getDeviceLookupBatchIntervalMs()),
+		    PunctuationType.WALL_CLOCK_TIME, timestamp -> {
+			submitBatch();
+			forwardCompleted();
+		    });
+	}
+
+	/*
+	 * @see org.apache.kafka.streams.kstream.Transformer#transform(java.lang.Object,
+	 * java.lang.Object)
+	 */
+	@Override
+	public KeyValue<UUID, InboundEventContext> transform(String key, GDecodedEventPayload payload) {
+	    if (nextSequence == null) {
+		recoverBuffer();
+	    }
+	    buffer.put(nextSequence++, payload);
+	    if (++unsubmittedCount >= getConfiguration().getDeviceLookupBatchSize()) {
+		submitBatch();
+	    }
+	    forwardCompleted();
+	    return null;
+	}
+
+	/**
+	 * Recover sequence and count from events left in the buffer by a previous
+	 * instance of the task. All recovered events are submitted again.
+	 */
+	protected void recoverBuffer() {
+	    long max = -1;
+	    int count = 0;
+	    try (KeyValueIterator<Long, GDecodedEventPayload> all = buffer.all()) {
+		while (all.hasNext()) {
+		    max = Math.max(max, all.next().key);
+		    count++;
+		}
+	    }
+	    this.nextSequence = max + 1;
+	    this.submittedSequence = 0;
+	    this.unsubmittedCount = count;
+	}
+
+	/**
+	 * Submit all buffered events not yet submitted as a batch to be resolved.
+	 * Blocks the stream thread while the maximum number of batches are in
+	 * flight.
+	 */
+	protected void submitBatch() {
+	    if (nextSequence == null) {
+		recoverBuffer();
+	    }
+	    if (unsubmittedCount == 0) {
+		return;
+	    }
+	    while (!inFlight.isEmpty()
+		    && inFlight.size() >= getConfiguration().getDeviceLookupMaxInFlightBatches()) {
+		forward(inFlight.poll());
+	    }
+
+	    List<KeyValue<Long, GDecodedEventPayload>> pending = new ArrayList<>();
+	    try (KeyValueIterator<Long, GDecodedEventPayload> range = buffer.range(submittedSequence,
+		    nextSequence - 1)) {
+		while (range.hasNext()) {
+		    pending.add(range.next());
+		}
+	    }
+	    this.submittedSequence = nextSequence;
+	    this.unsubmittedCount = 0;
+	    if (pending.isEmpty()) {
+		return;
+	    }
+	    Collections.sort(pending, (a, b) -> Long.compare(a.key, b.key));
+
+	    // Find cached context to drop for devices signaled as changed. Device
+	    // management only signals existing devices, so signals also clear tokens
+	    // remembered as unregistered.
+	    List<String> tokens = new ArrayList<>(pending.size());
+	    List<String> changed = new ArrayList<>();
+	    for (KeyValue<Long, GDecodedEventPayload> entry : pending) {
+		if (isContextChangeSignal(entry.value)) {
+		    changed.add(entry.value.getDeviceToken());
+		} else {
+		    tokens.add(entry.value.getDeviceToken());
+		}
+	    }
+
+	    // Invalidate and resolve after the previous batch so cache updates from
+	    // earlier batches of this task can not restore stale context. Lookups by
+	    // other tasks are guarded by the cache generation.
+	    CompletableFuture<Map<String, ResolvedDeviceContext>> result = lastSubmitted
+		    .handleAsync((previous, error) -> {
+			for (String token : changed) {
+			    getUnregisteredTokenCache().invalidate(token);
+			    getDeviceContextCache().invalidate(token);
+			}
+			return resolveBatch(tokens);
+		    }, batchExecutor);
+	    this.lastSubmitted = result;
+	    inFlight.add(new LookupBatch(pending, result));
+	}
+
+	/**
+	 * Forward batches at the head of the queue that have been resolved.
+	 */
+	protected void forwardCompleted() {
+	    while (!inFlight.isEmpty() && inFlight.peek().getResult().isDone()) {
+		forward(inFlight.poll());
+	    }
+	}
+
+	/**
+	 * Wait for a batch to be resolved, then forward results in arrival order and
+	 * remove the events from the buffer. Context change signals are removed
+	 * without being forwarded.
+	 * 
+	 * @param batch
+	 */
+	protected void forward(LookupBatch batch) {
+	    Map<String, ResolvedDeviceContext> resolved;
+	    Exception error = null;
+	    try {
+		resolved = batch.getResult().get();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		resolved = new HashMap<>();
+		error = new SiteWhereException("Interrupted while waiting for device lookup.", e);
+	    } catch (ExecutionException e) {
+		getLogger().error("Unable to process device lookup.", e.getCause());
+		resolved = new HashMap<>();
+		error = new SiteWhereException("Unable to process device lookup.", e.getCause());
+	    }
+
+	    for (KeyValue<Long, GDecodedEventPayload> entry : batch.getEvents()) {
+		if (!isContextChangeSignal(entry.value)) {
+		    KeyValue<UUID, InboundEventContext> inbound = createContext(entry.value, resolved, error);
+		    context.forward(inbound.key, inbound.value);
+		}
+		buffer.delete(entry.key);
+	    }
+	    onBatchForwarded(batch.getEvents().size());
+	}
+
+	/*
+	 * @see org.apache.kafka.streams.kstream.Transformer#close()
+	 */
+	@Override
+	public void close() {
+	    // Unforwarded events remain in the buffer and are replayed on recovery.
+	    if (batchExecutor != null) {
+		batchExecutor.shutdownNow();
+	    }
+	    inFlight.clear();
+	}
+    }
+
+    /**
+     * Called after a batch of events has been forwarded.
+     * 
+     * @param events
+     */
+    protected void onBatchForwarded(int events) {
+	DEVICE_LOOKUP_BATCHED_EVENTS.labels(getTenantEngine().buildLabels()).inc(events);
+    }
+
+    /**
+     * Create the inbound context for an event from the resolved device context.
+     * An error for the whole batch applies to every event, otherwise only events
+     * for a token whose lookup failed carry an error. Events without a device are
+     * keyed by a zero id.
+     * 
+     * @param payload
+     * @param resolved
+     * @param batchError
+     * @return
+     */
+    protected static KeyValue<UUID, InboundEventContext> createContext(GDecodedEventPayload payload,
+	    Map<String, ResolvedDeviceContext> resolved, Exception batchError) {
+	InboundEventContext inbound = new InboundEventContext(payload);
+	ResolvedDeviceContext device = resolved.get(payload.getDeviceToken());
+	Exception error = batchError;
+	if (device != null && device.getDevice() != null) {
+	    inbound.setDevice(device.getDevice());
+	    inbound.setDeviceAssignments(device.getDeviceAssignments());
+	} else if (device != null && error == null) {
+	    error = device.getError();
+	}
+	inbound.setException(error);
+	UUID uuid = inbound.getDevice() != null ? inbound.getDevice().getId() : new UUID(0, 0);
+	return new KeyValue<>(uuid, inbound);
+    }
+
+    /**
+     * Resolve device context for a batch of tokens on a batch thread.
+     * 
+     * @param tokens
+     * @return
+     */
+    protected Map<String, ResolvedDeviceContext> resolveBatch(List<String> tokens) {
+	final Histogram.Timer batchTime = DEVICE_LOOKUP_BATCH_TIMER.labels(getTenantEngine().buildLabels())
+		.startTimer();
+	try {
+	    return resolveDeviceContext(tokens);
+	} catch (SiteWhereException e) {
+	    throw new CompletionException(e);
+	} finally {
+	    batchTime.close();
+	}
+    }
+
+    /**
+     * Events submitted together for lookup along with the pending result.
+     */
+    private static class LookupBatch {
+
+	/** Buffered events in arrival order */
+	private List<KeyValue<Long, GDecodedEventPayload>> events;
+
+	/** Resolved device context by token */
+	private CompletableFuture<Map<String, ResolvedDeviceContext>> result;
+
+	public LookupBatch(List<KeyValue<Long, GDecodedEventPayload>> events,
+		CompletableFuture<Map<String, ResolvedDeviceContext>> result) {
+	    this.events = events;
+	    this.result = result;
+	}
+
+	public List<KeyValue<Long, GDecodedEventPayload>> getEvents() {
+	    return events;
+	}
+
+	public CompletableFuture<Map<String, ResolvedDeviceContext>> getResult() {
+	    return result;
+	}
+    }
+
+    /**
+     * Looks up devices and their active assignments for a chunk of device tokens
+     * in a single system user context. A failed lookup only affects its own token.
+     */
+    private class DeviceLookupProcessor extends SystemUserCallable<Map<String, ResolvedDeviceContext>> {
+
+	private List<String> tokens;
+
+	public DeviceLookupProcessor(ITenantEngineLifecycleComponent component, List<String> tokens) {
+	    super(component);
+	    this.tokens = tokens;
+	}
+
+	/*
+	 * @see com.sitewhere.microservice.security.SystemUserCallable#runAsSystemUser()
+	 */
+	@Override
+	public Map<String, ResolvedDeviceContext> runAsSystemUser() throws SiteWhereException {
+	    Map<String, ResolvedDeviceContext> resolved = new HashMap<>();
+	    for (String token : tokens) {
+		try {
+		    IDevice device = lookupDevice(token);
+		    resolved.put(token,
+			    device != null ? new ResolvedDeviceContext(device, lookupAssignments(device)) : null);
+		} catch (SiteWhereException e) {
+		    getLogger().error("Unable to process device lookup for token '" + token + "'.", e);
+		    resolved.put(token, ResolvedDeviceContext.failed(e));
+		}
+	    }
+	    return resolved;
+	}
+
+	/**
+	 * Look up device by token.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected IDevice lookupDevice(String token) throws SiteWhereException {
+	    final Histogram.Timer deviceLookupTime = DEVICE_LOOKUP_TIMER.labels(getTenantEngine().buildLabels())
+		    .startTimer();
+	    try {
+		return getDeviceManagement().getDeviceByToken(token);
+	    } finally {
+		deviceLookupTime.close();
+	    }
+	}
+
+	/**
+	 * Look up active assignments for a device. Failures are logged and result in
+	 * an empty list so that other devices in the chunk are not affected.
+	 * 
+	 * @param device
+	 * @return
+	 */
+	protected List<? extends IDeviceAssignment> lookupAssignments(IDevice device) {
+	    final Histogram.Timer assignmentLookupTime = ASSIGNMENT_LOOKUP_TIMER.labels(getTenantEngine().buildLabels())
+		    .startTimer();
+	    try {
+		return getDeviceManagement().getActiveDeviceAssignments(device.getId());
+	    } catch (SiteWhereException e) {
+		getLogger().error("Unable to process device assignment lookup.", e);
+		return new ArrayList<>();
+	    } finally {
+		assignmentLookupTime.close();
+	    }
+	}
+    }
+
+    /** Used for naming device lookup threads */
+    private class DeviceLookupThreadFactory implements ThreadFactory {
+
+	/** Prefix for thread names */
+	private String prefix;
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public DeviceLookupThreadFactory(String prefix) {
+	    this.prefix = prefix;
+	}
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, prefix + " " + counter.incrementAndGet());
+	}
+    }
+
+    /**
+     * Get inbound processing configuration.
+     * 
+     * @return
+     */
+    protected IInboundProcessingConfiguration getConfiguration() {
+	return configuration;
+    }
+
+    protected ExecutorService getLookupExecutor() {
+	return lookupExecutor;
+    }
+
+    protected DeviceTokenBatchResolver getResolver() {
+	return resolver;
+    }
+
+    protected DeviceContextCache getDeviceContextCache() {
+	return deviceContextCache;
+    }
+
+    protected UnregisteredTokenCache getUnregisteredTokenCache() {
+	return unregisteredTokenCache;
+    }
+
+    /**
+     * Get device management implementation.
+     * 
+     * @return
+     */
+    protected IDeviceManagement getDeviceManagement() {
+	return ((IInboundProcessingMicroservice) getTenantEngine().getMicroservice()).getDeviceManagement();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.inbound.kafka;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Resolves the device context (device and active assignments) for a batch of
+ * device tokens. Tokens are de-duplicated so that each distinct token is looked
+ * up exactly once per batch, then striped into chunks by token hash which are
+ * resolved concurrently on the supplied executor. A given token always lands
+ * in the same stripe, so the work for a token is never split across chunks.
+ */
+public abstract class DeviceTokenBatchResolver {
+
+    /** Executor used for concurrent lookups */
+    private ExecutorService executor;
+
+    /** Maximum number of chunks resolved concurrently */
+    private int concurrency;
+
+    public DeviceTokenBatchResolver(ExecutorService executor, int concurrency) {
+	this.executor = executor;
+	this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Create a task that resolves the device context for a chunk of distinct
+     * tokens. Tokens that do not resolve to a device should map to null.
+     * 
+     * @param tokens
+     * @return
+     */
+    protected abstract Callable<Map<String, ResolvedDeviceContext>> createLookupTask(List<String> tokens);
+
+    /**
+     * Resolve device context for all tokens in a batch. The returned map contains
+     * an entry for every distinct token with a null value for unregistered
+     * tokens.
+     * 
+     * @param tokens
+     * @return
+     * @throws SiteWhereException
+     */
+    public Map<String, ResolvedDeviceContext> resolve(Collection<String> tokens) throws SiteWhereException {
+	Set<String> distinct = new LinkedHashSet<>(tokens);
+	Map<String, ResolvedDeviceContext> devices = new HashMap<>();
+	if (distinct.isEmpty()) {
+	    return devices;
+	}
+
+	// Resolve small batches on the calling thread.
+	List<List<String>> chunks = stripe(distinct, getConcurrency());
+	if (chunks.size() == 1) {
+	    try {
+		devices.putAll(createLookupTask(chunks.get(0)).call());
+		return devices;
+	    } catch (SiteWhereException e) {
+		throw e;
+	    } catch (Exception e) {
+		throw new SiteWhereException("Unable to resolve devices for batch.", e);
+	    }
+	}
+
+	List<Future<Map<String, ResolvedDeviceContext>>> futures = new ArrayList<>();
+	for (List<String> chunk : chunks) {
+	    futures.add(getExecutor().submit(createLookupTask(chunk)));
+	}
+	try {
+	    for (Future<Map<String, ResolvedDeviceContext>> future : futures) {
+		devices.putAll(future.get());
+	    }
+	    return devices;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while resolving devices for batch.", e);
+	} catch (ExecutionException e) {
+	    throw new SiteWhereException("Unable to resolve devices for batch.", e.getCause());
+	} finally {
+	    for (Future<Map<String, ResolvedDeviceContext>> future : futures) {
+		future.cancel(true);
+	    }
+	}
+    }
+
+    /**
+     * Split tokens into at most the given number of chunks based on token hash.
+     * Empty stripes are omitted.
+     * 
+     * @param tokens
+     * @param count
+     * @return
+     */
+    protected static List<List<String>> stripe(Collection<String> tokens, int count) {
+	List<List<String>> stripes = new ArrayList<>(count);
+	for (int i = 0; i < count; i++) {
+	    stripes.add(new ArrayList<>());
+	}
+	for (String token : tokens) {
+	    stripes.get(Math.floorMod(token.hashCode(), count)).add(token);
+	}
+	List<List<String>> result = new ArrayList<>();
+	for (List<String> stripe : stripes) {
+	    if (!stripe.isEmpty()) {
+		result.add(stripe);
+	    }
+	}
+	return result;
+    }
+
+    protected ExecutorService getExecutor() {
+	return executor;
+    }
+
+    protected int getConcurrency() {
+	return concurrency;
+    }
+}
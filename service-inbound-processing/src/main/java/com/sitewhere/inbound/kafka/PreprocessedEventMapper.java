@@ -8,13 +8,18 @@
 package com.sitewhere.inbound.kafka;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 import org.apache.kafka.streams.KeyValue;
 
 import com.sitewhere.grpc.event.EventModelConverter;
 import com.sitewhere.grpc.model.DeviceEventModel.GDecodedEventPayload;
+import com.sitewhere.grpc.model.DeviceEventModel.GDeviceEventContext;
 import com.sitewhere.grpc.model.DeviceEventModel.GPreprocessedEventPayload;
 import com.sitewhere.inbound.spi.processing.IInboundProcessingConfiguration;
 import com.sitewhere.microservice.kafka.KeyValueMapperComponent;
@@ -25,7 +30,9 @@ import com.sitewhere.spi.device.IDeviceAssignment;
 
 /**
  * Uses list of device assignments to build a list of preprocessed event
- * payloads.
+ * payloads. The gRPC event context for each assignment is built once and
+ * reused for later events until the device or assignment is updated, so each
+ * event only adds its own payload to a shared context.
  */
 public class PreprocessedEventMapper
 	extends KeyValueMapperComponent<UUID, InboundEventContext, KeyValue<UUID, List<GPreprocessedEventPayload>>> {
@@ -33,23 +40,35 @@ public class PreprocessedEventMapper
     /** Configuration */
     private IInboundProcessingConfiguration configuration;
 
+    /** Cached gRPC event context by assignment id */
+    private Map<UUID, CachedEventContext> eventContexts;
+
     public PreprocessedEventMapper(IInboundProcessingConfiguration configuration) {
 	this.configuration = configuration;
+	this.eventContexts = new LinkedHashMap<UUID, CachedEventContext>(16, 0.75f, true) {
+
+	    private static final long serialVersionUID = 2254407461437312262L;
+
+	    /*
+	     * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+	     */
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<UUID, CachedEventContext> eldest) {
+		return size() > getConfiguration().getDeviceContextCacheSize();
+	    }
+	};
     }
 
     /**
-     * Build preprocessed payload by adding assignment details to decoded event.
+     * Build gRPC event context from device and assignment details.
      * 
      * @param device
      * @param assignment
-     * @param payload
      * @return
      * @throws SiteWhereException
      */
-    protected GPreprocessedEventPayload buildPreProcessedEventPayload(IDevice device, IDeviceAssignment assignment,
-	    GDecodedEventPayload payload) throws SiteWhereException {
-	GPreprocessedEventPayload.Builder preproc = GPreprocessedEventPayload.newBuilder();
-
+    protected GDeviceEventContext buildEventContext(IDevice device, IDeviceAssignment assignment)
+	    throws SiteWhereException {
 	DeviceEventContext context = new DeviceEventContext();
 	context.setDeviceToken(device.getToken());
 	context.setDeviceId(device.getId());
@@ -63,7 +82,47 @@ public class PreprocessedEventMapper
 	context.setAssetId(assignment.getAssetId());
 	context.setDeviceAssignmentStatus(assignment.getStatus());
 	context.setDeviceAssignmentMetadata(assignment.getMetadata());
-	preproc.setContext(EventModelConverter.asGrpcDeviceEventContext(context));
+	return EventModelConverter.asGrpcDeviceEventContext(context);
+    }
+
+    /**
+     * Get gRPC event context for a device assignment, building it only if not
+     * cached or if the device or assignment has been updated since it was cached.
+     * 
+     * @param device
+     * @param assignment
+     * @return
+     * @throws SiteWhereException
+     */
+    protected GDeviceEventContext getEventContext(IDevice device, IDeviceAssignment assignment)
+	    throws SiteWhereException {
+	CachedEventContext cached;
+	synchronized (eventContexts) {
+	    cached = eventContexts.get(assignment.getId());
+	}
+	if (cached != null && cached.isCurrent(device, assignment)) {
+	    return cached.getContext();
+	}
+	GDeviceEventContext context = buildEventContext(device, assignment);
+	synchronized (eventContexts) {
+	    eventContexts.put(assignment.getId(), new CachedEventContext(device, assignment, context));
+	}
+	return context;
+    }
+
+    /**
+     * Build preprocessed payload by adding assignment details to decoded event.
+     * 
+     * @param device
+     * @param assignment
+     * @param payload
+     * @return
+     * @throws SiteWhereException
+     */
+    protected GPreprocessedEventPayload buildPreProcessedEventPayload(IDevice device, IDeviceAssignment assignment,
+	    GDecodedEventPayload payload) throws SiteWhereException {
+	GPreprocessedEventPayload.Builder preproc = GPreprocessedEventPayload.newBuilder();
+	preproc.setContext(getEventContext(device, assignment));
 	preproc.setEvent(payload.getEvent());
 
 	return preproc.build();
@@ -98,4 +157,47 @@ public class PreprocessedEventMapper
     protected IInboundProcessingConfiguration getConfiguration() {
 	return configuration;
     }
+
+    /**
+     * Event context along with the device and assignment versions it was built
+     * from.
+     */
+    private static class CachedEventContext {
+
+	/** Device id */
+	private UUID deviceId;
+
+	/** Device last updated */
+	private Date deviceUpdated;
+
+	/** Assignment last updated */
+	private Date assignmentUpdated;
+
+	/** gRPC event context */
+	private GDeviceEventContext context;
+
+	public CachedEventContext(IDevice device, IDeviceAssignment assignment, GDeviceEventContext context) {
+	    this.deviceId = device.getId();
+	    this.deviceUpdated = device.getUpdatedDate();
+	    this.assignmentUpdated = assignment.getUpdatedDate();
+	    this.context = context;
+	}
+
+	/**
+	 * Indicates whether context was built from the current version of the
+	 * device and assignment.
+	 * 
+	 * @param device
+	 * @param assignment
+	 * @return
+	 */
+	public boolean isCurrent(IDevice device, IDeviceAssignment assignment) {
+	    return deviceId.equals(device.getId()) && Objects.equals(deviceUpdated, device.getUpdatedDate())
+		    && Objects.equals(assignmentUpdated, assignment.getUpdatedDate());
+	}
+
+	public GDeviceEventContext getContext() {
+	    return context;
+	}
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.inbound.kafka;
+
+import java.util.List;
+
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceAssignment;
+
+/**
+ * Device and its active assignments as resolved for a device token. A context
+ * created with {@link #failed(Exception)} records a lookup that could not be
+ * completed for the token and carries no device.
+ */
+public class ResolvedDeviceContext {
+
+    /** Device */
+    private IDevice device;
+
+    /** Active device assignments */
+    private List<? extends IDeviceAssignment> deviceAssignments;
+
+    /** Error if lookup failed */
+    private Exception error;
+
+    public ResolvedDeviceContext(IDevice device, List<? extends IDeviceAssignment> deviceAssignments) {
+	this.device = device;
+	this.deviceAssignments = deviceAssignments;
+    }
+
+    /**
+     * Create context for a token whose lookup failed.
+     * 
+     * @param error
+     * @return
+     */
+    public static ResolvedDeviceContext failed(Exception error) {
+	ResolvedDeviceContext context = new ResolvedDeviceContext(null, null);
+	context.error = error;
+	return context;
+    }
+
+    public IDevice getDevice() {
+	return device;
+    }
+
+    public List<? extends IDeviceAssignment> getDeviceAssignments() {
+	return deviceAssignments;
+    }
+
+    public Exception getError() {
+	return error;
+    }
+}
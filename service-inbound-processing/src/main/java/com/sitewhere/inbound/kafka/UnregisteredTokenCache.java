@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.inbound.kafka;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of device tokens that recently failed to resolve to a device.
+ * Events for remembered tokens are routed as unregistered without a device
+ * lookup. Tokens are forgotten when device management signals that the device
+ * was created or its context changed, when the least recently seen token is
+ * evicted to make room, or after a maximum age in case a signal is missed.
+ * 
+ * As with {@link DeviceContextCache}, a token is only remembered if the lookup
+ * that failed to find it started after the token was last invalidated.
+ */
+public class UnregisteredTokenCache {
+
+    /** Maximum number of tokens */
+    private int maxSize;
+
+    /** Maximum age of a token in milliseconds */
+    private long maxAgeMs;
+
+    /** Tokens found to be unregistered or invalidated, in access order */
+    private Map<String, Entry> tokens;
+
+    /** Incremented for each invalidation */
+    private long generation;
+
+    public UnregisteredTokenCache(int maxSize, long maxAgeMs) {
+	this.maxSize = maxSize;
+	this.maxAgeMs = maxAgeMs;
+	this.tokens = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+	    private static final long serialVersionUID = 6027470271640183153L;
+
+	    /*
+	     * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+	     */
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+		return size() > getMaxSize();
+	    }
+	};
+    }
+
+    /**
+     * Indicates whether a token is known to be unregistered.
+     * 
+     * @param token
+     * @return
+     */
+    public synchronized boolean contains(String token) {
+	Entry entry = tokens.get(token);
+	if (entry == null) {
+	    return false;
+	}
+	if ((System.currentTimeMillis() - entry.created) > getMaxAgeMs()) {
+	    tokens.remove(token);
+	    return false;
+	}
+	return entry.unregistered;
+    }
+
+    /**
+     * Get the current generation. Capture it before starting a lookup and pass it
+     * to {@link #put(String, long)} if the token is not found.
+     * 
+     * @return
+     */
+    public synchronized long getGeneration() {
+	return generation;
+    }
+
+    /**
+     * Remember a token as unregistered unless the token was invalidated after the
+     * lookup started.
+     * 
+     * @param token
+     * @param since
+     *            generation captured before the lookup started
+     */
+    public synchronized void put(String token, long since) {
+	if (getMaxSize() <= 0) {
+	    return;
+	}
+	Entry existing = tokens.get(token);
+	if (existing != null && !existing.unregistered && existing.generation > since) {
+	    return;
+	}
+	tokens.put(token, new Entry(true, System.currentTimeMillis(), generation));
+    }
+
+    /**
+     * Forget a token (usually because device management signaled that the
+     * device was created).
+     * 
+     * @param token
+     */
+    public synchronized void invalidate(String token) {
+	generation++;
+	if (getMaxSize() > 0) {
+	    tokens.put(token, new Entry(false, System.currentTimeMillis(), generation));
+	}
+    }
+
+    /**
+     * Forget all tokens.
+     */
+    public synchronized void clear() {
+	tokens.clear();
+    }
+
+    public int getMaxSize() {
+	return maxSize;
+    }
+
+    public long getMaxAgeMs() {
+	return maxAgeMs;
+    }
+
+    /**
+     * Remembered token with creation timestamp. Invalidation markers are not
+     * unregistered.
+     */
+    private static class Entry {
+
+	/** Indicates token was found to be unregistered */
+	private final boolean unregistered;
+
+	/** Time entry was created */
+	private final long created;
+
+	/** Generation when entry was created */
+	private final long generation;
+
+	public Entry(boolean unregistered, long created, long generation) {
+	    this.unregistered = unregistered;
+	    this.created = created;
+	    this.generation = generation;
+	}
+    }
+}
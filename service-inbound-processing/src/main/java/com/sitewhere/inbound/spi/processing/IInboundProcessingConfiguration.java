@@ -14,8 +14,65 @@ public interface IInboundProcessingConfiguration {
 
     /**
      * Get number of threads used for concurrent processing of event payloads.
+     * Device lookups from all stream tasks share a pool of this size.
      * 
      * @return
      */
     int getProcessingThreadCount();
-}
\ No newline at end of file
+
+    /**
+     * Get maximum number of decoded events buffered before device lookups are
+     * resolved as a batch.
+     * 
+     * @return
+     */
+    int getDeviceLookupBatchSize();
+
+    /**
+     * Get maximum number of milliseconds decoded events are buffered before device
+     * lookups are resolved as a batch.
+     * 
+     * @return
+     */
+    long getDeviceLookupBatchIntervalMs();
+
+    /**
+     * Get maximum number of device lookup batches submitted but not yet forwarded
+     * for each stream task. The stream thread waits when the limit is reached.
+     * 
+     * @return
+     */
+    int getDeviceLookupMaxInFlightBatches();
+
+    /**
+     * Get maximum number of device tokens for which resolved device context is
+     * cached. Also bounds the number of assignments with a cached event context.
+     * 
+     * @return
+     */
+    int getDeviceContextCacheSize();
+
+    /**
+     * Get maximum number of milliseconds resolved device context is cached before
+     * it is looked up again.
+     * 
+     * @return
+     */
+    long getDeviceContextCacheTtlMs();
+
+    /**
+     * Get maximum number of recently unregistered device tokens remembered so that
+     * repeat events are routed without a device lookup.
+     * 
+     * @return
+     */
+    int getUnregisteredTokenCacheSize();
+
+    /**
+     * Get maximum number of milliseconds a token is remembered as unregistered
+     * before it is looked up again.
+     * 
+     * @return
+     */
+    long getUnregisteredTokenCacheTtlMs();
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.inbound.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.streams.KeyValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.grpc.model.DeviceEventModel.GDecodedEventPayload;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Test cases for batched device lookup in {@link DeviceTokenBatchResolver} and
+ * {@link DeviceLookupTransformerSupplier}.
+ */
+public class DeviceLookupBatchingTests {
+
+    /** Number of concurrent chunks */
+    private static final int CONCURRENCY = 4;
+
+    /** Executor for lookups */
+    private ExecutorService executor;
+
+    /** Devices known to the simulated device management */
+    private Map<String, Device> devices = new HashMap<>();
+
+    /** Number of lookups by token */
+    private Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+
+    /** Tokens whose lookups fail */
+    private List<String> failing = new ArrayList<>();
+
+    @Before
+    public void setup() {
+	this.executor = Executors.newFixedThreadPool(CONCURRENCY);
+	for (int i = 0; i < 100; i++) {
+	    Device device = new Device();
+	    device.setId(UUID.randomUUID());
+	    device.setToken("device-" + i);
+	    devices.put(device.getToken(), device);
+	}
+    }
+
+    @After
+    public void teardown() {
+	executor.shutdownNow();
+    }
+
+    @Test
+    public void testEachTokenLookedUpOnce() throws Exception {
+	List<String> tokens = new ArrayList<>();
+	for (int i = 0; i < 1000; i++) {
+	    tokens.add("device-" + (i % 100));
+	}
+	Map<String, ResolvedDeviceContext> resolved = createResolver().resolve(tokens);
+	assertEquals(100, resolved.size());
+	for (int i = 0; i < 100; i++) {
+	    String token = "device-" + i;
+	    assertEquals(1, lookups.get(token).get());
+	    assertSame(devices.get(token), resolved.get(token).getDevice());
+	}
+    }
+
+    @Test
+    public void testUnregisteredTokensResolveToNull() throws Exception {
+	Map<String, ResolvedDeviceContext> resolved = createResolver()
+		.resolve(Arrays.asList("device-1", "unknown", "device-2"));
+	assertEquals(3, resolved.size());
+	assertTrue(resolved.containsKey("unknown"));
+	assertNull(resolved.get("unknown"));
+	assertNotNull(resolved.get("device-1"));
+	assertNotNull(resolved.get("device-2"));
+    }
+
+    @Test
+    public void testStripesKeepArrivalOrder() throws Exception {
+	List<String> tokens = new ArrayList<>();
+	for (int i = 99; i >= 0; i--) {
+	    tokens.add("device-" + i);
+	}
+	List<List<String>> stripes = DeviceTokenBatchResolver.stripe(tokens, CONCURRENCY);
+	List<String> all = new ArrayList<>();
+	for (List<String> stripe : stripes) {
+	    int stripeIndex = Math.floorMod(stripe.get(0).hashCode(), CONCURRENCY);
+	    for (String token : stripe) {
+		assertEquals(stripeIndex, Math.floorMod(token.hashCode(), CONCURRENCY));
+	    }
+	    List<String> expected = new ArrayList<>(tokens);
+	    expected.retainAll(stripe);
+	    assertEquals(expected, stripe);
+	    all.addAll(stripe);
+	}
+	assertEquals(tokens.size(), all.size());
+	assertTrue(all.containsAll(tokens));
+    }
+
+    @Test
+    public void testChunksResolvedConcurrently() throws Exception {
+	List<String> tokens = new ArrayList<>(devices.keySet());
+	int chunks = DeviceTokenBatchResolver.stripe(tokens, CONCURRENCY).size();
+	CountDownLatch started = new CountDownLatch(chunks);
+	DeviceTokenBatchResolver resolver = new DeviceTokenBatchResolver(executor, CONCURRENCY) {
+
+	    @Override
+	    protected Callable<Map<String, ResolvedDeviceContext>> createLookupTask(List<String> chunk) {
+		return () -> {
+		    // Completes only if every chunk is running at the same time.
+		    started.countDown();
+		    if (!started.await(10, TimeUnit.SECONDS)) {
+			throw new SiteWhereException("Chunks were not resolved concurrently.");
+		    }
+		    return lookup(chunk);
+		};
+	    }
+	};
+	assertEquals(devices.size(), resolver.resolve(tokens).size());
+    }
+
+    @Test
+    public void testChunkFailureFailsBatch() throws Exception {
+	DeviceTokenBatchResolver resolver = new DeviceTokenBatchResolver(executor, CONCURRENCY) {
+
+	    @Override
+	    protected Callable<Map<String, ResolvedDeviceContext>> createLookupTask(List<String> chunk) {
+		return () -> {
+		    throw new IllegalStateException("Lookup unavailable.");
+		};
+	    }
+	};
+	try {
+	    resolver.resolve(new ArrayList<>(devices.keySet()));
+	    fail("Expected batch to fail.");
+	} catch (SiteWhereException e) {
+	    assertTrue(e.getCause() instanceof IllegalStateException);
+	}
+    }
+
+    @Test
+    public void testFailedTokenDoesNotAffectOthers() throws Exception {
+	failing.add("device-5");
+	Map<String, ResolvedDeviceContext> resolved = createResolver()
+		.resolve(Arrays.asList("device-4", "device-5", "device-6"));
+	assertNotNull(resolved.get("device-5").getError());
+	assertNull(resolved.get("device-5").getDevice());
+	assertNull(resolved.get("device-4").getError());
+	assertNull(resolved.get("device-6").getError());
+
+	List<GDecodedEventPayload> events = Arrays.asList(payload("device-4"), payload("device-5"),
+		payload("device-6"), payload("unknown"));
+	List<KeyValue<UUID, InboundEventContext>> contexts = new ArrayList<>();
+	for (GDecodedEventPayload event : events) {
+	    contexts.add(DeviceLookupTransformerSupplier.createContext(event, resolved, null));
+	}
+
+	// Contexts are created in arrival order.
+	for (int i = 0; i < events.size(); i++) {
+	    assertSame(events.get(i), contexts.get(i).value.getDecodedEventPayload());
+	}
+	assertEquals(devices.get("device-4").getId(), contexts.get(0).key);
+	assertNull(contexts.get(0).value.getException());
+	assertEquals(new UUID(0, 0), contexts.get(1).key);
+	assertNull(contexts.get(1).value.getDevice());
+	assertSame(resolved.get("device-5").getError(), contexts.get(1).value.getException());
+	assertEquals(devices.get("device-6").getId(), contexts.get(2).key);
+	assertNull(contexts.get(2).value.getException());
+	assertEquals(new UUID(0, 0), contexts.get(3).key);
+	assertNull(contexts.get(3).value.getException());
+    }
+
+    @Test
+    public void testBatchErrorAppliesToAllEvents() throws Exception {
+	SiteWhereException error = new SiteWhereException("Batch failed.");
+	Map<String, ResolvedDeviceContext> resolved = Collections.emptyMap();
+	for (String token : Arrays.asList("device-1", "device-2")) {
+	    KeyValue<UUID, InboundEventContext> context = DeviceLookupTransformerSupplier.createContext(payload(token),
+		    resolved, error);
+	    assertEquals(new UUID(0, 0), context.key);
+	    assertSame(error, context.value.getException());
+	}
+    }
+
+    /**
+     * Create resolver backed by the simulated device management.
+     * 
+     * @return
+     */
+    protected DeviceTokenBatchResolver createResolver() {
+	return new DeviceTokenBatchResolver(executor, CONCURRENCY) {
+
+	    @Override
+	    protected Callable<Map<String, ResolvedDeviceContext>> createLookupTask(List<String> chunk) {
+		return () -> lookup(chunk);
+	    }
+	};
+    }
+
+    /**
+     * Look up a chunk of tokens, recording a failed context for failing tokens.
+     * 
+     * @param chunk
+     * @return
+     */
+    protected Map<String, ResolvedDeviceContext> lookup(List<String> chunk) {
+	Map<String, ResolvedDeviceContext> resolved = new HashMap<>();
+	for (String token : chunk) {
+	    lookups.computeIfAbsent(token, key -> new AtomicInteger()).incrementAndGet();
+	    if (failing.contains(token)) {
+		resolved.put(token, ResolvedDeviceContext.failed(new SiteWhereException("Lookup failed.")));
+		continue;
+	    }
+	    Device device = devices.get(token);
+	    resolved.put(token, device != null ? new ResolvedDeviceContext(device, new ArrayList<>()) : null);
+	}
+	return resolved;
+    }
+
+    /**
+     * Create a decoded event payload for a device token.
+     * 
+     * @param token
+     * @return
+     */
+    protected GDecodedEventPayload payload(String token) {
+	return GDecodedEventPayload.newBuilder().setDeviceToken(token).setSourceId("test").build();
+    }
+}
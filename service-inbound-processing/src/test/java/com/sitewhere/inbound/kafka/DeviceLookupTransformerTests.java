@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.inbound.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.Punctuator;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.grpc.model.DeviceEventModel.GDecodedEventPayload;
+import com.sitewhere.inbound.configuration.InboundProcessingTenantConfiguration;
+import com.sitewhere.rest.model.device.Device;
+
+/**
+ * Test cases for the transformer created by
+ * {@link DeviceLookupTransformerSupplier}: forwarding order, the limit on
+ * batches in flight, recovery of buffered events and interruption of lookups
+ * on close.
+ */
+public class DeviceLookupTransformerTests {
+
+    /** Maximum time to wait for asynchronous results */
+    private static final long TIMEOUT_MS = 10000;
+
+    /** Configuration */
+    private InboundProcessingTenantConfiguration configuration;
+
+    /** Buffer store contents */
+    private NavigableMap<Long, GDecodedEventPayload> store = new ConcurrentSkipListMap<>();
+
+    /** Events forwarded by the transformer */
+    private List<InboundEventContext> forwarded = Collections.synchronizedList(new ArrayList<>());
+
+    /** Tokens for each batch resolved */
+    private List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    /** When set, batch resolution waits for it to be released */
+    private CountDownLatch gate;
+
+    /** Released when a batch starts resolving */
+    private CountDownLatch resolving = new CountDownLatch(1);
+
+    /** Released when a batch lookup is interrupted */
+    private CountDownLatch interrupted = new CountDownLatch(1);
+
+    /** Punctuator scheduled by the transformer */
+    private Punctuator punctuator;
+
+    /** Transformer under test */
+    private Transformer<String, GDecodedEventPayload, KeyValue<UUID, InboundEventContext>> transformer;
+
+    @Before
+    public void setup() {
+	this.configuration = new InboundProcessingTenantConfiguration();
+	configuration.setDeviceLookupBatchSize(3);
+	configuration.setDeviceLookupMaxInFlightBatches(4);
+    }
+
+    @After
+    public void teardown() {
+	if (gate != null) {
+	    gate.countDown();
+	}
+	if (transformer != null) {
+	    transformer.close();
+	}
+    }
+
+    @Test
+    public void testForwardsInArrivalOrder() throws Exception {
+	start();
+	for (int i = 0; i < 10; i++) {
+	    transformer.transform("key", createPayload("device-" + (i % 3), i));
+	}
+	awaitForwarded(10);
+
+	for (int i = 0; i < 10; i++) {
+	    InboundEventContext context = forwarded.get(i);
+	    assertEquals("source-" + i, context.getDecodedEventPayload().getSourceId());
+	    assertEquals("device-" + (i % 3), context.getDevice().getToken());
+	}
+	assertTrue(store.isEmpty());
+    }
+
+    @Test
+    public void testBlocksAtInFlightLimit() throws Exception {
+	configuration.setDeviceLookupBatchSize(1);
+	configuration.setDeviceLookupMaxInFlightBatches(1);
+	this.gate = new CountDownLatch(1);
+	start();
+
+	// First event is submitted and its lookup waits on the gate.
+	transformer.transform("key", createPayload("device-0", 0));
+	assertTrue(resolving.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+	// Second event can not be submitted until the first batch is forwarded.
+	Thread second = new Thread(() -> transformer.transform("key", createPayload("device-1", 1)));
+	second.start();
+	awaitWaiting(second);
+	assertEquals(1, batches.size());
+	assertTrue(forwarded.isEmpty());
+
+	gate.countDown();
+	second.join(TIMEOUT_MS);
+	assertFalse(second.isAlive());
+	assertEquals("source-0", forwarded.get(0).getDecodedEventPayload().getSourceId());
+
+	awaitForwarded(2);
+	assertEquals("source-1", forwarded.get(1).getDecodedEventPayload().getSourceId());
+	assertEquals(2, batches.size());
+    }
+
+    @Test
+    public void testRecoversBufferedEvents() throws Exception {
+	configuration.setDeviceLookupBatchSize(4);
+
+	// Events consumed but not forwarded by a previous instance.
+	store.put(5L, createPayload("device-0", 0));
+	store.put(6L, createPayload("device-1", 1));
+	store.put(7L, createPayload("device-0", 2));
+	start();
+
+	transformer.transform("key", createPayload("device-2", 3));
+	awaitForwarded(4);
+
+	for (int i = 0; i < 4; i++) {
+	    assertEquals("source-" + i, forwarded.get(i).getDecodedEventPayload().getSourceId());
+	}
+	assertEquals(1, batches.size());
+	assertEquals(4, batches.get(0).size());
+	assertTrue(store.isEmpty());
+    }
+
+    @Test
+    public void testCloseInterruptsLookup() throws Exception {
+	configuration.setDeviceLookupBatchSize(1);
+	this.gate = new CountDownLatch(1);
+	start();
+
+	transformer.transform("key", createPayload("device-0", 0));
+	assertTrue(resolving.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+	transformer.close();
+	assertTrue(interrupted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+	// Event stays buffered so it is replayed on recovery.
+	assertTrue(forwarded.isEmpty());
+	assertEquals(1, store.size());
+    }
+
+    /**
+     * Create and initialize the transformer.
+     */
+    protected void start() {
+	this.transformer = new TestDeviceLookupTransformerSupplier().get();
+	transformer.init(createContext());
+    }
+
+    /**
+     * Punctuate until the given number of events have been forwarded.
+     * 
+     * @param count
+     * @throws InterruptedException
+     */
+    protected void awaitForwarded(int count) throws InterruptedException {
+	long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+	while (forwarded.size() < count) {
+	    assertTrue("Timed out waiting for events to be forwarded.", System.currentTimeMillis() < deadline);
+	    punctuator.punctuate(System.currentTimeMillis());
+	    Thread.sleep(10);
+	}
+    }
+
+    /**
+     * Wait for a thread to block.
+     * 
+     * @param thread
+     * @throws InterruptedException
+     */
+    protected void awaitWaiting(Thread thread) throws InterruptedException {
+	long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+	while (thread.getState() != Thread.State.WAITING) {
+	    assertTrue("Timed out waiting for thread to block.", System.currentTimeMillis() < deadline);
+	    Thread.sleep(10);
+	}
+    }
+
+    protected GDecodedEventPayload createPayload(String token, int index) {
+	return GDecodedEventPayload.newBuilder().setDeviceToken(token).setSourceId("source-" + index).build();
+    }
+
+    /**
+     * Create processor context that supplies the buffer store, captures the
+     * punctuator and records forwarded events.
+     * 
+     * @return
+     */
+    protected ProcessorContext createContext() {
+	return (ProcessorContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+		new Class<?>[] { ProcessorContext.class }, (proxy, method, args) -> {
+		    switch (method.getName()) {
+		    case "getStateStore":
+			return createStore();
+		    case "schedule":
+			punctuator = (Punctuator) args[args.length - 1];
+			return null;
+		    case "forward":
+			forwarded.add((InboundEventContext) args[1]);
+			return null;
+		    default:
+			return null;
+		    }
+		});
+    }
+
+    /**
+     * Create key value store backed by the test map.
+     * 
+     * @return
+     */
+    protected KeyValueStore<?, ?> createStore() {
+	return (KeyValueStore<?, ?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+		new Class<?>[] { KeyValueStore.class }, (proxy, method, args) -> {
+		    switch (method.getName()) {
+		    case "put":
+			store.put((Long) args[0], (GDecodedEventPayload) args[1]);
+			return null;
+		    case "delete":
+			return store.remove(args[0]);
+		    case "range":
+			return new MapIterator(store.subMap((Long) args[0], true, (Long) args[1], true));
+		    case "all":
+			return new MapIterator(store);
+		    default:
+			throw new UnsupportedOperationException(method.getName());
+		    }
+		});
+    }
+
+    /**
+     * Supplier that resolves devices locally.
+     */
+    private class TestDeviceLookupTransformerSupplier extends DeviceLookupTransformerSupplier {
+
+	public TestDeviceLookupTransformerSupplier() {
+	    super(configuration);
+	}
+
+	/*
+	 * @see com.sitewhere.inbound.kafka.DeviceLookupTransformerSupplier#
+	 * resolveBatch(java.util.List)
+	 */
+	@Override
+	protected Map<String, ResolvedDeviceContext> resolveBatch(List<String> tokens) {
+	    batches.add(new ArrayList<>(tokens));
+	    resolving.countDown();
+	    if (gate != null) {
+		try {
+		    gate.await();
+		} catch (InterruptedException e) {
+		    interrupted.countDown();
+		    throw new CompletionException(e);
+		}
+	    }
+	    Map<String, ResolvedDeviceContext> resolved = new HashMap<>();
+	    for (String token : tokens) {
+		Device device = new Device();
+		device.setId(UUID.randomUUID());
+		device.setToken(token);
+		resolved.put(token, new ResolvedDeviceContext(device, new ArrayList<>()));
+	    }
+	    return resolved;
+	}
+
+	/*
+	 * @see com.sitewhere.inbound.kafka.DeviceLookupTransformerSupplier#
+	 * onBatchForwarded(int)
+	 */
+	@Override
+	protected void onBatchForwarded(int events) {
+	}
+    }
+
+    /**
+     * Iterates over a snapshot of store entries.
+     */
+    private static class MapIterator implements KeyValueIterator<Long, GDecodedEventPayload> {
+
+	/** Entries being iterated */
+	private Iterator<Map.Entry<Long, GDecodedEventPayload>> entries;
+
+	public MapIterator(Map<Long, GDecodedEventPayload> map) {
+	    this.entries = new ArrayList<>(map.entrySet()).iterator();
+	}
+
+	/*
+	 * @see java.util.Iterator#hasNext()
+	 */
+	@Override
+	public boolean hasNext() {
+	    return entries.hasNext();
+	}
+
+	/*
+	 * @see java.util.Iterator#next()
+	 */
+	@Override
+	public KeyValue<Long, GDecodedEventPayload> next() {
+	    Map.Entry<Long, GDecodedEventPayload> entry = entries.next();
+	    return new KeyValue<>(entry.getKey(), entry.getValue());
+	}
+
+	/*
+	 * @see org.apache.kafka.streams.state.KeyValueIterator#close()
+	 */
+	@Override
+	public void close() {
+	}
+
+	/*
+	 * @see org.apache.kafka.streams.state.KeyValueIterator#peekNextKey()
+	 */
+	@Override
+	public Long peekNextKey() {
+	    throw new UnsupportedOperationException();
+	}
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sitewhere.microservice.security.SiteWhereAuthentication;
+import com.sitewhere.microservice.security.UserContext;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Executes API requests for a list of inputs on a shared pool so that bulk REST
+ * calls do not make one remote call after another. The number of requests in
+ * flight for a single call is bounded, and the caller's authentication is
+ * applied to each pooled thread so that tenant and user context are passed
+ * along with the requests.
+ */
+public class ParallelRequests {
+
+    /** Number of threads shared by all bulk calls */
+    private static final int POOL_SIZE = 32;
+
+    /** Pool shared by all bulk calls */
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(POOL_SIZE,
+	    new ParallelRequestsThreadFactory());
+
+    /**
+     * Execute a request for each input, waiting for all to complete. Results are
+     * returned in the same order as the inputs. If any request fails, requests
+     * that have not completed are cancelled and the failure is thrown.
+     *
+     * @param inputs
+     * @param maxConcurrent
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     */
+    public static <I, O> List<O> execute(List<I> inputs, int maxConcurrent, IRequest<I, O> request)
+	    throws SiteWhereException {
+	SiteWhereAuthentication authentication = UserContext.getCurrentUser();
+	Semaphore permits = new Semaphore(Math.max(1, maxConcurrent));
+	List<Future<O>> futures = new ArrayList<>();
+	try {
+	    for (I input : inputs) {
+		permits.acquire();
+		futures.add(POOL.submit(() -> {
+		    SiteWhereAuthentication previous = UserContext.getCurrentUser();
+		    UserContext.setContext(authentication);
+		    try {
+			return request.execute(input);
+		    } finally {
+			UserContext.setContext(previous);
+			permits.release();
+		    }
+		}));
+	    }
+	    List<O> results = new ArrayList<>();
+	    for (Future<O> future : futures) {
+		results.add(future.get());
+	    }
+	    return results;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while executing bulk requests.", e);
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof SiteWhereException) {
+		throw (SiteWhereException) e.getCause();
+	    }
+	    throw new SiteWhereException("Unable to execute bulk requests.", e.getCause());
+	} finally {
+	    for (Future<O> future : futures) {
+		future.cancel(true);
+	    }
+	}
+    }
+
+    /**
+     * Request executed for a single input.
+     *
+     * @param <I>
+     * @param <O>
+     */
+    @FunctionalInterface
+    public static interface IRequest<I, O> {
+
+	public O execute(I input) throws SiteWhereException;
+    }
+
+    /** Used for naming parallel request threads */
+    private static class ParallelRequestsThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, "Parallel API Request " + counter.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+}
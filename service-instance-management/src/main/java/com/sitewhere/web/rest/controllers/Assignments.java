@@ -7,12 +7,14 @@
  */
 package com.sitewhere.web.rest.controllers;
 
+import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -77,6 +79,7 @@ import com.sitewhere.spi.device.command.IDeviceCommand;
 import com.sitewhere.spi.device.event.DeviceEventIndex;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceEventContext;
 import com.sitewhere.spi.device.event.IDeviceMeasurement;
 import com.sitewhere.spi.error.ErrorCode;
@@ -85,6 +88,11 @@ import com.sitewhere.spi.label.ILabel;
 import com.sitewhere.spi.scheduling.request.IScheduledJobCreateRequest;
 import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 import com.sitewhere.spi.search.ISearchResults;
+import com.sitewhere.web.rest.ParallelRequests;
+import com.sitewhere.web.rest.marshaling.DeviceEventExportStream;
+import com.sitewhere.web.rest.marshaling.DeviceEventExportStream.IIndexedEventSource;
+import com.sitewhere.web.rest.view.DownsampleAggregation;
+import com.sitewhere.web.rest.view.MeasurementSeriesDownsampler;
 
 import io.swagger.annotations.Api;
 
@@ -105,6 +113,12 @@ public class Assignments {
     @SuppressWarnings("unused")
     private static Log LOGGER = LogFactory.getLog(Assignments.class);
 
+    /** Maximum assignments queried concurrently for bulk series requests */
+    private static final int BULK_SERIES_MAX_CONCURRENT = 16;
+
+    /** Number of measurements read per chunk when downsampling chart series */
+    private static final int DOWNSAMPLE_CHUNK_SIZE = 1000;
+
     @Inject
     private IInstanceManagementMicroservice<?> microservice;
 
@@ -427,14 +441,42 @@ public class Assignments {
 		Collections.singletonList(assignment.getId()), criteria)).build();
     }
 
+    /**
+     * Export measurement events for a given assignment as newline-delimited JSON.
+     * 
+     * @param token
+     * @param chunkSize
+     * @param startDate
+     * @param endDate
+     * @return
+     * @throws SiteWhereException
+     */
+    @GET
+    @Path("/{token}/measurements/export")
+    @Produces(DeviceEventExportStream.NDJSON)
+    @Operation(summary = "Export assignment measurements", description = "Stream measurements as NDJSON")
+    public Response exportMeasurementsForAssignment(
+	    @Parameter(description = "Assignment token", required = true) @PathParam("token") String token,
+	    @Parameter(description = "Events per chunk") @QueryParam("chunkSize") @DefaultValue("500") int chunkSize,
+	    @Parameter(description = "Start date", required = false) @QueryParam("startDate") String startDate,
+	    @Parameter(description = "End date", required = false) @QueryParam("endDate") String endDate)
+	    throws SiteWhereException {
+	return exportEvents(token, getDeviceEventManagement()::listDeviceMeasurementsForIndex, chunkSize, startDate,
+		endDate);
+    }
+
     /**
      * List measurement events for multiple assignments as chart series data.
+     * Assignments are resolved and queried in parallel with a bounded number of
+     * requests in flight.
      * 
      * @param page
      * @param pageSize
      * @param startDate
      * @param endDate
      * @param measurementIds
+     * @param maxPoints
+     * @param aggregation
      * @param bulk
      * @return
      * @throws SiteWhereException
@@ -448,15 +490,17 @@ public class Assignments {
 	    @Parameter(description = "Start date", required = false) @QueryParam("startDate") String startDate,
 	    @Parameter(description = "End date", required = false) @QueryParam("endDate") String endDate,
 	    @Parameter(description = "Measurement Ids", required = false) @QueryParam("measurementIds") String[] measurementIds,
+	    @Parameter(description = "Max points") @QueryParam("maxPoints") @DefaultValue("0") int maxPoints,
+	    @Parameter(description = "Aggregation") @QueryParam("aggregation") @DefaultValue("Average") DownsampleAggregation aggregation,
 	    @RequestBody DeviceAssignmentBulkRequest bulk) throws SiteWhereException {
 	IDateRangeSearchCriteria criteria = createDateRangeSearchCriteria(page, pageSize, startDate, endDate);
+	List<String> tokens = new ArrayList<>(new LinkedHashSet<>(bulk.getDeviceAssignmentTokens()));
+	List<List<IChartSeries<Double>>> series = ParallelRequests.execute(tokens, BULK_SERIES_MAX_CONCURRENT,
+		token -> getChartSeries(assertDeviceAssignment(token), criteria, measurementIds, maxPoints,
+			aggregation));
 	Map<String, List<IChartSeries<Double>>> results = new HashMap<String, List<IChartSeries<Double>>>();
-	for (String token : bulk.getDeviceAssignmentTokens()) {
-	    IDeviceAssignment assignment = assertDeviceAssignment(token);
-	    ISearchResults<IDeviceMeasurement> measurements = getDeviceEventManagement().listDeviceMeasurementsForIndex(
-		    DeviceEventIndex.Assignment, Collections.singletonList(assignment.getId()), criteria);
-	    ChartBuilder builder = new ChartBuilder();
-	    results.put(token, builder.process(measurements.getResults(), measurementIds));
+	for (int i = 0; i < tokens.size(); i++) {
+	    results.put(tokens.get(i), series.get(i));
 	}
 	return Response.ok(results).build();
     }
@@ -470,6 +514,8 @@ public class Assignments {
      * @param startDate
      * @param endDate
      * @param measurementIds
+     * @param maxPoints
+     * @param aggregation
      * @return
      * @throws SiteWhereException
      */
@@ -482,14 +528,57 @@ public class Assignments {
 	    @Parameter(description = "Page size", required = false) @QueryParam("pageSize") @DefaultValue("100") int pageSize,
 	    @Parameter(description = "Start date", required = false) @QueryParam("startDate") String startDate,
 	    @Parameter(description = "End date", required = false) @QueryParam("endDate") String endDate,
-	    @Parameter(description = "Measurement Ids", required = false) @QueryParam("measurementIds") String[] measurementIds)
+	    @Parameter(description = "Measurement Ids", required = false) @QueryParam("measurementIds") String[] measurementIds,
+	    @Parameter(description = "Max points") @QueryParam("maxPoints") @DefaultValue("0") int maxPoints,
+	    @Parameter(description = "Aggregation") @QueryParam("aggregation") @DefaultValue("Average") DownsampleAggregation aggregation)
 	    throws SiteWhereException {
 	IDateRangeSearchCriteria criteria = createDateRangeSearchCriteria(page, pageSize, startDate, endDate);
 	IDeviceAssignment assignment = assertDeviceAssignment(token);
-	ISearchResults<IDeviceMeasurement> measurements = getDeviceEventManagement().listDeviceMeasurementsForIndex(
-		DeviceEventIndex.Assignment, Collections.singletonList(assignment.getId()), criteria);
-	ChartBuilder builder = new ChartBuilder();
-	return Response.ok(builder.process(measurements.getResults(), measurementIds)).build();
+	return Response.ok(getChartSeries(assignment, criteria, measurementIds, maxPoints, aggregation)).build();
+    }
+
+    /**
+     * Get measurements for an assignment as chart series. If a maximum number of
+     * points is given, every measurement in the date range is read in chunks and
+     * each series is reduced to at most that many points. Otherwise the requested
+     * page of measurements is converted as is.
+     * 
+     * @param assignment
+     * @param criteria
+     * @param measurementIds
+     * @param maxPoints
+     * @param aggregation
+     * @return
+     * @throws SiteWhereException
+     */
+    protected List<IChartSeries<Double>> getChartSeries(IDeviceAssignment assignment,
+	    IDateRangeSearchCriteria criteria, String[] measurementIds, int maxPoints, DownsampleAggregation aggregation)
+	    throws SiteWhereException {
+	List<UUID> ids = Collections.singletonList(assignment.getId());
+	if (maxPoints <= 0) {
+	    ISearchResults<IDeviceMeasurement> measurements = getDeviceEventManagement()
+		    .listDeviceMeasurementsForIndex(DeviceEventIndex.Assignment, ids, criteria);
+	    return new ChartBuilder().process(measurements.getResults(), measurementIds);
+	}
+	if (criteria.getStartDate() == null) {
+	    throw new SiteWhereException("Downsampling measurements requires a start date.");
+	}
+	Date end = (criteria.getEndDate() != null) ? criteria.getEndDate() : new Date();
+	MeasurementSeriesDownsampler downsampler = new MeasurementSeriesDownsampler(criteria.getStartDate().getTime(),
+		end.getTime(), maxPoints, aggregation, measurementIds);
+	try {
+	    DeviceEventExportStream.forEachChunk(
+		    chunk -> getDeviceEventManagement().listDeviceMeasurementsForIndex(DeviceEventIndex.Assignment, ids,
+			    chunk),
+		    DOWNSAMPLE_CHUNK_SIZE, criteria.getStartDate(), end, measurements -> {
+			for (IDeviceMeasurement measurement : measurements) {
+			    downsampler.add(measurement);
+			}
+		    });
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to downsample measurements.", e);
+	}
+	return downsampler.getSeries();
     }
 
     /**
@@ -566,6 +655,30 @@ public class Assignments {
 		Collections.singletonList(assignment.getId()), criteria)).build();
     }
 
+    /**
+     * Export location events for a given assignment as newline-delimited JSON.
+     * 
+     * @param token
+     * @param chunkSize
+     * @param startDate
+     * @param endDate
+     * @return
+     * @throws SiteWhereException
+     */
+    @GET
+    @Path("/{token}/locations/export")
+    @Produces(DeviceEventExportStream.NDJSON)
+    @Operation(summary = "Export assignment locations", description = "Stream locations as NDJSON")
+    public Response exportLocationsForAssignment(
+	    @Parameter(description = "Assignment token", required = true) @PathParam("token") String token,
+	    @Parameter(description = "Events per chunk") @QueryParam("chunkSize") @DefaultValue("500") int chunkSize,
+	    @Parameter(description = "Start date", required = false) @QueryParam("startDate") String startDate,
+	    @Parameter(description = "End date", required = false) @QueryParam("endDate") String endDate)
+	    throws SiteWhereException {
+	return exportEvents(token, getDeviceEventManagement()::listDeviceLocationsForIndex, chunkSize, startDate,
+		endDate);
+    }
+
     /**
      * Create location to be associated with a device assignment.
      * 
@@ -640,6 +753,29 @@ public class Assignments {
 		Collections.singletonList(assignment.getId()), criteria)).build();
     }
 
+    /**
+     * Export alert events for a given assignment as newline-delimited JSON.
+     * 
+     * @param token
+     * @param chunkSize
+     * @param startDate
+     * @param endDate
+     * @return
+     * @throws SiteWhereException
+     */
+    @GET
+    @Path("/{token}/alerts/export")
+    @Produces(DeviceEventExportStream.NDJSON)
+    @Operation(summary = "Export assignment alerts", description = "Stream alerts as NDJSON")
+    public Response exportAlertsForAssignment(
+	    @Parameter(description = "Assignment token", required = true) @PathParam("token") String token,
+	    @Parameter(description = "Events per chunk") @QueryParam("chunkSize") @DefaultValue("500") int chunkSize,
+	    @Parameter(description = "Start date", required = false) @QueryParam("startDate") String startDate,
+	    @Parameter(description = "End date", required = false) @QueryParam("endDate") String endDate)
+	    throws SiteWhereException {
+	return exportEvents(token, getDeviceEventManagement()::listDeviceAlertsForIndex, chunkSize, startDate, endDate);
+    }
+
     /**
      * Create alert to be associated with a device assignment.
      * 
@@ -778,6 +914,30 @@ public class Assignments {
 	return Response.ok(new SearchResults<IDeviceCommandInvocation>(converted)).build();
     }
 
+    /**
+     * Export command invocation events for a given assignment as newline-delimited JSON.
+     * 
+     * @param token
+     * @param chunkSize
+     * @param startDate
+     * @param endDate
+     * @return
+     * @throws SiteWhereException
+     */
+    @GET
+    @Path("/{token}/invocations/export")
+    @Produces(DeviceEventExportStream.NDJSON)
+    @Operation(summary = "Export assignment command invocations", description = "Stream command invocations as NDJSON")
+    public Response exportCommandInvocationsForAssignment(
+	    @Parameter(description = "Assignment token", required = true) @PathParam("token") String token,
+	    @Parameter(description = "Events per chunk") @QueryParam("chunkSize") @DefaultValue("500") int chunkSize,
+	    @Parameter(description = "Start date", required = false) @QueryParam("startDate") String startDate,
+	    @Parameter(description = "End date", required = false) @QueryParam("endDate") String endDate)
+	    throws SiteWhereException {
+	return exportEvents(token, getDeviceEventManagement()::listDeviceCommandInvocationsForIndex, chunkSize,
+		startDate, endDate);
+    }
+
     /**
      * Create state change to be associated with a device assignment.
      * 
@@ -852,6 +1012,30 @@ public class Assignments {
 		Collections.singletonList(assignment.getId()), criteria)).build();
     }
 
+    /**
+     * Export state change events for a given assignment as newline-delimited JSON.
+     * 
+     * @param token
+     * @param chunkSize
+     * @param startDate
+     * @param endDate
+     * @return
+     * @throws SiteWhereException
+     */
+    @GET
+    @Path("/{token}/statechanges/export")
+    @Produces(DeviceEventExportStream.NDJSON)
+    @Operation(summary = "Export assignment state changes", description = "Stream state changes as NDJSON")
+    public Response exportStateChangesForAssignment(
+	    @Parameter(description = "Assignment token", required = true) @PathParam("token") String token,
+	    @Parameter(description = "Events per chunk") @QueryParam("chunkSize") @DefaultValue("500") int chunkSize,
+	    @Parameter(description = "Start date", required = false) @QueryParam("startDate") String startDate,
+	    @Parameter(description = "End date", required = false) @QueryParam("endDate") String endDate)
+	    throws SiteWhereException {
+	return exportEvents(token, getDeviceEventManagement()::listDeviceStateChangesForIndex, chunkSize, startDate,
+		endDate);
+    }
+
     /**
      * Create command response to be associated with a device assignment.
      * 
@@ -926,6 +1110,30 @@ public class Assignments {
 		Collections.singletonList(assignment.getId()), criteria)).build();
     }
 
+    /**
+     * Export command response events for a given assignment as newline-delimited JSON.
+     * 
+     * @param token
+     * @param chunkSize
+     * @param startDate
+     * @param endDate
+     * @return
+     * @throws SiteWhereException
+     */
+    @GET
+    @Path("/{token}/responses/export")
+    @Produces(DeviceEventExportStream.NDJSON)
+    @Operation(summary = "Export assignment command responses", description = "Stream command responses as NDJSON")
+    public Response exportCommandResponsesForAssignment(
+	    @Parameter(description = "Assignment token", required = true) @PathParam("token") String token,
+	    @Parameter(description = "Events per chunk") @QueryParam("chunkSize") @DefaultValue("500") int chunkSize,
+	    @Parameter(description = "Start date", required = false) @QueryParam("startDate") String startDate,
+	    @Parameter(description = "End date", required = false) @QueryParam("endDate") String endDate)
+	    throws SiteWhereException {
+	return exportEvents(token, getDeviceEventManagement()::listDeviceCommandResponsesForIndex, chunkSize, startDate,
+		endDate);
+    }
+
     /**
      * End an existing device assignment.
      * 
@@ -1041,6 +1249,27 @@ public class Assignments {
 	return new DateRangeSearchCriteria(page, pageSize, parsedStartDate, parsedEndDate);
     }
 
+    /**
+     * Build a response that streams events for an assignment as newline-delimited
+     * JSON. Events are loaded with the given event management list method.
+     * 
+     * @param token
+     * @param events
+     * @param chunkSize
+     * @param startDate
+     * @param endDate
+     * @return
+     * @throws SiteWhereException
+     */
+    protected <T extends IDeviceEvent> Response exportEvents(String token, IIndexedEventSource<T> events,
+	    int chunkSize, String startDate, String endDate) throws SiteWhereException {
+	List<UUID> ids = Collections.singletonList(assertDeviceAssignment(token).getId());
+	DeviceEventExportStream<T> stream = new DeviceEventExportStream<>(
+		criteria -> events.list(DeviceEventIndex.Assignment, ids, criteria), chunkSize,
+		parseDateOrFail(startDate), parseDateOrFail(endDate));
+	return Response.ok(stream, DeviceEventExportStream.NDJSON).build();
+    }
+
     /**
      * Parse date or throw exception if invalid.
      * 
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest.marshaling;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sitewhere.microservice.util.MarshalUtils;
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventIndex;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
+
+/**
+ * Streams device events as newline-delimited JSON. Events are requested from
+ * event management one chunk at a time and each chunk is written and flushed
+ * before the next is requested. Neither side holds the full result in memory,
+ * and a slow client slows down the export. Chunks are requested by moving the
+ * end date back to the oldest event already written. That keeps the cost of
+ * each request constant rather than growing with the offset. Events that share
+ * the boundary date are not written twice.
+ * 
+ * @param <T>
+ */
+public class DeviceEventExportStream<T extends IDeviceEvent> implements StreamingOutput {
+
+    /** Static logger instance */
+    private static Log LOGGER = LogFactory.getLog(DeviceEventExportStream.class);
+
+    /** Media type for newline-delimited JSON */
+    public static final String NDJSON = "application/x-ndjson";
+
+    /** Newline separating events */
+    private static final byte[] NEWLINE = { '\n' };
+
+    /** Loads a chunk of events */
+    private IEventChunkSource<T> source;
+
+    /** Number of events per chunk */
+    private int chunkSize;
+
+    /** Start date for export */
+    private Date startDate;
+
+    /** End date for export */
+    private Date endDate;
+
+    public DeviceEventExportStream(IEventChunkSource<T> source, int chunkSize, Date startDate, Date endDate) {
+	this.source = source;
+	this.chunkSize = Math.max(1, chunkSize);
+	this.startDate = startDate;
+	this.endDate = endDate;
+    }
+
+    /*
+     * @see javax.ws.rs.core.StreamingOutput#write(java.io.OutputStream)
+     */
+    @Override
+    public void write(OutputStream output) throws IOException {
+	try {
+	    forEachChunk(getSource(), getChunkSize(), getStartDate(), getEndDate(), events -> {
+		for (T event : events) {
+		    output.write(MarshalUtils.marshalJson(event));
+		    output.write(NEWLINE);
+		}
+		output.flush();
+	    });
+	} catch (SiteWhereException e) {
+	    LOGGER.error("Unable to export device events.", e);
+	    throw new IOException("Unable to export device events.", e);
+	}
+    }
+
+    /**
+     * Load all events in a date range one chunk at a time, newest first, and pass
+     * each chunk to a handler before the next is requested.
+     * 
+     * @param source
+     * @param chunkSize
+     * @param startDate
+     * @param endDate
+     * @param handler
+     * @throws SiteWhereException
+     * @throws IOException
+     */
+    public static <T extends IDeviceEvent> void forEachChunk(IEventChunkSource<T> source, int chunkSize,
+	    Date startDate, Date endDate, IEventChunkHandler<T> handler) throws SiteWhereException, IOException {
+	chunkSize = Math.max(1, chunkSize);
+	Date end = endDate;
+	int page = 1;
+	Date boundary = null;
+	Set<UUID> boundaryIds = new HashSet<>();
+	while (true) {
+	    IDateRangeSearchCriteria criteria = new DateRangeSearchCriteria(page, chunkSize, startDate, end);
+	    List<T> events = source.getChunk(criteria).getResults();
+	    List<T> unique = new ArrayList<>(events.size());
+	    for (T event : events) {
+		if (event.getEventDate().equals(boundary)) {
+		    if (!boundaryIds.add(event.getId())) {
+			continue;
+		    }
+		} else {
+		    boundary = event.getEventDate();
+		    boundaryIds.clear();
+		    boundaryIds.add(event.getId());
+		}
+		unique.add(event);
+	    }
+	    handler.handle(unique);
+	    if (events.size() < chunkSize) {
+		return;
+	    }
+
+	    // Page within the same end date if a chunk did not move it back.
+	    Date oldest = events.get(events.size() - 1).getEventDate();
+	    if (oldest.equals(end)) {
+		page++;
+	    } else {
+		end = oldest;
+		page = 1;
+	    }
+	}
+    }
+
+    /**
+     * Loads a chunk of events for the given criteria, newest first.
+     * 
+     * @param <T>
+     */
+    @FunctionalInterface
+    public static interface IEventChunkSource<T> {
+
+	public ISearchResults<T> getChunk(IDateRangeSearchCriteria criteria) throws SiteWhereException;
+    }
+
+    /**
+     * Handles a chunk of events.
+     * 
+     * @param <T>
+     */
+    @FunctionalInterface
+    public static interface IEventChunkHandler<T> {
+
+	public void handle(List<T> events) throws IOException;
+    }
+
+    /**
+     * Lists events of one type for a set of entities in an index.
+     * 
+     * @param <T>
+     */
+    @FunctionalInterface
+    public static interface IIndexedEventSource<T> {
+
+	public ISearchResults<T> list(DeviceEventIndex index, List<UUID> entityIds, IDateRangeSearchCriteria criteria)
+		throws SiteWhereException;
+    }
+
+    protected IEventChunkSource<T> getSource() {
+	return source;
+    }
+
+    protected int getChunkSize() {
+	return chunkSize;
+    }
+
+    protected Date getStartDate() {
+	return startDate;
+    }
+
+    protected Date getEndDate() {
+	return endDate;
+    }
+}
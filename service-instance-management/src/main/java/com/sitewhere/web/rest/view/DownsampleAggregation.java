@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest.view;
+
+/**
+ * Indicates how measurement values are reduced when downsampling a series.
+ */
+public enum DownsampleAggregation {
+
+    /** Average of values in each time bucket */
+    Average,
+
+    /** Minimum value in each time bucket */
+    Minimum,
+
+    /** Maximum value in each time bucket */
+    Maximum,
+
+    /** Most recent value in each time bucket */
+    Last,
+
+    /** Largest-Triangle-Three-Buckets selection of representative points */
+    Lttb;
+}
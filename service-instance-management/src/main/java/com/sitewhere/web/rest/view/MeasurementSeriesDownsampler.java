@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ * 
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.sitewhere.rest.model.device.charting.ChartEntry;
+import com.sitewhere.rest.model.device.charting.ChartSeries;
+import com.sitewhere.spi.device.charting.IChartEntry;
+import com.sitewhere.spi.device.charting.IChartSeries;
+import com.sitewhere.spi.device.event.IDeviceMeasurement;
+
+/**
+ * Reduces a stream of measurement values to a fixed number of points per
+ * measurement name. The date range is split into equal time buckets and values
+ * are folded into their bucket as they arrive. Memory use therefore depends on
+ * the number of points requested rather than the number of values read, and
+ * values may arrive in any order.
+ * 
+ * For {@link DownsampleAggregation#Lttb}, the minimum and maximum of a finer set
+ * of buckets are kept as candidates. Largest-Triangle-Three-Buckets then picks
+ * the requested number of points from those candidates.
+ */
+public class MeasurementSeriesDownsampler {
+
+    /** Candidate buckets per output point for LTTB */
+    private static final int LTTB_OVERSAMPLING = 4;
+
+    /** Start of range in milliseconds */
+    private long start;
+
+    /** End of range in milliseconds */
+    private long end;
+
+    /** Maximum points per series */
+    private int maxPoints;
+
+    /** Aggregation applied to buckets */
+    private DownsampleAggregation aggregation;
+
+    /** Measurement names to include (all if null) */
+    private Set<String> names;
+
+    /** Number of time buckets */
+    private int bucketCount;
+
+    /** Width of each time bucket in milliseconds */
+    private long bucketWidth;
+
+    /** Buckets by measurement name */
+    private Map<String, Bucket[]> series = new TreeMap<>();
+
+    public MeasurementSeriesDownsampler(long start, long end, int maxPoints, DownsampleAggregation aggregation,
+	    String[] measurementNames) {
+	this.start = start;
+	this.end = Math.max(start, end);
+	this.maxPoints = Math.max(1, maxPoints);
+	this.aggregation = (aggregation != null) ? aggregation : DownsampleAggregation.Average;
+	if ((measurementNames != null) && (measurementNames.length > 0)) {
+	    this.names = new HashSet<>(Arrays.asList(measurementNames));
+	}
+	int buckets = (aggregation == DownsampleAggregation.Lttb) ? maxPoints * LTTB_OVERSAMPLING : maxPoints;
+	long range = this.end - this.start + 1;
+	this.bucketWidth = Math.max(1, (range + buckets - 1) / buckets);
+	this.bucketCount = (int) ((range + bucketWidth - 1) / bucketWidth);
+    }
+
+    /**
+     * Add a measurement event.
+     * 
+     * @param measurement
+     */
+    public void add(IDeviceMeasurement measurement) {
+	if ((measurement.getValue() == null) || (measurement.getEventDate() == null)) {
+	    return;
+	}
+	add(measurement.getName(), measurement.getEventDate().getTime(), measurement.getValue().doubleValue());
+    }
+
+    /**
+     * Add a measurement value.
+     * 
+     * @param name
+     * @param time
+     * @param value
+     */
+    public void add(String name, long time, double value) {
+	if ((time < start) || (time > end) || Double.isNaN(value)) {
+	    return;
+	}
+	if ((names != null) && !names.contains(name)) {
+	    return;
+	}
+	Bucket[] buckets = series.get(name);
+	if (buckets == null) {
+	    buckets = new Bucket[bucketCount];
+	    series.put(name, buckets);
+	}
+	int index = (int) ((time - start) / bucketWidth);
+	Bucket bucket = buckets[index];
+	if (bucket == null) {
+	    bucket = new Bucket();
+	    buckets[index] = bucket;
+	}
+	bucket.add(time, value);
+    }
+
+    /**
+     * Get downsampled series ordered by measurement name. Entries in each series
+     * are in ascending time order.
+     * 
+     * @return
+     */
+    public List<IChartSeries<Double>> getSeries() {
+	List<IChartSeries<Double>> result = new ArrayList<>();
+	for (Map.Entry<String, Bucket[]> entry : series.entrySet()) {
+	    List<Long> times = new ArrayList<>();
+	    List<Double> values = new ArrayList<>();
+	    reduce(entry.getValue(), times, values);
+	    ChartSeries<Double> chart = new ChartSeries<Double>();
+	    chart.setMeasurementId(entry.getKey());
+	    List<IChartEntry<Double>> entries = new ArrayList<>();
+	    for (int i = 0; i < times.size(); i++) {
+		ChartEntry<Double> point = new ChartEntry<Double>();
+		point.setMeasurementDate(new Date(times.get(i)));
+		point.setValue(values.get(i));
+		entries.add(point);
+	    }
+	    chart.setEntries(entries);
+	    result.add(chart);
+	}
+	return result;
+    }
+
+    /**
+     * Reduce buckets to output points.
+     * 
+     * @param buckets
+     * @param times
+     * @param values
+     */
+    protected void reduce(Bucket[] buckets, List<Long> times, List<Double> values) {
+	for (int i = 0; i < buckets.length; i++) {
+	    Bucket bucket = buckets[i];
+	    if (bucket == null) {
+		continue;
+	    }
+	    long bucketStart = start + (i * bucketWidth);
+	    switch (aggregation) {
+	    case Average: {
+		times.add(bucketStart);
+		values.add(bucket.sum / bucket.count);
+		break;
+	    }
+	    case Minimum: {
+		times.add(bucket.minTime);
+		values.add(bucket.min);
+		break;
+	    }
+	    case Maximum: {
+		times.add(bucket.maxTime);
+		values.add(bucket.max);
+		break;
+	    }
+	    case Last: {
+		times.add(bucket.lastTime);
+		values.add(bucket.last);
+		break;
+	    }
+	    case Lttb: {
+		if (bucket.minTime <= bucket.maxTime) {
+		    addCandidate(times, values, bucket.minTime, bucket.min);
+		    addCandidate(times, values, bucket.maxTime, bucket.max);
+		} else {
+		    addCandidate(times, values, bucket.maxTime, bucket.max);
+		    addCandidate(times, values, bucket.minTime, bucket.min);
+		}
+		break;
+	    }
+	    }
+	}
+	if (aggregation == DownsampleAggregation.Lttb) {
+	    lttb(times, values, maxPoints);
+	}
+    }
+
+    /**
+     * Add an LTTB candidate unless it duplicates the previous one.
+     * 
+     * @param times
+     * @param values
+     * @param time
+     * @param value
+     */
+    protected void addCandidate(List<Long> times, List<Double> values, long time, double value) {
+	int last = times.size() - 1;
+	if ((last >= 0) && (times.get(last) == time) && (values.get(last) == value)) {
+	    return;
+	}
+	times.add(time);
+	values.add(value);
+    }
+
+    /**
+     * Select points using Largest-Triangle-Three-Buckets. Lists are replaced
+     * in place with the selected points.
+     * 
+     * @param times
+     * @param values
+     * @param threshold
+     */
+    protected static void lttb(List<Long> times, List<Double> values, int threshold) {
+	int count = times.size();
+	if ((threshold >= count) || (threshold < 3)) {
+	    if (threshold < count) {
+		List<Long> keptTimes = new ArrayList<>(times.subList(0, 1));
+		List<Double> keptValues = new ArrayList<>(values.subList(0, 1));
+		if (threshold == 2) {
+		    keptTimes.add(times.get(count - 1));
+		    keptValues.add(values.get(count - 1));
+		}
+		times.clear();
+		times.addAll(keptTimes);
+		values.clear();
+		values.addAll(keptValues);
+	    }
+	    return;
+	}
+	List<Long> sampledTimes = new ArrayList<>(threshold);
+	List<Double> sampledValues = new ArrayList<>(threshold);
+	double every = (double) (count - 2) / (threshold - 2);
+	int a = 0;
+	sampledTimes.add(times.get(0));
+	sampledValues.add(values.get(0));
+	for (int i = 0; i < threshold - 2; i++) {
+	    // Average of the next bucket.
+	    int avgStart = (int) Math.floor((i + 1) * every) + 1;
+	    int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, count);
+	    double avgX = 0;
+	    double avgY = 0;
+	    for (int j = avgStart; j < avgEnd; j++) {
+		avgX += times.get(j);
+		avgY += values.get(j);
+	    }
+	    int avgCount = Math.max(1, avgEnd - avgStart);
+	    avgX /= avgCount;
+	    avgY /= avgCount;
+
+	    // Point in the current bucket forming the largest triangle.
+	    int rangeStart = (int) Math.floor(i * every) + 1;
+	    int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+	    double ax = times.get(a);
+	    double ay = values.get(a);
+	    double maxArea = -1;
+	    int selected = rangeStart;
+	    for (int j = rangeStart; j < rangeEnd; j++) {
+		double area = Math.abs(
+			(ax - avgX) * (values.get(j) - ay) - (ax - times.get(j)) * (avgY - ay));
+		if (area > maxArea) {
+		    maxArea = area;
+		    selected = j;
+		}
+	    }
+	    sampledTimes.add(times.get(selected));
+	    sampledValues.add(values.get(selected));
+	    a = selected;
+	}
+	sampledTimes.add(times.get(count - 1));
+	sampledValues.add(values.get(count - 1));
+	times.clear();
+	times.addAll(sampledTimes);
+	values.clear();
+	values.addAll(sampledValues);
+    }
+
+    public long getBucketWidth() {
+	return bucketWidth;
+    }
+
+    public int getBucketCount() {
+	return bucketCount;
+    }
+
+    /**
+     * Values folded into a single time bucket.
+     */
+    private static class Bucket {
+
+	/** Number of values */
+	private long count;
+
+	/** Sum of values */
+	private double sum;
+
+	/** Minimum value */
+	private double min = Double.POSITIVE_INFINITY;
+
+	/** Time of minimum value */
+	private long minTime;
+
+	/** Maximum value */
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/** Time of maximum value */
+	private long maxTime;
+
+	/** Most recent value */
+	private double last;
+
+	/** Time of most recent value */
+	private long lastTime = Long.MIN_VALUE;
+
+	public void add(long time, double value) {
+	    count++;
+	    sum += value;
+	    if (value < min) {
+		min = value;
+		minTime = time;
+	    }
+	    if (value > max) {
+		max = value;
+		maxTime = time;
+	    }
+	    if (time >= lastTime) {
+		last = value;
+		lastTime = time;
+	    }
+	}
+    }
+}